@@ -0,0 +1,107 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+
+/**
+ * Seeded inputs shared by benchmarks. Since context is thread local, inputs should be generated in the same thread
+ * which runs benchmark (i.e. from {@code @Setup} of {@code Scope.Thread} state).
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+final class BenchmarkInputs {
+    /**
+     * Seed used to reset tensor names and to initialize random generators.
+     */
+    static final long SEED = 7201529248298620939L;
+
+    private BenchmarkInputs() {
+    }
+
+    /**
+     * Resets tensor names in the current context and returns random generator of tensors with Latin lower indices.
+     *
+     * @return random generator of tensors with indices
+     */
+    static RandomTensor indexedRandom() {
+        CC.resetTensorNames(SEED);
+        return new RandomTensor(5, 20,
+                new int[]{1, 0, 0, 0},
+                new int[]{3, 0, 0, 0}, false, SEED);
+    }
+
+    /**
+     * Resets tensor names in the current context and returns random generator of scalar tensors without indices.
+     *
+     * @return random generator of scalar tensors
+     */
+    static RandomTensor scalarRandom() {
+        CC.resetTensorNames(SEED);
+        return new RandomTensor(5, 10,
+                new int[]{0, 0, 0, 0},
+                new int[]{0, 0, 0, 0}, false, SEED);
+    }
+
+    /**
+     * Returns random sum with free indices _{ab}.
+     *
+     * @param random  random generator
+     * @param size    number of summands
+     * @param product average product size
+     * @return random sum
+     */
+    static Tensor nextSum(RandomTensor random, int size, int product) {
+        return nextSum(random, size, product, "_ab");
+    }
+
+    /**
+     * Returns random sum with specified free indices.
+     *
+     * @param random  random generator
+     * @param size    number of summands
+     * @param product average product size
+     * @param indices string representation of free indices
+     * @return random sum
+     */
+    static Tensor nextSum(RandomTensor random, int size, int product, String indices) {
+        return random.nextSum(size, product, ParserIndices.parseSimple(indices));
+    }
+
+    /**
+     * Returns random scalar sum.
+     *
+     * @param random  random generator of scalar tensors
+     * @param size    number of summands
+     * @param product average product size
+     * @return random scalar sum
+     */
+    static Tensor nextScalarSum(RandomTensor random, int size, int product) {
+        return random.nextSum(size, product, IndicesFactory.EMPTY_SIMPLE_INDICES);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.transformations.EliminateMetricsTransformation;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link EliminateMetricsTransformation} applied to expanded {@code g^ac*g^bd*A_ab*B_cd} with random
+ * sums {@code A_ab} and {@code B_cd}.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class EliminateMetricsBenchmark {
+    @Param({"5", "20", "50"})
+    public int size;
+    private Tensor target;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = BenchmarkInputs.indexedRandom();
+        target = ExpandTransformation.expand(Tensors.multiply(Tensors.parse("g^ac*g^bd"),
+                BenchmarkInputs.nextSum(random, size, 3, "_ab"),
+                BenchmarkInputs.nextSum(random, size, 3, "_cd")));
+    }
+
+    @Benchmark
+    public Tensor eliminate() {
+        return EliminateMetricsTransformation.eliminate(target);
+    }
+}
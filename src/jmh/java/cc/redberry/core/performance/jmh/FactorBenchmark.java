@@ -0,0 +1,63 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import cc.redberry.core.transformations.factor.FactorTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link FactorTransformation} applied to expanded product of two random scalar sums.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FactorBenchmark {
+    @Param({"3", "5", "8"})
+    public int size;
+    private Tensor target;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = BenchmarkInputs.scalarRandom();
+        target = ExpandTransformation.expand(Tensors.multiply(
+                BenchmarkInputs.nextScalarSum(random, size, 2),
+                BenchmarkInputs.nextScalarSum(random, size, 2)));
+    }
+
+    @Benchmark
+    public Tensor factor() {
+        return FactorTransformation.factor(target);
+    }
+}
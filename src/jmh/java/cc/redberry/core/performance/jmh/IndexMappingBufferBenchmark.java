@@ -0,0 +1,89 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indexmapping.IndexMappingBuffer;
+import cc.redberry.core.indexmapping.IndexMappingBufferImpl;
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.indexmapping.MappingsPort;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of index mapping buffers: enumeration of all mappings between two forms of the Riemann tensor (the same
+ * input as in {@link cc.redberry.core.performance.IndexMappingPerformance}) and branching of a buffer (clone followed
+ * by a single {@code tryMap}), which is performed at each branch point of mapping search.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class IndexMappingBufferBenchmark {
+    private Tensor riemann1, riemann2;
+    private IndexMappingBufferImpl buffer;
+    private int from, to;
+
+    @Setup
+    public void setup() {
+        CC.resetTensorNames(BenchmarkInputs.SEED);
+        String e0 = "g_ax*(d_c*G^x_bd-d_d*G^x_bc+G^x_yc*G^y_bd-G^x_yd*G^y_bc)";
+        String e1 = "g_px*(d_r*G^x_qs-d_s*G^x_qr+G^x_yr*G^y_qs-G^x_ys*G^y_qr)";
+        e1 = e1.replace('_', '#').replace('^', '_').replace('#', '^');
+        riemann1 = Tensors.parse(e0);
+        riemann2 = Tensors.parse(e1);
+
+        buffer = new IndexMappingBufferImpl();
+        String[] indices = {"a", "b", "c", "d", "e", "f"};
+        for (int i = 0; i < indices.length; ++i)
+            buffer.tryMap(IndicesUtils.parseIndex("_" + indices[i]),
+                    IndicesUtils.parseIndex("_" + indices[(i + 1) % indices.length]));
+        from = IndicesUtils.parseIndex("_x");
+        to = IndicesUtils.parseIndex("_y");
+    }
+
+    @Benchmark
+    public int allMappings() {
+        MappingsPort mp = IndexMappings.createPort(riemann1, riemann2);
+        int count = 0;
+        while (mp.take() != null)
+            ++count;
+        return count;
+    }
+
+    @Benchmark
+    public IndexMappingBuffer branch() {
+        IndexMappingBuffer clone = buffer.clone();
+        clone.tryMap(from, to);
+        return clone;
+    }
+}
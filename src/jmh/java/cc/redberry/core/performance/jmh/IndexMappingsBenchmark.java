@@ -0,0 +1,62 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.indexmapping.IndexMappingBuffer;
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.tensor.ApplyIndexMapping;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@code IndexMappings.createPort(from, to).take()}, where {@code to} is a random product with renamed
+ * dummy indices.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class IndexMappingsBenchmark {
+    @Param({"5", "20", "50"})
+    public int size;
+    private Tensor from, to;
+
+    @Setup
+    public void setup() {
+        from = BenchmarkInputs.indexedRandom().nextProduct(size);
+        to = ApplyIndexMapping.renameDummy(from, TensorUtils.getAllIndicesNamesT(from).toArray());
+    }
+
+    @Benchmark
+    public IndexMappingBuffer take() {
+        return IndexMappings.createPort(from, to).take();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.Context;
+import cc.redberry.core.context.ContextManager;
+import cc.redberry.core.context.NameDescriptor;
+import cc.redberry.core.context.NameManager;
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded throughput of {@link NameManager} lookups, when all threads share the same {@link Context}. Run
+ * with different number of threads (e.g. {@code -t 1}, {@code -t 4}, {@code -t 8}) to see the scalability.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@Threads(4)
+public class NameManagerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedContext {
+        Context context;
+        int[] names;
+        SimpleTensor[] tensors;
+
+        @Setup
+        public void setup() {
+            RandomTensor random = BenchmarkInputs.indexedRandom();
+            context = CC.current();
+            names = new int[64];
+            tensors = new SimpleTensor[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                tensors[i] = random.nextSimpleTensor();
+                names[i] = tensors[i].getName();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int position;
+
+        @Setup
+        public void setup(SharedContext shared) {
+            //all threads use the same context
+            ContextManager.setCurrentContext(shared.context);
+        }
+    }
+
+    @Benchmark
+    public NameDescriptor getNameDescriptor(SharedContext shared, ThreadState state) {
+        return shared.context.getNameDescriptor(shared.names[state.position++ & 63]);
+    }
+
+    @Benchmark
+    public boolean isKroneckerOrMetric(SharedContext shared, ThreadState state) {
+        return shared.context.isKroneckerOrMetric(shared.tensors[state.position++ & 63]);
+    }
+
+    @Benchmark
+    public NameDescriptor mapNameDescriptor(SharedContext shared, ThreadState state) {
+        NameDescriptor descriptor = shared.context.getNameDescriptor(shared.names[state.position++ & 63]);
+        return shared.context.getNameManager().mapNameDescriptor(descriptor.getName(null),
+                descriptor.getStructuresOfIndices());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link SubstitutionTransformation#transform(Tensor)} applied to a random sum; substitution replaces
+ * a random simple tensor {@code F} with {@code x*F}. The second benchmark applies substitution, which lhs does not
+ * occur in the sum, so all subtrees are skipped using cached summaries.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SubstitutionTransformationBenchmark {
+    @Param({"10", "100", "1000"})
+    public int size;
+    private Tensor target;
+    private SubstitutionTransformation substitution, notMatching;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = BenchmarkInputs.indexedRandom();
+        target = BenchmarkInputs.nextSum(random, size, 3);
+        SimpleTensor from = random.nextSimpleTensor();
+        substitution = new SubstitutionTransformation(from, Tensors.multiply(Tensors.parse("x"), from));
+        notMatching = new SubstitutionTransformation(Tensors.parse("notMatching"), Tensors.parse("x"));
+    }
+
+    @Benchmark
+    public Tensor transform() {
+        return substitution.transform(target);
+    }
+
+    @Benchmark
+    public Tensor transformNotMatching() {
+        return notMatching.transform(target);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.tensor.ApplyIndexMapping;
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link SumBuilder#put(Tensor)} and {@link SumBuilder#build()}. Each summand of a random sum is put
+ * twice (the second time with renamed dummies), so like terms are collected.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SumBuilderBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+    private Tensor[] terms;
+
+    @Setup
+    public void setup() {
+        Tensor sum = BenchmarkInputs.nextSum(BenchmarkInputs.indexedRandom(), size, 3);
+        terms = new Tensor[2 * sum.size()];
+        int i = 0;
+        for (Tensor summand : sum) {
+            terms[i++] = summand;
+            terms[i++] = ApplyIndexMapping.renameDummy(summand,
+                    TensorUtils.getAllIndicesNamesT(summand).toArray());
+        }
+    }
+
+    @Benchmark
+    public Tensor putAndBuild() {
+        SumBuilder sb = new SumBuilder();
+        for (Tensor t : terms)
+            sb.put(t);
+        return sb.build();
+    }
+}
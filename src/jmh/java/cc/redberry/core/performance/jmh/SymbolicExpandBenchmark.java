@@ -0,0 +1,64 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance.jmh;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link ExpandTransformation} applied to purely symbolic powers and products of sums.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SymbolicExpandBenchmark {
+    @Param({"4", "8", "12"})
+    public int power;
+    private Tensor power_, product;
+
+    @Setup
+    public void setup() {
+        power_ = Tensors.parse("(a+2*b+c/3+d+e)**" + power);
+        product = Tensors.parse("(a+b+c+d)**" + power + "*(a-b+c/2-d+x)**" + power);
+    }
+
+    @Benchmark
+    public Tensor power() {
+        return ExpandTransformation.expand(power_);
+    }
+
+    @Benchmark
+    public Tensor product() {
+        return ExpandTransformation.expand(product);
+    }
+}
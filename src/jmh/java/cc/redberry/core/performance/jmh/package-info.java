@@ -0,0 +1,37 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * JMH benchmarks of the core hot paths. Inputs are generated by {@link cc.redberry.core.tensor.random.RandomTensor}
+ * with fixed seeds, so results of different builds are comparable. Benchmarks are compiled and run only in the
+ * {@code jmh} Maven profile:
+ * <pre>
+ *     mvn -P jmh test-compile exec:exec
+ * </pre>
+ * Results are written to {@code target/jmh-result.json}.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.3
+ */
+package cc.redberry.core.performance.jmh;
@@ -0,0 +1,400 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.combinatorics;
+
+import cc.redberry.core.utils.IntArrayList;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Group of symmetries (permutations with signs) represented by a base and strong generating set, which is
+ * constructed by the deterministic Schreier-Sims algorithm. The base is always {@code 0, 1, ..., dimension - 1},
+ * so the stabilizer chain is G = G<sup>(0)</sup> &ge; G<sup>(1)</sup> &ge; ... &ge; G<sup>(dimension)</sup> = {1},
+ * where G<sup>(i)</sup> is a pointwise stabilizer of points {@code 0, ..., i - 1}. For each level {@code i} the
+ * orbit of point {@code i} under G<sup>(i)</sup> and the corresponding transversal are stored.
+ *
+ * <p>Such a representation allows to test membership in polynomial time (see {@link #contains(Symmetry)}),
+ * calculate the group order (see {@link #order()}) and enumerate all group elements lazily (see
+ * {@link #iterator()}) without materialization of the whole group. Since signs of symmetries are taken into
+ * account, the construction of strong generating set also checks consistency of the generators: if some
+ * composition of generators gives identity permutation with sign '-', then
+ * {@link InconsistentGeneratorsException} will be thrown.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see Symmetry
+ * @see cc.redberry.core.combinatorics.symmetries.Symmetries
+ */
+public final class PermutationGroup implements Iterable<Symmetry> {
+    private final int dimension;
+    private final Symmetry identity;
+    /**
+     * Strong generators of G<sup>(i)</sup>
+     */
+    private final List<Symmetry>[] generators;
+    /**
+     * Orbit of i under G<sup>(i)</sup>; the first point is always i
+     */
+    private final IntArrayList[] orbits;
+    /**
+     * transversals[i][p] maps i to p; null if p is not in orbit; null array if orbit is trivial
+     */
+    private final Symmetry[][] transversals, inverseTransversals;
+
+    /**
+     * Creates trivial group (which contains only identity) of the specified dimension.
+     *
+     * @param dimension dimension
+     */
+    @SuppressWarnings("unchecked")
+    public PermutationGroup(int dimension) {
+        if (dimension < 0)
+            throw new IllegalArgumentException("Negative dimension.");
+        this.dimension = dimension;
+        this.identity = new Symmetry(dimension);
+        this.generators = new List[dimension];
+        this.orbits = new IntArrayList[dimension];
+        this.transversals = new Symmetry[dimension][];
+        this.inverseTransversals = new Symmetry[dimension][];
+        for (int i = 0; i < dimension; ++i) {
+            generators[i] = new ArrayList<>(0);
+            orbits[i] = new IntArrayList(new int[]{i});
+        }
+    }
+
+    /**
+     * Creates group generated by the specified symmetries.
+     *
+     * @param dimension  dimension
+     * @param generators generators
+     * @throws IllegalArgumentException if dimension of some generator is not equal to the specified dimension
+     * @throws InconsistentGeneratorsException
+     *                                  if generators are inconsistent
+     */
+    public PermutationGroup(int dimension, List<? extends Symmetry> generators) {
+        this(dimension);
+        for (Symmetry generator : generators)
+            add(generator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PermutationGroup(PermutationGroup group) {
+        this.dimension = group.dimension;
+        this.identity = group.identity;
+        this.generators = new List[dimension];
+        this.orbits = new IntArrayList[dimension];
+        this.transversals = new Symmetry[dimension][];
+        this.inverseTransversals = new Symmetry[dimension][];
+        for (int i = 0; i < dimension; ++i) {
+            generators[i] = new ArrayList<>(group.generators[i]);
+            orbits[i] = group.orbits[i].clone();
+            if (group.transversals[i] != null) {
+                transversals[i] = group.transversals[i].clone();
+                inverseTransversals[i] = group.inverseTransversals[i].clone();
+            }
+        }
+    }
+
+    /**
+     * Returns dimension of permutations in this group.
+     *
+     * @return dimension of permutations in this group
+     */
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns {@code true} if the specified symmetry (permutation with the same sign) belongs to this group.
+     *
+     * @param symmetry symmetry
+     * @return {@code true} if the specified symmetry belongs to this group
+     * @throws IllegalArgumentException if dimension of symmetry is not equal to the dimension of this group
+     */
+    public boolean contains(Symmetry symmetry) {
+        checkDimension(symmetry);
+        Symmetry residue = sift(symmetry, 0);
+        return isIdentityPermutation(residue) && !residue.isAntiSymmetry();
+    }
+
+    /**
+     * Returns {@code true} if the specified permutation (regardless of sign) belongs to this group.
+     *
+     * @param permutation permutation
+     * @return {@code true} if the specified permutation belongs to this group
+     * @throws IllegalArgumentException if dimension of permutation is not equal to the dimension of this group
+     */
+    public boolean contains(Permutation permutation) {
+        if (permutation instanceof Symmetry)
+            permutation = new Symmetry(((Symmetry) permutation).permutation, false, true);
+        else
+            permutation = permutation.asSymmetry();
+        checkDimension(permutation);
+        return isIdentityPermutation(sift((Symmetry) permutation, 0));
+    }
+
+    /**
+     * Adds the specified symmetry to the generators of this group.
+     *
+     * @param symmetry symmetry
+     * @return {@code true} if group was extended, and {@code false} if the specified symmetry already belongs
+     *         to this group
+     * @throws IllegalArgumentException if dimension of symmetry is not equal to the dimension of this group
+     * @throws InconsistentGeneratorsException
+     *                                  if the specified symmetry is inconsistent with this group;
+     *                                  in this case the group is left in an undefined state
+     */
+    public boolean add(Symmetry symmetry) {
+        checkDimension(symmetry);
+        Symmetry residue = sift(symmetry, 0);
+        int level = firstMovedPoint(residue);
+        if (level == dimension) {
+            if (residue.isAntiSymmetry())
+                throw new InconsistentGeneratorsException(symmetry.toString());
+            return false;
+        }
+        for (int i = 0; i <= level; ++i)
+            generators[i].add(residue);
+        for (int i = 0; i <= level; ++i)
+            calculateOrbit(i);
+        schreierSims(level);
+        return true;
+    }
+
+    /**
+     * Returns the order of this group.
+     *
+     * @return the order of this group
+     */
+    public BigInteger order() {
+        BigInteger order = BigInteger.ONE;
+        for (int i = 0; i < dimension; ++i)
+            if (orbits[i].size() > 1)
+                order = order.multiply(BigInteger.valueOf(orbits[i].size()));
+        return order;
+    }
+
+    /**
+     * Returns {@code true} if this group contains only identity.
+     *
+     * @return {@code true} if this group contains only identity
+     */
+    public boolean isTrivial() {
+        for (int i = 0; i < dimension; ++i)
+            if (orbits[i].size() > 1)
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the orbit of point {@code level} under the pointwise stabilizer of points {@code 0, ..., level - 1}.
+     * The first element of the returned array is always {@code level}.
+     *
+     * @param level level in stabilizer chain
+     * @return orbit of point {@code level} under the stabilizer of points {@code 0, ..., level - 1}
+     */
+    public int[] getOrbit(int level) {
+        return orbits[level].toArray();
+    }
+
+    /**
+     * Returns element of the pointwise stabilizer of points {@code 0, ..., level - 1} which maps {@code level}
+     * to {@code point}, or {@code null} if there is no such element.
+     *
+     * @param level level in stabilizer chain
+     * @param point point in orbit
+     * @return element of stabilizer which maps {@code level} to {@code point} or null
+     */
+    public Symmetry getTransversal(int level, int point) {
+        if (level == point)
+            return identity;
+        return transversals[level] == null ? null : transversals[level][point];
+    }
+
+    /**
+     * Returns lazy iterator over all elements of this group. The first element is always identity.
+     *
+     * @return lazy iterator over all elements of this group
+     */
+    @Override
+    public Iterator<Symmetry> iterator() {
+        return new GroupIterator();
+    }
+
+    /**
+     * Returns a copy of this group.
+     *
+     * @return a copy of this group
+     */
+    @Override
+    public PermutationGroup clone() {
+        return new PermutationGroup(this);
+    }
+
+    private void checkDimension(Permutation permutation) {
+        if (permutation.dimension() != dimension)
+            throw new IllegalArgumentException("Wrong dimension: " + permutation.dimension());
+    }
+
+    /**
+     * Strips element through the stabilizer chain starting from the specified level.
+     */
+    private Symmetry sift(Symmetry element, int level) {
+        int point;
+        for (; level < dimension; ++level) {
+            if ((point = element.newIndexOf(level)) == level)
+                continue;
+            if (transversals[level] == null || transversals[level][point] == null)
+                return element;
+            element = element.composition(inverseTransversals[level][point]);
+        }
+        return element;
+    }
+
+    private int firstMovedPoint(Permutation permutation) {
+        int i = 0;
+        while (i < dimension && permutation.newIndexOf(i) == i)
+            ++i;
+        return i;
+    }
+
+    private boolean isIdentityPermutation(Permutation permutation) {
+        return firstMovedPoint(permutation) == dimension;
+    }
+
+    private void calculateOrbit(int level) {
+        IntArrayList orbit = orbits[level];
+        orbit.clear();
+        orbit.add(level);
+        if (generators[level].isEmpty()) {
+            transversals[level] = inverseTransversals[level] = null;
+            return;
+        }
+        Symmetry[] transversal = new Symmetry[dimension], inverse = new Symmetry[dimension];
+        transversal[level] = inverse[level] = identity;
+        int point, image;
+        for (int i = 0; i < orbit.size(); ++i) {
+            point = orbit.get(i);
+            for (Symmetry generator : generators[level])
+                if (transversal[image = generator.newIndexOf(point)] == null) {
+                    transversal[image] = transversal[point].composition(generator);
+                    inverse[image] = transversal[image].inverse();
+                    orbit.add(image);
+                }
+        }
+        transversals[level] = transversal;
+        inverseTransversals[level] = inverse;
+    }
+
+    /**
+     * Completes the strong generating set, assuming that levels deeper than the specified one are complete.
+     */
+    private void schreierSims(int level) {
+        int point;
+        Symmetry schreierGenerator;
+        boolean extended;
+        while (level >= 0) {
+            extended = false;
+            out:
+            for (int i = 0; i < orbits[level].size(); ++i) {
+                point = orbits[level].get(i);
+                for (Symmetry generator : generators[level]) {
+                    schreierGenerator = getTransversal(level, point).composition(generator)
+                            .composition(inverseTransversals[level][generator.newIndexOf(point)]);
+                    schreierGenerator = sift(schreierGenerator, level + 1);
+                    int moved = firstMovedPoint(schreierGenerator);
+                    if (moved == dimension) {
+                        if (schreierGenerator.isAntiSymmetry())
+                            throw new InconsistentGeneratorsException();
+                        continue;
+                    }
+                    for (int j = level + 1; j <= moved; ++j) {
+                        generators[j].add(schreierGenerator);
+                        calculateOrbit(j);
+                    }
+                    level = moved;
+                    extended = true;
+                    break out;
+                }
+            }
+            if (!extended)
+                --level;
+        }
+    }
+
+    private final class GroupIterator implements Iterator<Symmetry> {
+        /**
+         * Levels with nontrivial orbits
+         */
+        private final int[] levels;
+        private final int[] positions;
+        /**
+         * partial[k] = transversal of levels[levels.length - 1] * ... * transversal of levels[k]
+         */
+        private final Symmetry[] partial;
+        private boolean hasNext = true;
+
+        private GroupIterator() {
+            IntArrayList levels = new IntArrayList();
+            for (int i = 0; i < dimension; ++i)
+                if (orbits[i].size() > 1)
+                    levels.add(i);
+            this.levels = levels.toArray();
+            this.positions = new int[this.levels.length];
+            this.partial = new Symmetry[this.levels.length + 1];
+            for (int k = this.levels.length; k >= 0; --k)
+                partial[k] = identity;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public Symmetry next() {
+            if (!hasNext)
+                throw new NoSuchElementException();
+            Symmetry current = partial[0];
+            int k = 0;
+            while (k < levels.length && ++positions[k] == orbits[levels[k]].size())
+                positions[k++] = 0;
+            if (k == levels.length)
+                hasNext = false;
+            else
+                for (; k >= 0; --k)
+                    partial[k] = partial[k + 1].composition(
+                            getTransversal(levels[k], orbits[levels[k]].get(positions[k])));
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+    }
+}
@@ -22,6 +22,7 @@
  */
 package cc.redberry.core.combinatorics.symmetries;
 
+import cc.redberry.core.combinatorics.PermutationGroup;
 import cc.redberry.core.combinatorics.Symmetry;
 
 import java.util.List;
@@ -35,12 +36,31 @@ abstract class AbstractSymmetries implements Symmetries {
 
     protected final int dimension;
     protected final List<Symmetry> basis;
+    /**
+     * Lazily constructed strong generating set; it is never modified after publication, so it can be shared
+     * between clones
+     */
+    protected volatile PermutationGroup group;
 
     public AbstractSymmetries(int dimension, List<Symmetry> basis) {
         this.dimension = dimension;
         this.basis = basis;
     }
 
+    AbstractSymmetries(int dimension, List<Symmetry> basis, PermutationGroup group) {
+        this.dimension = dimension;
+        this.basis = basis;
+        this.group = group;
+    }
+
+    @Override
+    public PermutationGroup getPermutationGroup() {
+        PermutationGroup group = this.group;
+        if (group == null)
+            this.group = group = new PermutationGroup(dimension, basis);
+        return group;
+    }
+
     @Override
     public int hashCode() {
         return 235 + this.basis.hashCode();
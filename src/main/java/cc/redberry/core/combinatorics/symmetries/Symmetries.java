@@ -23,6 +23,7 @@
 package cc.redberry.core.combinatorics.symmetries;
 
 import cc.redberry.core.combinatorics.InconsistentGeneratorsException;
+import cc.redberry.core.combinatorics.PermutationGroup;
 import cc.redberry.core.combinatorics.PermutationsSpanIterator;
 import cc.redberry.core.combinatorics.Symmetry;
 
@@ -48,9 +49,11 @@ import java.util.List;
  * </p>
  * <p/>
  * <p>Iterator returned by this set iterates over all possible compositions
- * of symmetries from set, i.e. it works as {@link PermutationsSpanIterator}.
+ * of symmetries from set, i.e. over the same elements as {@link PermutationsSpanIterator}, but lazily.
  * To extract only the basis symmetries, a special method {@link #getBasisSymmetries() }
- * introduced. This method returns an unmodifiable list of basis symmetries.</p>
+ * introduced. This method returns an unmodifiable list of basis symmetries. The whole group is represented
+ * by the base and strong generating set (see {@link #getPermutationGroup()}), so membership tests and
+ * consistency checks take polynomial time.</p>
  * <p/>
  * <p>Objects of this type can be created via static factory methods
  * in {@link SymmetriesFactory}.</p>
@@ -117,6 +120,14 @@ public interface Symmetries extends Iterable<Symmetry> {
      */
     List<Symmetry> getBasisSymmetries();
 
+    /**
+     * Returns the group generated by symmetries from this set, represented by the base and strong generating set.
+     * The returned object should not be modified.
+     *
+     * @return group generated by symmetries from this set
+     */
+    PermutationGroup getPermutationGroup();
+
     /**
      * Returns a deep clone of this set.
      *
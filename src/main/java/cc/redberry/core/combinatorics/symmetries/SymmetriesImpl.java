@@ -23,7 +23,7 @@
 package cc.redberry.core.combinatorics.symmetries;
 
 import cc.redberry.core.combinatorics.InconsistentGeneratorsException;
-import cc.redberry.core.combinatorics.PermutationsSpanIterator;
+import cc.redberry.core.combinatorics.PermutationGroup;
 import cc.redberry.core.combinatorics.Symmetry;
 
 import java.util.ArrayList;
@@ -42,6 +42,10 @@ final class SymmetriesImpl extends AbstractSymmetries {
         super(dimension, basis);
     }
 
+    private SymmetriesImpl(int dimension, List<Symmetry> basis, PermutationGroup group) {
+        super(dimension, basis, group);
+    }
+
     @Override
     public int dimension() {
         return dimension;
@@ -52,42 +56,33 @@ final class SymmetriesImpl extends AbstractSymmetries {
             throws InconsistentGeneratorsException {
         if (symmetry.dimension() != dimension)
             throw new IllegalArgumentException();
-        PermutationsSpanIterator<Symmetry> it = new PermutationsSpanIterator<>(basis);
-        //TODO BOTTLENECK review
-        while (it.hasNext()) {
-            Symmetry s = it.next();
-            if (s.equals(symmetry))
-                return false;
-        }
+        //published group is never modified
+        PermutationGroup group = getPermutationGroup().clone();
+        //membership test and consistency check by Schreier-Sims
+        if (!group.add(symmetry))
+            return false;
         basis.add(symmetry);
-        //BOTTLENECK
-        //checking consistense
-        it = new PermutationsSpanIterator<>(basis);
-        while (it.hasNext())
-            it.next();
+        this.group = group;
         return true;
     }
 
     @Override
     public boolean addUnsafe(Symmetry symmetry) {
         basis.add(symmetry);
+        group = null;
         return true;
     }
 
     /**
-     * Returns iterator over basis symmetries (which are contains in this set)
-     * and all possible symmetries, which can be obtained by composing the basis
-     * symmetries, i.e. it works as {@link PermutationsSpanIterator}.
+     * Returns lazy iterator over all symmetries, which can be obtained by composing the basis symmetries. The
+     * elements are enumerated using the strong generating set, so they are not stored in memory.
      *
-     * @return iterator over basis symmetries (which are contains in this set)
-     *         and all possible symmetries, which can be obtained by composing
-     *         the basis symmetries, i.e. it works as
-     *         {@code PermutationsSpanIterator}
-     * @see PermutationsSpanIterator
+     * @return lazy iterator over all symmetries, which can be obtained by composing the basis symmetries
+     * @see PermutationGroup#iterator()
      */
     @Override
     public Iterator<Symmetry> iterator() {
-        return new PermutationsSpanIterator<>(basis);
+        return getPermutationGroup().iterator();
     }
 
     @Override
@@ -102,7 +97,7 @@ final class SymmetriesImpl extends AbstractSymmetries {
 
     @Override
     public SymmetriesImpl clone() {
-        return new SymmetriesImpl(dimension, new ArrayList<>(basis));
+        return new SymmetriesImpl(dimension, new ArrayList<>(basis), group);
     }
 
     @Override
@@ -25,6 +25,7 @@ package cc.redberry.core.context;
 import cc.redberry.core.indices.*;
 import cc.redberry.core.parser.ParseManager;
 import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.TensorInterner;
 import cc.redberry.core.tensor.Tensors;
 import cc.redberry.core.utils.LongBackedBitArray;
 
@@ -67,6 +68,10 @@ public final class Context {
      * This is a "map" from (byte) type to (bit) isMetric
      */
     private final LongBackedBitArray metricTypes = new LongBackedBitArray(128);
+    /**
+     * Weak interning table of tensors
+     */
+    private final TensorInterner tensorInterner;
 
     /**
      * Creates context from the settings
@@ -80,6 +85,7 @@ public final class Context {
         nameManager = new NameManager(contextSettings.getNameManagerSeed(), contextSettings.getKronecker(), contextSettings.getMetricName());
 
         defaultOutputFormat = contextSettings.getDefaultOutputFormat();
+        tensorInterner = new TensorInterner(contextSettings.isTensorInterning());
 
         for (IndexType type : contextSettings.getMetricTypes())
             metricTypes.set(type.getType());
@@ -94,6 +100,7 @@ public final class Context {
      */
     public synchronized void resetTensorNames() {
         nameManager.reset();
+        tensorInterner.clear();
     }
 
     /**
@@ -110,6 +117,7 @@ public final class Context {
      */
     public synchronized void resetTensorNames(long seed) {
         nameManager.reset(seed);
+        tensorInterner.clear();
     }
 
     /**
@@ -238,6 +246,36 @@ public final class Context {
         return parseManager;
     }
 
+    /**
+     * Returns tensors interning table of current session
+     *
+     * @return tensors interning table of current session
+     * @see TensorInterner
+     */
+    public TensorInterner getTensorInterner() {
+        return tensorInterner;
+    }
+
+    /**
+     * Switches tensors interning on or off. Switching off clears interning table.
+     *
+     * @param enabled whether tensors interning is switched on
+     * @see TensorInterner
+     */
+    public void setTensorInterning(boolean enabled) {
+        tensorInterner.setEnabled(enabled);
+    }
+
+    /**
+     * Returns true if tensors interning is switched on.
+     *
+     * @return true if tensors interning is switched on
+     * @see TensorInterner
+     */
+    public boolean isTensorInterning() {
+        return tensorInterner.isEnabled();
+    }
+
     /**
      * Returns true if metric is defined for the specified index type.
      *
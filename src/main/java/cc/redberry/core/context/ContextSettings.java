@@ -46,6 +46,7 @@ public class ContextSettings {
     private Long nameManagerSeed;
     private IndexConverterManager converterManager = IndexConverterManager.DEFAULT;
     private Parser parser = Parser.DEFAULT;
+    private boolean tensorInterning = false;
 
     /**
      * Creates context settings with specified default output format and Kronecker delta name.
@@ -189,4 +190,23 @@ public class ContextSettings {
     public Parser getParser() {
         return parser;
     }
+
+    /**
+     * Returns whether tensors interning is switched on
+     *
+     * @return whether tensors interning is switched on
+     * @see cc.redberry.core.tensor.TensorInterner
+     */
+    public boolean isTensorInterning() {
+        return tensorInterning;
+    }
+
+    /**
+     * Switches tensors interning on or off
+     *
+     * @see cc.redberry.core.tensor.TensorInterner
+     */
+    public void setTensorInterning(boolean tensorInterning) {
+        this.tensorInterning = tensorInterning;
+    }
 }
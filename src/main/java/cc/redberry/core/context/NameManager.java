@@ -25,15 +25,11 @@ package cc.redberry.core.context;
 import cc.redberry.core.indices.IndexType;
 import cc.redberry.core.indices.StructureOfIndices;
 import cc.redberry.core.parser.ParserException;
-import cc.redberry.core.utils.ArraysUtils;
-import cc.redberry.core.utils.IntArrayList;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.Well44497b;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Object of this class represents a namespace of simple tensor and tensor fields in Redberry.
@@ -43,6 +39,9 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * through Redberry session. Each session of Redberry holds only one instance of this class, it can be obtained
  * through {@link CC#getNameManager()}.
  *
+ * <p>Lookups of existing name descriptors are lock-free; only creation of new descriptors and resets of namespace
+ * are synchronized.</p>
+ *
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  * @since 1.0
@@ -51,13 +50,13 @@ public final class NameManager {
 
     private long seed;
     private final RandomGenerator random;
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final Lock readLock = readWriteLock.readLock();
-    private final Lock writeLock = readWriteLock.writeLock();
-    private final Map<Integer, NameDescriptor> fromId = new HashMap<>();
-    private final Map<NameAndStructureOfIndices, NameDescriptor> fromStructure = new HashMap<>();
+    //guards creation of new descriptors and modifications of namespace
+    private final Object writeLock = new Object();
+    private final ConcurrentHashMap<Integer, NameDescriptor> fromId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<NameAndStructureOfIndices, NameDescriptor> fromStructure = new ConcurrentHashMap<>();
     private final String[] kroneckerAndMetricNames = {"d", "g"};
-    private final IntArrayList kroneckerAndMetricIds = new IntArrayList();
+    //sorted; copy-on-write
+    private volatile int[] kroneckerAndMetricIds = new int[0];
 
     NameManager(Long seed, String kronecker, String metric) {
         if (seed == null) {
@@ -76,7 +75,7 @@ public final class NameManager {
      * @return {@code true} if specified identifier is identifier of metric or Kronecker tensor
      */
     public boolean isKroneckerOrMetric(int name) {
-        return ArraysUtils.binarySearch(kroneckerAndMetricIds, name) >= 0;
+        return Arrays.binarySearch(kroneckerAndMetricIds, name) >= 0;
     }
 
     /**
@@ -120,14 +119,11 @@ public final class NameManager {
     }
 
     private void rebuild() {
-        writeLock.lock();
-        try {
+        synchronized (writeLock) {
             fromStructure.clear();
             for (NameDescriptor descriptor : fromId.values())
                 for (NameAndStructureOfIndices itsan : descriptor.getKeys())
                     fromStructure.put(itsan, descriptor);
-        } finally {
-            writeLock.unlock();
         }
     }
 
@@ -170,38 +166,26 @@ public final class NameManager {
      */
     public NameDescriptor mapNameDescriptor(String sname, StructureOfIndices... structureOfIndiceses) {
         NameAndStructureOfIndices key = new NameAndStructureOfIndices(sname, structureOfIndiceses);
-        boolean rLocked = true;
-        readLock.lock();
-        try {
-            NameDescriptor knownND = fromStructure.get(key);
-            if (knownND == null) {
-                readLock.unlock();
-                rLocked = false;
-                writeLock.lock();
-                try {
-                    knownND = fromStructure.get(key);
-                    if (knownND == null) { //Double check
-                        int name = generateNewName();
-                        NameDescriptor descriptor = createDescriptor(sname, structureOfIndiceses, name);
-                        if (descriptor instanceof NameDescriptorForMetricAndKronecker) {
-                            kroneckerAndMetricIds.add(name);
-                            kroneckerAndMetricIds.sort();
-                        }
-                        fromId.put(name, descriptor);
-                        for (NameAndStructureOfIndices key1 : descriptor.getKeys())
-                            fromStructure.put(key1, descriptor);
-                        return descriptor;
-                    }
-                    readLock.lock();
-                    rLocked = true;
-                } finally {
-                    writeLock.unlock();
-                }
-            }
+        NameDescriptor knownND = fromStructure.get(key);
+        if (knownND != null)
             return knownND;
-        } finally {
-            if (rLocked)
-                readLock.unlock();
+        synchronized (writeLock) {
+            knownND = fromStructure.get(key);
+            if (knownND != null) //Double check
+                return knownND;
+            int name = generateNewName();
+            NameDescriptor descriptor = createDescriptor(sname, structureOfIndiceses, name);
+            if (descriptor instanceof NameDescriptorForMetricAndKronecker) {
+                int[] ids = Arrays.copyOf(kroneckerAndMetricIds, kroneckerAndMetricIds.length + 1);
+                ids[ids.length - 1] = name;
+                Arrays.sort(ids);
+                kroneckerAndMetricIds = ids;
+            }
+            //descriptor should be accessible by id before it becomes accessible by structure
+            fromId.put(name, descriptor);
+            for (NameAndStructureOfIndices key1 : descriptor.getKeys())
+                fromStructure.put(key1, descriptor);
+            return descriptor;
         }
     }
 
@@ -209,14 +193,11 @@ public final class NameManager {
      * See {@link Context#resetTensorNames()}.
      */
     void reset() {
-        writeLock.lock();
-        try {
-            kroneckerAndMetricIds.clear();
-            fromId.clear();
+        synchronized (writeLock) {
+            kroneckerAndMetricIds = new int[0];
             fromStructure.clear();
+            fromId.clear();
             random.setSeed(this.seed = random.nextLong());
-        } finally {
-            writeLock.unlock();
         }
     }
 
@@ -224,19 +205,16 @@ public final class NameManager {
      * See {@link Context#resetTensorNames()}.
      */
     void reset(long seed) {
-        writeLock.lock();
-        try {
-            kroneckerAndMetricIds.clear();
-            fromId.clear();
+        synchronized (writeLock) {
+            kroneckerAndMetricIds = new int[0];
             fromStructure.clear();
+            fromId.clear();
             random.setSeed(this.seed = seed);
-        } finally {
-            writeLock.unlock();
         }
     }
 
     /**
-     * <b>Important:</b> run only in write lock!
+     * <b>Important:</b> run only while holding write lock!
      */
     private int generateNewName() {
         int name;
@@ -253,12 +231,7 @@ public final class NameManager {
      * @return name descriptor of the specified unique identifier of simple tensor
      */
     public NameDescriptor getNameDescriptor(int nameId) {
-        readLock.lock();
-        try {
-            return fromId.get(nameId);
-        } finally {
-            readLock.unlock();
-        }
+        return fromId.get(nameId);
     }
 
     /*
@@ -59,6 +59,9 @@ public final class DefaultContextSettings {
         if (System.getProperty("redberry.nmseed") != null)
             defaultSettings.setNameManagerSeed(Long.parseLong(System.getProperty("redberry.nmseed"), 10));
 
+        //Switching on tensors interning if specified in property
+        defaultSettings.setTensorInterning(Boolean.getBoolean("redberry.intern"));
+
         return defaultSettings;
     }
 }
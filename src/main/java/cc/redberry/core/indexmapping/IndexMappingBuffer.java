@@ -77,11 +77,11 @@ public interface IndexMappingBuffer {
     FromToHolder export();
 
     /**
-     * Returns the internal mapping container.
+     * Returns mapping entries as a map from names of "from" indices to records. Implementations are not required to
+     * return their internal container, so the returned map should be used only for reading.
      *
-     * @return the internal mapping container
+     * @return mapping entries
      */
-    //TODO TIntObjectHashMap ( YES issue #86 !)
     Map<Integer, IndexMappingBufferRecord> getMap();
 
     /**
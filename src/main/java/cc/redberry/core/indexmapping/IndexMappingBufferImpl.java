@@ -25,46 +25,74 @@ package cc.redberry.core.indexmapping;
 import cc.redberry.core.context.CC;
 import cc.redberry.core.context.Context;
 import cc.redberry.core.context.OutputFormat;
+import cc.redberry.core.indices.InconsistentIndicesException;
 import cc.redberry.core.indices.IndicesUtils;
 
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import static cc.redberry.core.indices.IndicesUtils.setRawState;
 
 /**
  * Basic implementation of {@link IndexMappingBuffer}.
  *
+ * <p>Mapping entries are stored in parallel primitive arrays sorted by names of "from" indices: names of "from"
+ * indices, names of "to" indices and states of each entry (states have the same meaning as in
+ * {@link IndexMappingBufferRecord}). Buffers are cloned at each branch point of mapping search, so arrays are
+ * shared between the clones and copied only on the first modification of a clone (copy-on-write).</p>
+ *
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  * @since 1.0
  */
 public final class IndexMappingBufferImpl implements IndexMappingBuffer {
-
-    protected final Map<Integer, IndexMappingBufferRecord> map;
+    private static final int DEFAULT_CAPACITY = 8;
+    int[] fromNames, toNames;
+    byte[] states;
+    int size;
+    /**
+     * {@code true} if arrays are shared with some other buffer
+     */
+    private boolean shared;
     protected boolean sign = false;
 
     /**
      * Constructs empty buffer.
      */
     public IndexMappingBufferImpl() {
-        this.map = new HashMap<>();
+        this(false);
     }
 
     /**
      * Constructs empty buffer with specified sign.
      */
     public IndexMappingBufferImpl(boolean sign) {
-        this.map = new HashMap<>();
+        this.fromNames = new int[DEFAULT_CAPACITY];
+        this.toNames = new int[DEFAULT_CAPACITY];
+        this.states = new byte[DEFAULT_CAPACITY];
         this.sign = sign;
     }
 
-    private IndexMappingBufferImpl(Map<Integer, IndexMappingBufferRecord> map, boolean sign) {
-        this.map = map;
+    private IndexMappingBufferImpl(int[] fromNames, int[] toNames, byte[] states, int size, boolean sign) {
+        this.fromNames = fromNames;
+        this.toNames = toNames;
+        this.states = states;
+        this.size = size;
         this.sign = sign;
+        this.shared = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (!shared && capacity <= fromNames.length)
+            return;
+        capacity = Math.max(capacity, fromNames.length);
+        if (capacity > fromNames.length)
+            capacity = Math.max(capacity, fromNames.length * 3 / 2 + 1);
+        fromNames = Arrays.copyOf(fromNames, capacity);
+        toNames = Arrays.copyOf(toNames, capacity);
+        states = Arrays.copyOf(states, capacity);
+        shared = false;
     }
 
     @Override
@@ -74,25 +102,53 @@ public final class IndexMappingBufferImpl implements IndexMappingBuffer {
 
     @Override
     public boolean tryMap(int from, int to) {
-        int fromState = IndicesUtils.getStateInt(from);
-        if (fromState != IndicesUtils.getStateInt(to) && !CC.isMetric(IndicesUtils.getType(from)))
+        int fromState = IndicesUtils.getStateInt(from), toState = IndicesUtils.getStateInt(to);
+        if (fromState != toState && !CC.isMetric(IndicesUtils.getType(from)))
             return false;
-        int fromName = IndicesUtils.getNameWithType(from);
-        IndexMappingBufferRecord record = map.get(fromName);
-        if (record == null) {
-            record = new IndexMappingBufferRecord(from, to);
-            map.put(fromName, record);
+        int fromName = IndicesUtils.getNameWithType(from),
+                toName = IndicesUtils.getNameWithType(to);
+        int position = Arrays.binarySearch(fromNames, 0, size, fromName);
+        if (position < 0) {
+            position = -position - 1;
+            ensureCapacity(size + 1);
+            System.arraycopy(fromNames, position, fromNames, position + 1, size - position);
+            System.arraycopy(toNames, position, toNames, position + 1, size - position);
+            System.arraycopy(states, position, states, position + 1, size - position);
+            fromNames[position] = fromName;
+            toNames[position] = toName;
+            states[position] = (byte) ((1 << toState) | ((fromState ^ toState) << 2));
+            ++size;
             return true;
         }
-        return record.tryMap(from, to);
+        //see IndexMappingBufferRecord.tryMap(int, int)
+        if (toNames[position] != toName)
+            return false;
+        if ((fromState != toState) != ((states[position] & 0x4) == 0x4))
+            throw new InconsistentIndicesException(from);
+        if ((states[position] & (1 << toState)) != 0)
+            throw new InconsistentIndicesException(to);
+        ensureCapacity(size);
+        states[position] |= 1 << toState;
+        return true;
     }
 
     @Override
     public void removeContracted() {
-        Iterator<IndexMappingBufferRecord> iterator = map.values().iterator();
-        while (iterator.hasNext())
-            if (iterator.next().isContracted())
-                iterator.remove();
+        int i, j = 0;
+        //nothing to remove
+        for (i = 0; i < size; ++i)
+            if ((states[i] & 3) == 3)
+                break;
+        if (i == size)
+            return;
+        ensureCapacity(size);
+        for (j = i; i < size; ++i)
+            if ((states[i] & 3) != 3) {
+                fromNames[j] = fromNames[i];
+                toNames[j] = toNames[i];
+                states[j++] = states[i];
+            }
+        size = j;
     }
 
     @Override
@@ -100,55 +156,91 @@ public final class IndexMappingBufferImpl implements IndexMappingBuffer {
         return sign;
     }
 
+    /**
+     * Returns a snapshot of mapping entries as a map from names of "from" indices to records. Modifications of the
+     * returned map do not affect this buffer.
+     *
+     * @return a snapshot of mapping entries
+     */
     @Override
     public Map<Integer, IndexMappingBufferRecord> getMap() {
+        Map<Integer, IndexMappingBufferRecord> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; ++i)
+            map.put(fromNames[i], new IndexMappingBufferRecord(states[i], toNames[i]));
         return map;
     }
 
+    /**
+     * Returns the number of mapping entries.
+     *
+     * @return the number of mapping entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns name (with type) of "from" index of i-th mapping entry (entries are sorted by names of "from" indices).
+     *
+     * @param i position of entry
+     * @return name of "from" index of i-th mapping entry
+     */
+    public int getFromName(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException();
+        return fromNames[i];
+    }
+
+    /**
+     * Returns name (with type) of "to" index of i-th mapping entry (entries are sorted by names of "from" indices).
+     *
+     * @param i position of entry
+     * @return name of "to" index of i-th mapping entry
+     */
+    public int getToName(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException();
+        return toNames[i];
+    }
+
+    /**
+     * Returns {@code true} if "from" and "to" indices of i-th mapping entry have different states.
+     *
+     * @param i position of entry
+     * @return {@code true} if "from" and "to" indices of i-th mapping entry have different states
+     */
+    public boolean diffStatesInitialized(int i) {
+        if (i >= size)
+            throw new IndexOutOfBoundsException();
+        return (states[i] & 4) == 4;
+    }
+
+    /**
+     * Returns position of entry with specified name of "from" index or negative value if there is no such entry.
+     *
+     * @param fromName name (with type) of "from" index
+     * @return position of entry with specified name of "from" index or negative value if there is no such entry
+     */
+    public int indexOf(int fromName) {
+        return Arrays.binarySearch(fromNames, 0, size, fromName);
+    }
+
     @Override
     public boolean isEmpty() {
-        return map.isEmpty();
+        return size == 0;
     }
 
     @Override
     public FromToHolder export() {
-        final int size = map.size();
-        int[] from = new int[size],
-                to = new int[size];
-        int i = 0;
-        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet()) {
-            from[i] = entry.getKey();
-            to[i++] = entry.getValue().getIndexName();
-        }
-        return new FromToHolder(from, to, sign);
+        return new FromToHolder(Arrays.copyOf(fromNames, size), Arrays.copyOf(toNames, size), sign);
     }
 
     @Override
     public IndexMappingBufferImpl clone() {
-        Map<Integer, IndexMappingBufferRecord> newMap = new HashMap<>();
-        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet())
-            newMap.put(entry.getKey(), entry.getValue().clone());
-        return new IndexMappingBufferImpl(newMap, sign);
+        shared = true;
+        return new IndexMappingBufferImpl(fromNames, toNames, states, size, sign);
     }
 
-    //    @Override
-    //    public String toString() {
-    //        StringBuilder sb = new StringBuilder();
-    //        sb.append(sign ? '-' : '+');
-    //        if (map.isEmpty())
-    //            return sb.append(":empty buffer").toString();
-    //        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet()) {
-    //            sb.append(Context.get().getIndexConverterManager().getSymbol(entry.getKey(), OutputFormat.UTF8));
-    //            sb.append("->");
-    //            sb.append(Context.get().getIndexConverterManager().getSymbol(entry.getValue().getIndexName(), OutputFormat.UTF8));
-    //            sb.append(":");
-    //            for (int i = 2; i >= 0; --i)
-    //                sb.append(entry.getValue().getStatesBit(i) ? 1 : 0);
-    //            sb.append(",");
-    //        }
-    //        sb.deleteCharAt(sb.length() - 1);
-    //        return sb.toString();
-    //    }
     @Override
     public String toString() {
         return toString(CC.getDefaultOutputFormat());
@@ -167,59 +259,25 @@ public final class IndexMappingBufferImpl implements IndexMappingBuffer {
     public String toString(OutputFormat format) {
         StringBuilder sb = new StringBuilder();
         sb.append(sign ? '-' : '+').append('{');
-        if (map.isEmpty())
+        if (size == 0)
             return sb.append('}').toString();
         String from, to;
-        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet()) {
-            if (entry.getValue().isContracted()) {
-                from = toStringIndex(entry.getKey(), format).substring(1);
-                to = toStringIndex(entry.getValue().getIndexName(), format).substring(1);
+        IndexMappingBufferRecord record;
+        for (int i = 0; i < size; ++i) {
+            record = new IndexMappingBufferRecord(states[i], toNames[i]);
+            if (record.isContracted()) {
+                from = toStringIndex(fromNames[i], format).substring(1);
+                to = toStringIndex(toNames[i], format).substring(1);
                 sb.append(',');
             } else {
-                from = toStringIndex(setRawState(entry.getValue().getFromState(), entry.getKey()), format);
-                to = toStringIndex(setRawState(entry.getValue().getToState(), entry.getValue().getIndexName()), format);
+                from = toStringIndex(setRawState(record.getFromState(), fromNames[i]), format);
+                to = toStringIndex(setRawState(record.getToState(), toNames[i]), format);
             }
             sb.append(from).append(" -> ").append(to).append(", ");
         }
         sb.deleteCharAt(sb.length() - 1).deleteCharAt(sb.length() - 1).append('}');
         return sb.toString();
     }
-    //    public String toStringWithStates() {
-    //        StringBuilder sb = new StringBuilder();
-    //        sb.append(sign ? '-' : '+');
-    //        if (map.isEmpty())
-    //            return sb.append(":empty buffer").toString();
-    //        Map<Integer,Integer> map = getMap();
-    //        int from,to;
-    //        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
-    //            from=entry.getKey();
-    //            to = entry.getValue();
-    //            if((from & 0x80000000) == 0x80000000){
-    //                sb.append("^");
-    //            }else
-    //                sb.append("_");
-    //            sb.append(Context.get().getIndexConverterManager().getSymbol(from & 0x7FFFFFFF , OutputFormat.UTF8));
-    //            sb.append("->");
-    //              if((to & 0x80000000) == 0x80000000){
-    //                sb.append("^");
-    //            }else
-    //                sb.append("_");
-    //            sb.append(Context.get().getIndexConverterManager().getSymbol(to & 0x7FFFFFFF, OutputFormat.UTF8));
-    //            sb.append(",");
-    //        }
-    //        sb.deleteCharAt(sb.length() - 1);
-    //        return sb.toString();
-    //    }
-    //    @Override
-    //    public IndexMappingImpl toMapping() {
-    //        int[] from = new int[map.size()], to = new int[map.size()];
-    //        int i = 0;
-    //        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet()) {
-    //            from[i] = entry.getKey().intValue();
-    //            to[i++] = entry.getValue().getIndexName();
-    //        }
-    //        return new IndexMappingImpl(new int[0], from, to);
-    //    }
 
     @Override
     public boolean equals(Object obj) {
@@ -232,41 +290,19 @@ public final class IndexMappingBufferImpl implements IndexMappingBuffer {
         final IndexMappingBufferImpl other = (IndexMappingBufferImpl) obj;
         if (sign != other.sign)
             return false;
-        if (map.size() != other.map.size())
+        if (size != other.size)
             return false;
-        if (hashCode() != other.hashCode())
-            return false;
-        return map.equals(other.map);
-
-        //
-        //
-        //        Map.Entry<Integer, IndexMappingBufferRecord>[] first = map.entrySet().toArray(new Map.Entry[map.size()]);
-        //        Map.Entry<Integer, IndexMappingBufferRecord>[] second = other.map.entrySet().toArray(new Map.Entry[map.size()]);
-        //
-        //        Arrays.sort(first, entryComparator);
-        //        Arrays.sort(second, entryComparator);
-        //        for (int i = 0; i < first.length; ++i) {
-        //            if (!first[i].getKey().equals(second[i].getKey()))
-        //                return false;
-        //            if (!first[i].getValue().equals(second[i].getValue()))
-        //                return false;
-        //        }
-        //        return true;
+        for (int i = 0; i < size; ++i)
+            if (fromNames[i] != other.fromNames[i] || toNames[i] != other.toNames[i] || states[i] != other.states[i])
+                return false;
+        return true;
     }
 
-    private static Comparator<Map.Entry<Integer, IndexMappingBufferRecord>> entryComparator = new Comparator<Map.Entry<Integer, IndexMappingBufferRecord>>() {
-
-        @Override
-        public int compare(Entry<Integer, IndexMappingBufferRecord> o1, Entry<Integer, IndexMappingBufferRecord> o2) {
-            return o1.getKey().compareTo(o2.getKey());
-        }
-    };
-
     @Override
     public int hashCode() {
         int hash = 7;
-        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet())
-            hash = hash * 31 + entry.hashCode();
+        for (int i = 0; i < size; ++i)
+            hash = hash * 31 + (fromNames[i] ^ (31 * (31 * 7 + states[i]) + toNames[i]));
         hash = 79 * hash + (this.sign ? 1 : 0);
         return hash;
     }
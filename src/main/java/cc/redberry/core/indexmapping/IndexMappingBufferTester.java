@@ -193,17 +193,13 @@ public final class IndexMappingBufferTester implements IndexMappingBuffer {
 
     @Override
     public FromToHolder export() {
-        final Map<Integer, IndexMappingBufferRecord> map = innerBuffer.map;
-        final int size = from.length + map.size();
+        final int size = from.length + innerBuffer.size;
         int[] from1 = new int[size],
                 to1 = new int[size];
         System.arraycopy(from, 0, from1, 0, from.length);
         System.arraycopy(to, 0, to1, 0, from.length);
-        int i = from.length;
-        for (Map.Entry<Integer, IndexMappingBufferRecord> entry : map.entrySet()) {
-            from1[i] = entry.getKey();
-            to1[i++] = entry.getValue().getIndexName();
-        }
+        System.arraycopy(innerBuffer.fromNames, 0, from1, from.length, innerBuffer.size);
+        System.arraycopy(innerBuffer.toNames, 0, to1, from.length, innerBuffer.size);
         return new FromToHolder(from1, to1, getSign());
     }
 
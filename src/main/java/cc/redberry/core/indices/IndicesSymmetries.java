@@ -23,6 +23,7 @@
 package cc.redberry.core.indices;
 
 import cc.redberry.core.combinatorics.InconsistentGeneratorsException;
+import cc.redberry.core.combinatorics.PermutationGroup;
 import cc.redberry.core.combinatorics.Symmetry;
 import cc.redberry.core.combinatorics.symmetries.Symmetries;
 import cc.redberry.core.combinatorics.symmetries.SymmetriesFactory;
@@ -81,6 +82,17 @@ public class IndicesSymmetries implements Iterable<Symmetry> {
         return symmetries;
     }
 
+    /**
+     * Returns the group of symmetries represented by the base and strong generating set. The returned object
+     * should not be modified.
+     *
+     * @return the group of symmetries
+     * @see cc.redberry.core.combinatorics.symmetries.Symmetries#getPermutationGroup()
+     */
+    public PermutationGroup getPermutationGroup() {
+        return symmetries.getPermutationGroup();
+    }
+
     /**
      * Returns the basis.
      *
@@ -26,14 +26,19 @@ import org.apache.commons.math3.exception.MathIllegalArgumentException;
 import org.apache.commons.math3.fraction.BigFraction;
 import org.apache.commons.math3.fraction.FractionConversionException;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.math.BigInteger;
 
 import static cc.redberry.core.number.NumberUtils.*;
 
 /**
- * Representation of a rational number without any overflow. This class is a
- * wrapper of {@link BigInteger}.
+ * Representation of a rational number without any overflow. Rationals, whose numerator and denominator fit in
+ * {@code long}, are stored as a pair of {@code long} values and arithmetic operations on them do not allocate
+ * {@link BigInteger}s; other values are stored as {@link BigFraction}. Arithmetic is overflow-safe: when the result
+ * of an operation on compact values may not fit in {@code long}, the operation is performed with
+ * {@link BigFraction}.
  * <p/>
  * <p>This class implements mathematical operations declared in
  * {@link cc.redberry.core.number.Number} as operations with in the following
@@ -47,177 +52,335 @@ import static cc.redberry.core.number.NumberUtils.*;
  * @see BigFraction
  */
 public final class Rational extends Real implements Serializable {
+    /*
+     * Interned small integers
+     */
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 127;
+    private static final Rational[] CACHE = new Rational[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = CACHE_LOW; i <= CACHE_HIGH; ++i)
+            CACHE[i - CACHE_LOW] = new Rational(null, i, 1);
+    }
 
     /**
      * A fraction representing "2 / 1".
      */
-    public static final Rational TWO = new Rational(2);
+    public static final Rational TWO = create(2, 1);
     /**
      * A fraction representing "4 / 1".
      */
-    public static final Rational FOUR = new Rational(4);
+    public static final Rational FOUR = create(4, 1);
     /**
      * A fraction representing "-2 / 1".
      */
-    public static final Rational MINUS_TWO = new Rational(-2);
+    public static final Rational MINUS_TWO = create(-2, 1);
     /**
      * A fraction representing "1".
      */
-    public static final Rational ONE = new Rational(1);
+    public static final Rational ONE = create(1, 1);
     /**
      * A fraction representing "0".
      */
-    public static final Rational ZERO = new Rational(0);
+    public static final Rational ZERO = create(0, 1);
     /**
      * A fraction representing "-1 / 1".
      */
-    public static final Rational MINUS_ONE = new Rational(-1);
+    public static final Rational MINUS_ONE = create(-1, 1);
     /**
      * A fraction representing "4/5".
      */
-    public static final Rational FOUR_FIFTHS = new Rational(4, 5);
+    public static final Rational FOUR_FIFTHS = create(4, 5);
     /**
      * A fraction representing "1/5".
      */
-    public static final Rational ONE_FIFTH = new Rational(1, 5);
+    public static final Rational ONE_FIFTH = create(1, 5);
     /**
      * A fraction representing "1/2".
      */
-    public static final Rational ONE_HALF = new Rational(1, 2);
+    public static final Rational ONE_HALF = create(1, 2);
     /**
      * A fraction representing "1/2".
      */
-    public static final Rational MINUSE_ONE_HALF = new Rational(-1, 2);
+    public static final Rational MINUSE_ONE_HALF = create(-1, 2);
     /**
      * A fraction representing "1/4".
      */
-    public static final Rational ONE_QUARTER = new Rational(1, 4);
+    public static final Rational ONE_QUARTER = create(1, 4);
     /**
      * A fraction representing "1/3".
      */
-    public static final Rational ONE_THIRD = new Rational(1, 3);
+    public static final Rational ONE_THIRD = create(1, 3);
     /**
      * A fraction representing "3/5".
      */
-    public static final Rational THREE_FIFTHS = new Rational(3, 5);
+    public static final Rational THREE_FIFTHS = create(3, 5);
     /**
      * A fraction representing "3/4".
      */
-    public static final Rational THREE_QUARTERS = new Rational(3, 4);
+    public static final Rational THREE_QUARTERS = create(3, 4);
     /**
      * A fraction representing "2/5".
      */
-    public static final Rational TWO_FIFTHS = new Rational(2, 5);
+    public static final Rational TWO_FIFTHS = create(2, 5);
     /**
      * A fraction representing "2/3".
      */
-    public static final Rational TWO_THIRDS = new Rational(2, 3);
+    public static final Rational TWO_THIRDS = create(2, 3);
     /**
      * Serializable version identifier.
      */
-    private static final long serialVersionUID = -5630213147331578515L;
+    private static final long serialVersionUID = -5630213147331578516L;
     /*
-     * rational value
+     * rational value (null for compact representation)
      */
     private final BigFraction fraction;
+    /*
+     * reduced numerator and positive denominator of compact representation; numerator is never Long.MIN_VALUE
+     */
+    private final long num, den;
+    /*
+     * lazily created BigFraction for compact representation
+     */
+    private transient BigFraction cachedFraction;
+
+    private Rational(BigFraction fraction, long num, long den) {
+        this.fraction = fraction;
+        this.num = num;
+        this.den = den;
+    }
 
     public Rational(BigFraction fraction) {
         checkNotNull(fraction);
-        this.fraction = fraction;
+        if (isCompact(fraction)) {
+            this.fraction = null;
+            this.num = fraction.getNumeratorAsLong();
+            this.den = fraction.getDenominatorAsLong();
+            this.cachedFraction = fraction;
+        } else {
+            this.fraction = fraction;
+            this.num = 0;
+            this.den = 1;
+        }
     }
 
     /**
      * @see BigFraction#BigFraction(java.math.BigInteger)
      */
     public Rational(BigInteger num) {
-        checkNotNull(num);
-        fraction = new BigFraction(num);
+        this(new BigFraction(checkNotNull1(num)));
     }
 
     /**
      * @see BigFraction#BigFraction(java.math.BigInteger, java.math.BigInteger)
      */
     public Rational(BigInteger num, BigInteger den) {
-        checkNotNull(num);
-        checkNotNull(den);
-        fraction = new BigFraction(num, den);
+        this(new BigFraction(checkNotNull1(num), checkNotNull1(den)));
     }
 
     /**
      * @see BigFraction#BigFraction(double)
      */
     public Rational(double value) throws MathIllegalArgumentException {
-        fraction = new BigFraction(value);
+        this(new BigFraction(value));
     }
 
     /**
      * @see BigFraction#BigFraction(double, double, int)
      */
     public Rational(double value, double epsilon, int maxIterations) throws FractionConversionException {
-        fraction = new BigFraction(value, epsilon, maxIterations);
+        this(new BigFraction(value, epsilon, maxIterations));
     }
 
     /**
      * @see BigFraction#BigFraction(double, int)
      */
     public Rational(double value, int maxDenominator) throws FractionConversionException {
-        fraction = new BigFraction(value, maxDenominator);
+        this(new BigFraction(value, maxDenominator));
     }
 
     /**
      * @see BigFraction#BigFraction(int)
      */
     public Rational(int num) {
-        fraction = new BigFraction(num);
+        this(null, num, 1);
     }
 
     /**
      * @see BigFraction#BigFraction(int, int)
      */
     public Rational(int num, int den) {
-        fraction = new BigFraction(num, den);
+        this((long) num, (long) den);
     }
 
     /**
      * @see BigFraction#BigFraction(long)
      */
     public Rational(long num) {
-        fraction = new BigFraction(num);
+        if (num == Long.MIN_VALUE) {
+            this.fraction = new BigFraction(num);
+            this.num = 0;
+            this.den = 1;
+        } else {
+            this.fraction = null;
+            this.num = num;
+            this.den = 1;
+        }
     }
 
     /**
      * @see BigFraction#BigFraction(long, long)
      */
     public Rational(long num, long den) {
-        fraction = new BigFraction(num, den);
+        if (den == 0 || num == Long.MIN_VALUE || den == Long.MIN_VALUE) {
+            //zero denominator will throw the same exception as BigFraction does
+            BigFraction fraction = new BigFraction(num, den);
+            if (isCompact(fraction)) {
+                this.fraction = null;
+                this.num = fraction.getNumeratorAsLong();
+                this.den = fraction.getDenominatorAsLong();
+            } else {
+                this.fraction = fraction;
+                this.num = 0;
+                this.den = 1;
+            }
+            return;
+        }
+        if (den < 0) {
+            num = -num;
+            den = -den;
+        }
+        long gcd = gcd(Math.abs(num), den);
+        this.fraction = null;
+        this.num = num / gcd;
+        this.den = den / gcd;
+    }
+
+    private static <T> T checkNotNull1(T o) {
+        checkNotNull(o);
+        return o;
+    }
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static boolean isCompact(BigFraction fraction) {
+        BigInteger num = fraction.getNumerator();
+        return num.bitLength() <= 63 && !num.equals(LONG_MIN) && fraction.getDenominator().bitLength() <= 63;
     }
 
+    /**
+     * Returns rational with specified reduced numerator and positive denominator.
+     */
+    private static Rational create(long num, long den) {
+        if (den == 1 && num >= CACHE_LOW && num <= CACHE_HIGH)
+            return CACHE[(int) num - CACHE_LOW];
+        return new Rational(null, num, den);
+    }
+
+    /**
+     * Returns rational with specified numerator and positive denominator.
+     */
+    private static Rational reduced(long num, long den) {
+        if (num == 0)
+            return ZERO;
+        long gcd = gcd(Math.abs(num), den);
+        return create(num / gcd, den / gcd);
+    }
+
+    private static Rational valueOf(BigFraction fraction) {
+        if (isCompact(fraction)) {
+            long num = fraction.getNumeratorAsLong(), den = fraction.getDenominatorAsLong();
+            if (den == 1 && num >= CACHE_LOW && num <= CACHE_HIGH)
+                return CACHE[(int) num - CACHE_LOW];
+            Rational r = new Rational(null, num, den);
+            r.cachedFraction = fraction;
+            return r;
+        }
+        return new Rational(fraction, 0, 1);
+    }
+
+    /**
+     * Normalizes deserialized rational: small values are always stored in compact representation, which is
+     * reduced and has positive denominator.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        if (fraction != null)
+            return isCompact(fraction) ? valueOf(fraction) : this;
+        if (den <= 0 || num == Long.MIN_VALUE)
+            throw new InvalidObjectException("Illegal compact rational: " + num + "/" + den);
+        return reduced(num, den);
+    }
+
+    private static Rational valueOf(long num) {
+        return num == Long.MIN_VALUE ? new Rational(new BigFraction(num), 0, 1) : create(num, 1);
+    }
+
+    /**
+     * Greatest common divisor of non negative numbers.
+     */
+    private static long gcd(long a, long b) {
+        long t;
+        while (b != 0) {
+            t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static boolean isInt(long l) {
+        return l == (int) l;
+    }
+
+    private static final long HALF_LONG = 1L << 62;
+
     public BigFraction getBigFraction() {
-        return fraction;
+        if (fraction != null)
+            return fraction;
+        BigFraction f = cachedFraction;
+        if (f == null)
+            //BigFraction is immutable, so racy caching is safe
+            cachedFraction = f = new BigFraction(BigInteger.valueOf(num), BigInteger.valueOf(den));
+        return f;
     }
 
     @Override
     public long longValue() {
-        return fraction.longValue();
+        return fraction == null ? num / den : fraction.longValue();
     }
 
     @Override
     public int intValue() {
-        return fraction.intValue();
+        return fraction == null ? (int) (num / den) : fraction.intValue();
     }
 
     @Override
     public float floatValue() {
-        return fraction.floatValue();
+        return fraction == null ? (float) num / (float) den : fraction.floatValue();
     }
 
     @Override
     public double doubleValue() {
-        return fraction.doubleValue();
+        return fraction == null ? (double) num / (double) den : fraction.doubleValue();
+    }
+
+    /*
+     * Same as BigInteger.valueOf(abs).hashCode() for non negative abs
+     */
+    private static int bigIntegerHashCode(long abs) {
+        int hi = (int) (abs >>> 32), lo = (int) abs, hash = 0;
+        if (hi != 0)
+            hash = (int) (hi & 0xFFFFFFFFL);
+        if (hi != 0 || lo != 0)
+            hash = (int) (31 * hash + (lo & 0xFFFFFFFFL));
+        return hash;
     }
 
     @Override
     public int hashCode() {
+        if (fraction == null)
+            //same as BigFraction#abs().hashCode()
+            return 37 * (37 * 17 + bigIntegerHashCode(Math.abs(num))) + bigIntegerHashCode(den);
         return fraction.abs().hashCode();
     }
 
@@ -227,15 +390,20 @@ public final class Rational extends Real implements Serializable {
             return false;
         if (!(obj instanceof Number))
             return false;
-        if (obj instanceof Rational)
-            return fraction.equals(((Rational) obj).fraction);
-        else
+        if (obj instanceof Rational) {
+            Rational r = (Rational) obj;
+            if (fraction == null)
+                return r.fraction == null && num == r.num && den == r.den;
+            return fraction.equals(r.fraction);
+        } else
             return ((Numeric) obj).doubleValue() == doubleValue();
 
     }
 
     @Override
     public String toString() {
+        if (fraction == null)
+            return den == 1 ? Long.toString(num) : (num + "/" + den);
         return fraction.getNumerator().toString() + (fraction.getDenominator().equals(BigInteger.ONE) ? "" : ("/" + fraction.getDenominator().toString()));
     }
 
@@ -254,25 +422,47 @@ public final class Rational extends Real implements Serializable {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric)
             return arg0.add(this);
-        return createRational(fraction.add(((Rational) arg0).fraction));
+        return add((Rational) arg0);
+    }
+
+    /**
+     * Returns {@code this + arg0}.
+     *
+     * @param arg0 rational
+     * @return {@code this + arg0}
+     */
+    public Rational add(Rational arg0) {
+        checkNotNull(arg0);
+        if (fraction == null && arg0.fraction == null) {
+            if (num == 0)
+                return arg0;
+            if (arg0.num == 0)
+                return this;
+            if (den == arg0.den) {
+                if (Math.abs(num) < HALF_LONG && Math.abs(arg0.num) < HALF_LONG)
+                    return reduced(num + arg0.num, den);
+            } else if (isInt(num) && isInt(den) && isInt(arg0.num) && isInt(arg0.den))
+                return reduced(num * arg0.den + arg0.num * den, den * arg0.den);
+        }
+        return createRational(getBigFraction().add(arg0.getBigFraction()));
     }
 
     @Override
     public Real divide(Real arg0) {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric || arg0.isZero())
-            return createNumeric(fraction.doubleValue() / arg0.doubleValue());
-        return createRational(fraction.divide(((Rational) arg0).fraction));
+            return createNumeric(doubleValue() / arg0.doubleValue());
+        return multiply(((Rational) arg0).reciprocal());
     }
 
     @Override
     public Real multiply(double d) {
-        return createNumeric(d * fraction.doubleValue());
+        return createNumeric(d * doubleValue());
     }
 
     @Override
     public Rational multiply(int arg0) {
-        return arg0 == 1 ? this : arg0 == 0 ? ZERO : new Rational(fraction.multiply(arg0));
+        return arg0 == 1 ? this : arg0 == 0 ? ZERO : multiply(create(arg0, 1));
     }
 
     @Override
@@ -280,166 +470,184 @@ public final class Rational extends Real implements Serializable {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric)
             return arg0.multiply(this);
-        return arg0.isOne() ? this : arg0.isZero() ? ZERO : createRational(fraction.multiply(((Rational) arg0).fraction));
+        return multiply((Rational) arg0);
     }
 
     public Rational multiply(Rational arg0) {
         checkNotNull(arg0);
-        return arg0.isOne() ? this : arg0.isZero() ? ZERO : createRational(fraction.multiply((arg0).fraction));
+        if (arg0.isOne())
+            return this;
+        if (arg0.isZero())
+            return ZERO;
+        if (fraction == null && arg0.fraction == null) {
+            if (num == 0)
+                return ZERO;
+            //cross reduction, so the result is reduced
+            long gcd1 = gcd(Math.abs(num), arg0.den), gcd2 = gcd(Math.abs(arg0.num), den);
+            long n1 = num / gcd1, d1 = arg0.den / gcd1, n2 = arg0.num / gcd2, d2 = den / gcd2;
+            if (isInt(n1) && isInt(d1) && isInt(n2) && isInt(d2))
+                return create(n1 * n2, d1 * d2);
+        }
+        return createRational(getBigFraction().multiply(arg0.getBigFraction()));
     }
 
     @Override
     public Rational negate() {
+        if (fraction == null)
+            return create(-num, den);
         return createRational(fraction.negate());
     }
 
     @Override
     public Rational reciprocal() {
-        return createRational(fraction.reciprocal());
+        if (fraction == null && num != 0)
+            return num < 0 ? create(-den, -num) : create(den, num);
+        return createRational(getBigFraction().reciprocal());
     }
 
     @Override
     public Real subtract(Real arg0) {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric)
-            return new Numeric(fraction.doubleValue() - arg0.doubleValue());
-        return createRational(fraction.subtract(((Rational) arg0).fraction));
+            return new Numeric(doubleValue() - arg0.doubleValue());
+        return add(((Rational) arg0).negate());
     }
 
     @Override
     public Rational subtract(BigFraction fraction) {
         checkNotNull(fraction);
-        return createRational(this.fraction.subtract(fraction));
+        return add(valueOf(fraction.negate()));
     }
 
     @Override
     public Rational subtract(long l) {
-        return l == 0 ? this : createRational(fraction.subtract(l));
+        return l == 0 ? this : add(valueOf(l).negate());
     }
 
     @Override
     public Rational subtract(int i) {
-        return new Rational(fraction.subtract(i));
+        return add(create(-(long) i, 1));
     }
 
     @Override
     public Rational subtract(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.subtract(bg));
+        return add(new Rational(bg.negate()));
     }
 
     public Rational reduce() {
-        return new Rational(fraction.reduce());
+        //always reduced
+        return this;
     }
 
     @Override
     public Numeric pow(double exponent) {
-        return new Numeric(fraction.pow(exponent));
+        return new Numeric(getBigFraction().pow(exponent));
     }
 
     @Override
     public Rational pow(BigInteger exponent) {
         NumberUtils.checkNotNull(exponent);
-        return new Rational(fraction.pow(exponent));
+        return valueOf(getBigFraction().pow(exponent));
     }
 
     @Override
     public Rational pow(long exponent) {
-        return new Rational(fraction.pow(exponent));
+        return valueOf(getBigFraction().pow(exponent));
     }
 
     @Override
     public Rational pow(int exponent) {
-        return new Rational(fraction.pow(exponent));
+        return valueOf(getBigFraction().pow(exponent));
     }
 
     public double percentageValue() {
-        return fraction.percentageValue();
+        return getBigFraction().percentageValue();
     }
 
     @Override
     public Rational multiply(BigFraction fraction) {
         NumberUtils.checkNotNull(fraction);
-        return new Rational(fraction.multiply(fraction));
+        return multiply(valueOf(fraction));
     }
 
     @Override
     public Rational multiply(long l) {
-        return new Rational(fraction.multiply(l));
+        return multiply(valueOf(l));
     }
 
     @Override
     public Rational multiply(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.multiply(bg));
+        return multiply(new Rational(bg));
     }
 
     public long getNumeratorAsLong() {
-        return fraction.getNumeratorAsLong();
+        return fraction == null ? num : fraction.getNumeratorAsLong();
     }
 
     public int getNumeratorAsInt() {
-        return fraction.getNumeratorAsInt();
+        return fraction == null ? (int) num : fraction.getNumeratorAsInt();
     }
 
     public BigInteger getNumerator() {
-        return fraction.getNumerator();
+        return fraction == null ? BigInteger.valueOf(num) : fraction.getNumerator();
     }
 
     public long getDenominatorAsLong() {
-        return fraction.getDenominatorAsLong();
+        return fraction == null ? den : fraction.getDenominatorAsLong();
     }
 
     public int getDenominatorAsInt() {
-        return fraction.getDenominatorAsInt();
+        return fraction == null ? (int) den : fraction.getDenominatorAsInt();
     }
 
     public BigInteger getDenominator() {
-        return fraction.getDenominator();
+        return fraction == null ? BigInteger.valueOf(den) : fraction.getDenominator();
     }
 
     @Override
     public Rational divide(BigFraction fraction) {
         NumberUtils.checkNotNull(fraction);
-        return new Rational(fraction.divide(fraction));
+        return multiply(valueOf(fraction).reciprocal());
     }
 
     @Override
     public Rational divide(long l) {
-        return new Rational(fraction.divide(l));
+        return multiply(valueOf(l).reciprocal());
     }
 
     @Override
     public Rational divide(int i) {
-        return new Rational(fraction.divide(i));
+        return multiply(create(i, 1).reciprocal());
     }
 
     @Override
     public Rational divide(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.divide(bg));
+        return multiply(new Rational(bg).reciprocal());
     }
 
     @Override
     public Real divide(double d) {
-        return new Numeric(fraction.doubleValue() / d);
+        return new Numeric(doubleValue() / d);
     }
 
     @Override
     public Rational add(BigFraction fraction) {
         NumberUtils.checkNotNull(fraction);
-        return new Rational(fraction.add(fraction));
+        return add(valueOf(fraction));
     }
 
     @Override
     public Rational add(long l) {
-        return new Rational(fraction.add(l));
+        return add(valueOf(l));
     }
 
     @Override
     public Rational add(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.add(bg));
+        return add(new Rational(bg));
     }
 
     @Override
@@ -449,7 +657,7 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public Rational add(int i) {
-        return new Rational(fraction.add(i));
+        return add(create(i, 1));
     }
 
     @Override
@@ -459,6 +667,8 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public Rational abs() {
+        if (fraction == null)
+            return num < 0 ? create(-num, den) : this;
         return new Rational(fraction.abs());
     }
 
@@ -472,7 +682,12 @@ public final class Rational extends Real implements Serializable {
         NumberUtils.checkNotNull(o);
         if (o instanceof Numeric)
             return Double.compare(doubleValue(), o.doubleValue());
-        return fraction.compareTo(((Rational) o).fraction);
+        Rational r = (Rational) o;
+        if (fraction == null && r.fraction == null && isInt(num) && isInt(den) && isInt(r.num) && isInt(r.den)) {
+            long lhs = num * r.den, rhs = r.num * den;
+            return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+        }
+        return getBigFraction().compareTo(r.getBigFraction());
     }
 
     @Override
@@ -483,38 +698,31 @@ public final class Rational extends Real implements Serializable {
     @Override
     public boolean isZero() {
         //Here we do not use fraction.equals() because it has low performence
-        return fraction.getNumerator().equals(BigInteger.ZERO);//.equals(BigFraction.ZERO);
+        return fraction == null && num == 0;
     }
 
     @Override
     public boolean isOne() {
-        //Here we do not use fraction.equals() because it has low performence
-        return fraction.getNumerator().equals(BigInteger.ONE) && fraction.getDenominator().equals(BigInteger.ONE);//equals(BigFraction.ONE);
+        return fraction == null && num == 1 && den == 1;
     }
 
-    /*
-     * Chached instenance for comparing with it (for performance)
-     */
-    private static final BigInteger BI_MINUS_ONE = new BigInteger("-1");
-
     @Override
     public boolean isMinusOne() {
-        //Here we do not use fraction.equals() because it has low performence
-        return fraction.getNumerator().equals(BI_MINUS_ONE) && fraction.getDenominator().equals(BigInteger.ONE);//equals(BigFraction.ONE);
+        return fraction == null && num == -1 && den == 1;
     }
 
     @Override
     public int signum() {
-        return fraction.getNumerator().signum();
+        return fraction == null ? Long.signum(num) : fraction.getNumerator().signum();
     }
 
     @Override
     public boolean isInteger() {
-        return fraction.getDenominator().compareTo(BigInteger.ONE) == 0;
+        return fraction == null ? den == 1 : fraction.getDenominator().compareTo(BigInteger.ONE) == 0;
     }
 
     @Override
     public boolean isNatural() {
-        return fraction.getNumerator().signum() >= 0 && isInteger();
+        return signum() >= 0 && isInteger();
     }
 }
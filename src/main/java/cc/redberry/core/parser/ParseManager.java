@@ -22,12 +22,29 @@
  */
 package cc.redberry.core.parser;
 
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.ContextManager;
+import cc.redberry.core.tensor.SumBuilder;
 import cc.redberry.core.tensor.Tensor;
 import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.transformations.expand.ExpandUtils.IndexedTask;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
+import static cc.redberry.core.transformations.expand.ExpandUtils.parallelFor;
+
 /**
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
@@ -67,7 +84,7 @@ public final class ParseManager {
         Tensor t = node.toTensor();
         for (Transformation tr : tensorPreprocessors)
             t = tr.transform(t);
-        return t;
+        return CC.current().getTensorInterner().intern(t);
     }
 
     /**
@@ -89,6 +106,138 @@ public final class ParseManager {
                 defaultParserPreprocessors.toArray(new ParseTokenTransformer[defaultParserPreprocessors.size()]));
     }
 
+    /**
+     * Parses a sum read from the specified stream. Top-level summands are split from the stream on the fly and
+     * each of them is parsed (with default preprocessors) and put into {@link SumBuilder} independently, so neither
+     * the whole string nor the whole AST is ever stored in memory.
+     *
+     * @param reader stream with string representation of a sum
+     * @return tensor
+     * @throws IOException     if an I/O error occurs
+     * @throws ParserException if stream does not represent a sum (e.g. contains top-level {@code =})
+     */
+    public Tensor parse(Reader reader) throws IOException {
+        return parse(reader, 1);
+    }
+
+    /**
+     * Parses a sum read from the specified stream using specified number of threads. Top-level summands are split
+     * from the stream on the fly; each thread parses summands (with default preprocessors) and puts them into its
+     * own {@link SumBuilder}, so at most one AST per thread is alive at a time. Additional threads are taken from
+     * {@link ContextManager#getExecutorService()}.
+     *
+     * @param reader  stream with string representation of a sum
+     * @param threads number of threads
+     * @return tensor
+     * @throws IOException     if an I/O error occurs
+     * @throws ParserException if stream does not represent a sum (e.g. contains top-level {@code =})
+     */
+    public Tensor parse(Reader reader, int threads) throws IOException {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        final SumTermsReader terms = new SumTermsReader(reader);
+        final Transformation[] tensorPreprocessors = defaultTensorPreprocessors.toArray(new Transformation[defaultTensorPreprocessors.size()]);
+        final ParseTokenTransformer[] nodesPreprocessors = defaultParserPreprocessors.toArray(new ParseTokenTransformer[defaultParserPreprocessors.size()]);
+
+        final SumBuilder[] sums = new SumBuilder[threads];
+        parallelFor(threads, threads, new IndexedTask<IOException>() {
+            @Override
+            public void process(int i) throws IOException {
+                sums[i] = parseTerms(terms, tensorPreprocessors, nodesPreprocessors);
+            }
+        });
+        SumBuilder sum = sums[0];
+        for (int i = 1; i < threads; ++i)
+            sum.merge(sums[i]);
+        return CC.current().getTensorInterner().intern(sum.build());
+    }
+
+    /**
+     * Parses a sum stored in the specified file (in UTF-8). File is memory-mapped, so its content is not copied to
+     * the heap; see {@link #parse(java.io.Reader, int)} for details.
+     *
+     * @param file    file with string representation of a sum
+     * @param threads number of threads
+     * @return tensor
+     * @throws IOException     if an I/O error occurs
+     * @throws ParserException if file does not represent a sum (e.g. contains top-level {@code =})
+     */
+    public Tensor parse(File file, int threads) throws IOException {
+        try (Reader reader = new MappedFileReader(file)) {
+            return parse(reader, threads);
+        }
+    }
+
+    /**
+     * Parses a sum stored in the specified file (in UTF-8). File is memory-mapped, so its content is not copied to
+     * the heap; see {@link #parse(java.io.Reader)} for details.
+     *
+     * @param file file with string representation of a sum
+     * @return tensor
+     * @throws IOException     if an I/O error occurs
+     * @throws ParserException if file does not represent a sum (e.g. contains top-level {@code =})
+     */
+    public Tensor parse(File file) throws IOException {
+        return parse(file, 1);
+    }
+
+    private SumBuilder parseTerms(SumTermsReader terms, Transformation[] tensorPreprocessors,
+                                  ParseTokenTransformer[] nodesPreprocessors) throws IOException {
+        SumBuilder sum = new SumBuilder();
+        String term;
+        while ((term = terms.take()) != null) {
+            if (Thread.interrupted())
+                throw new InterruptedIOException();
+            sum.put(parse(term, tensorPreprocessors, nodesPreprocessors));
+        }
+        return sum;
+    }
+
+    /**
+     * UTF-8 reader of memory-mapped file; file is mapped by chunks, so files larger than 2GB are also supported.
+     */
+    private static final class MappedFileReader extends Reader {
+        private static final int CHUNK_SIZE = 1 << 28;
+        private final FileChannel channel;
+        private final long size;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private MappedByteBuffer buffer;
+        private long offset = 0;
+
+        private MappedFileReader(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            this.buffer = map();
+        }
+
+        private MappedByteBuffer map() throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(CHUNK_SIZE, size - offset));
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+            while (out.hasRemaining()) {
+                boolean endOfInput = offset + buffer.limit() == size;
+                CoderResult result = decoder.decode(buffer, out, endOfInput);
+                if (result.isError())
+                    result.throwException();
+                if (result.isOverflow() || endOfInput)
+                    break;
+                //current chunk is exhausted (up to an incomplete trailing symbol)
+                offset += buffer.position();
+                buffer = map();
+            }
+            int read = out.position() - off;
+            return read == 0 && len != 0 ? -1 : read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
     public Parser getParser() {
         return parser;
     }
@@ -33,10 +33,11 @@ import java.util.Arrays;
  */
 public final class Parser {
     /**
-     * Default parser.
+     * Default parser. Parses expressions in a single pass over the input string (see {@link SinglePassParser}) and
+     * falls back to the default {@link TokenParser}s only for inputs which are not supported by single-pass parser.
      */
     public static final Parser DEFAULT =
-            new Parser(ParserBrackets.INSTANCE,
+            new Parser(true, ParserBrackets.INSTANCE,
                     ParserSum.INSTANCE,
                     ParserProduct.INSTANCE,
                     ParserSimpleTensor.INSTANCE,
@@ -47,6 +48,7 @@ public final class Parser {
                     ParserExpression.INSTANCE,
                     ParserPowerAst.INSTANCE);
     private final TokenParser[] tokenParsers;
+    private final boolean singlePass;
 
     /**
      * Constructs Parser from a given parsers of AST nodes.
@@ -54,6 +56,11 @@ public final class Parser {
      * @param tokenParsers
      */
     public Parser(TokenParser... tokenParsers) {
+        this(false, tokenParsers);
+    }
+
+    private Parser(boolean singlePass, TokenParser... tokenParsers) {
+        this.singlePass = singlePass;
         this.tokenParsers = tokenParsers;
         Arrays.sort(tokenParsers, NodeParserComparator.INSTANCE);
     }
@@ -67,6 +74,12 @@ public final class Parser {
     public ParseToken parse(String expression) {
         if (expression.isEmpty())
             throw new IllegalArgumentException("Empty expression.");
+        if (singlePass)
+            try {
+                return new SinglePassParser(expression).parse();
+            } catch (ParserException e) {
+                //leave the reporting of error (or parsing of some exotic syntax) to token parsers
+            }
         for (TokenParser tokenParser : tokenParsers) {
             ParseToken node = tokenParser.parseToken(expression.trim(), this);
             if (node != null)
@@ -0,0 +1,641 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.parser;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.SimpleIndices;
+import cc.redberry.core.number.parser.NumberParser;
+import cc.redberry.core.utils.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Single-pass parser of mathematical expressions. Unlike the composition of {@link TokenParser}s, which splits
+ * string into substrings and recursively rescans each of them, this parser reads expression from left to right
+ * exactly once, so its running time is linear in the length of expression. Precedence levels ({@code =},
+ * {@code + -}, {@code * /}, {@code **}) are handled by explicit stack of brackets (both round brackets and
+ * arguments of functions), so the depth of nesting is limited only by heap size. Names of tensors and indices are
+ * read by the lexer itself without regular expressions.
+ *
+ * <p>The resulting AST is the same as produced by the default set of {@link TokenParser}s: operands of
+ * sums and products are not nested, subtractions and divisions are represented via multiplication by -1 and
+ * powers -1 respectively, and purely numerical subexpressions are evaluated by {@link NumberParser} exactly as
+ * {@link ParserNumber} does. Since {@link NumberParser} is sensitive to whitespaces (e.g. {@code 1 + 2} is parsed
+ * as {@code 3.0}, while {@code 1+2} as {@code 3}) and token parsers remove whitespaces when splitting sums and
+ * products, evaluation of numerical subexpression is postponed until it is known whether it is a part of some
+ * sum or product.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1
+ */
+final class SinglePassParser {
+    private static final String[] functions = {"Sin", "Cos", "Tan", "Log", "Exp", "Cot", "ArcSin", "ArcCos", "ArcTan", "ArcCot"};
+    private final char[] chars;
+    private int pointer = 0;
+    //nodes, which are not operands of sums and products, but contain postponed numbers
+    private final IdentityHashMap<ParseToken, Context> contexts = new IdentityHashMap<>();
+    private final List<Pending> pending = new ArrayList<>();
+
+    SinglePassParser(String expression) {
+        this.chars = expression.toCharArray();
+    }
+
+    /**
+     * Parses the whole expression.
+     *
+     * @return AST
+     * @throws ParserException if expression is not a well formed expression
+     */
+    ParseToken parse() {
+        Frame frame = new Frame(null, null, 0);
+        ParseToken token;
+        char c;
+        int end;
+        while (true) {
+            //reading operand: signs of term, signs of factor and then primary
+            c = peek();
+            if (frame.termStart) {
+                while (c == '+' || c == '-') {
+                    frame.sumOperator = true;
+                    if (c == '-')
+                        frame.termsInverse.flip(frame.terms.size());
+                    ++pointer;
+                    c = peek();
+                }
+                frame.termStart = false;
+                frame.productBegin = pointer;
+            }
+            Link link = new Link(pointer);
+            while (c == '+' || c == '-') {
+                link.signed = true;
+                if (c == '-')
+                    link.inverse = !link.inverse;
+                ++pointer;
+                c = peek();
+            }
+            link.primaryBegin = pointer;
+            frame.chain.add(link);
+            if (c == '(') {
+                frame = new Frame(frame, null, ++pointer);
+                continue;
+            }
+            if (c == ')' || c == ']')
+                throw new BracketsError();
+            String atom = readAtom();
+            if (atom.isEmpty())
+                throw unexpected();
+            if (peek() == '[') {
+                frame = new Frame(frame, atom, ++pointer);
+                continue;
+            }
+            token = atom(atom);
+
+            //reading operators; closing brackets returns to the outer frame
+            while (true) {
+                end = pointer;
+                frame.chain.get(frame.chain.size() - 1).base = token;
+                c = peek();
+                if (c == '*' && isPowerOperator()) {
+                    ++pointer;
+                    peek();
+                    ++pointer;
+                    break;
+                }
+
+                frame.factors.add(power(frame.chain, end));
+                frame.chain.clear();
+                if (c == '/' || c == '*') {
+                    if (c == '/')
+                        frame.factorsInverse.set(frame.factors.size());
+                    frame.productOperator = true;
+                    ++pointer;
+                    break;
+                }
+
+                frame.terms.add(product(frame, end));
+                if (c == '+' || c == '-') {
+                    frame.termStart = true;
+                    break;
+                }
+
+                ParseToken sum = sum(frame, end);
+                if (c == '=') {
+                    if (frame.left != null)
+                        throw new ParserException("Several '=' symbols.");
+                    frame.left = sum;
+                    frame.termStart = true;
+                    frame.sumBegin = ++pointer;
+                    break;
+                }
+                ParseToken expression = frame.left == null ? sum
+                        : nested(new ParseToken(TokenType.Expression, frame.left, sum));
+
+                if (frame.parent == null) {
+                    if (c == ')' || c == ']')
+                        throw new BracketsError();
+                    if (pointer != chars.length)
+                        throw unexpected();
+                    return finish(expression);
+                }
+                if (frame.head == null) {
+                    //round brackets
+                    if (c != ')')
+                        throw new BracketsError();
+                    ++pointer;
+                    frame = frame.parent;
+                    token = expression;
+                    continue;
+                }
+
+                //argument of function
+                frame.arguments.add(expression);
+                if (c == ':') {
+                    int begin = ++pointer;
+                    while (pointer < chars.length && (c = chars[pointer]) != ',' && c != ']')
+                        ++pointer;
+                    frame.argumentsIndices.add(simpleIndices(new String(chars, begin, pointer - begin)));
+                    c = peek();
+                } else
+                    frame.argumentsIndices.add(null);
+                if (c != ',' && c != ']')
+                    throw new BracketsError();
+                ++pointer;
+                if (c == ',') {
+                    frame.left = null;
+                    frame.termStart = true;
+                    frame.sumBegin = pointer;
+                    break;
+                }
+                token = call(frame.head, frame.arguments, frame.argumentsIndices);
+                frame = frame.parent;
+            }
+        }
+    }
+
+    /**
+     * State of the innermost bracket: operands which are already read at each precedence level
+     */
+    private static final class Frame {
+        final Frame parent;
+        //name of function or null for round brackets
+        final String head;
+        final List<ParseToken> arguments;
+        final List<SimpleIndices> argumentsIndices;
+        ParseToken left = null;
+        boolean termStart = true, sumOperator = false, productOperator = false;
+        int sumBegin, productBegin;
+        final List<ParseToken> terms = new ArrayList<>(), factors = new ArrayList<>();
+        final BitSet termsInverse = new BitSet(), factorsInverse = new BitSet();
+        //signed operands of '**'
+        final List<Link> chain = new ArrayList<>();
+
+        Frame(Frame parent, String head, int begin) {
+            this.parent = parent;
+            this.head = head;
+            this.sumBegin = begin;
+            if (head == null) {
+                this.arguments = null;
+                this.argumentsIndices = null;
+            } else {
+                this.arguments = new ArrayList<>();
+                this.argumentsIndices = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Operand with optional unary signs (e.g. exponent in {@code a**-2})
+     */
+    private static final class Link {
+        final int begin;
+        int primaryBegin;
+        boolean signed = false, inverse = false;
+        ParseToken base;
+
+        Link(int begin) {
+            this.begin = begin;
+        }
+    }
+
+    private ParseToken power(List<Link> chain, int end) {
+        ParseToken token = null;
+        Link link;
+        //right associative
+        for (int i = chain.size() - 1; i >= 0; --i) {
+            link = chain.get(i);
+            if (token == null)
+                token = link.base;
+            else if (isNumber(link.base) && isNumber(token))
+                token = new Postponed(TokenType.Power, new ParseToken[]{link.base, token}, null, link.primaryBegin, end);
+            else
+                token = nested(new ParseToken(TokenType.Power, link.base, token));
+            if (link.signed) {
+                BitSet inverse = new BitSet();
+                if (link.inverse)
+                    inverse.set(0);
+                token = operation(TokenType.Sum, new ParseToken[]{token}, inverse, link.begin, end);
+            }
+        }
+        return token;
+    }
+
+    private ParseToken product(Frame frame, int end) {
+        List<ParseToken> factors = frame.factors;
+        ParseToken result;
+        if (!frame.productOperator)
+            result = factors.get(0);
+        else
+            result = operation(TokenType.Product, factors.toArray(new ParseToken[factors.size()]),
+                    (BitSet) frame.factorsInverse.clone(), frame.productBegin, end);
+        factors.clear();
+        frame.factorsInverse.clear();
+        frame.productOperator = false;
+        return result;
+    }
+
+    private ParseToken sum(Frame frame, int end) {
+        List<ParseToken> terms = frame.terms;
+        ParseToken result;
+        if (!frame.sumOperator)
+            result = terms.get(0);
+        else
+            result = operation(TokenType.Sum, terms.toArray(new ParseToken[terms.size()]),
+                    (BitSet) frame.termsInverse.clone(), frame.sumBegin, end);
+        terms.clear();
+        frame.termsInverse.clear();
+        frame.sumOperator = false;
+        return result;
+    }
+
+    /**
+     * Sum (or product) of specified operands; unary signs are represented as sum with a single operand
+     */
+    private ParseToken operation(TokenType type, ParseToken[] operands, BitSet inverse, int begin, int end) {
+        boolean numerical = true;
+        for (ParseToken operand : operands)
+            numerical &= isNumber(operand);
+        if (numerical)
+            return new Postponed(type, operands, inverse, begin, end);
+        return build(type, operands, inverse, true);
+    }
+
+    /**
+     * Builds sum or product from specified operands; postponed numbers are evaluated, since whether operands are
+     * parts of sum or product is known at this point
+     */
+    private ParseToken build(TokenType type, ParseToken[] operands, BitSet inverse, boolean inner) {
+        ParserOperator operator = type == TokenType.Sum ? ParserSum.INSTANCE : ParserProduct.INSTANCE;
+        ParseToken[] content = new ParseToken[operands.length];
+        Context context;
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = evaluate(operands[i], inner);
+            if ((context = contexts.remove(content[i])) != null)
+                context.split = true;
+            if (inverse.get(i))
+                content[i] = operator.inverseOperation(content[i]);
+        }
+        return new ParseToken(type, content);
+    }
+
+    /**
+     * Registers postponed numbers in node which is neither sum nor product (e.g. power or tensor field)
+     */
+    private ParseToken nested(ParseToken token) {
+        Context context = null, child;
+        for (ParseToken node : token.content)
+            if (node instanceof Postponed) {
+                if (context == null)
+                    context = new Context();
+                pending.add(new Pending((Postponed) node, token, context));
+            } else if ((child = contexts.remove(node)) != null) {
+                if (context == null)
+                    context = new Context();
+                child.parent = context;
+            }
+        if (context != null)
+            contexts.put(token, context);
+        return token;
+    }
+
+    /**
+     * Evaluates all postponed numbers
+     */
+    private ParseToken finish(ParseToken token) {
+        token = evaluate(token, false);
+        boolean split;
+        ParseToken value;
+        for (Pending p : pending) {
+            split = false;
+            for (Context context = p.context; context != null && !split; context = context.parent)
+                split = context.split;
+            value = evaluate(p.number, split);
+            for (int i = 0; i < p.node.content.length; ++i)
+                if (p.node.content[i] == p.number) {
+                    p.node.content[i] = value;
+                    value.parent = p.node;
+                }
+        }
+        return token;
+    }
+
+    /**
+     * Parses purely numerical subexpression by {@link NumberParser} if it can, otherwise builds its AST. Token
+     * parsers pass to {@link ParserNumber} operands of sums and products without whitespaces (and with collapsed
+     * signs), while other substrings are only trimmed.
+     */
+    private ParseToken evaluate(ParseToken token, boolean inner) {
+        if (!(token instanceof Postponed))
+            return token;
+        Postponed number = (Postponed) token;
+        String expression = new String(chars, number.begin, number.end - number.begin);
+        if (inner)
+            expression = expression.replace(" ", "").replace("--", "+").replace("++", "+").replace("+-", "-").replace("-+", "-");
+        else
+            expression = expression.trim();
+        try {
+            return new ParseTokenNumber(NumberParser.COMPLEX_PARSER.parse(expression));
+        } catch (NumberFormatException e) {
+        }
+        if (number.type == TokenType.Power)
+            return new ParseToken(TokenType.Power, evaluate(number.operands[0], inner), evaluate(number.operands[1], inner));
+        return build(number.type, number.operands, number.inverse, true);
+    }
+
+    /**
+     * Purely numerical subexpression which will be evaluated when its context is known
+     */
+    private static final class Postponed extends ParseToken {
+        final TokenType type;
+        final ParseToken[] operands;
+        final BitSet inverse;
+        final int begin, end;
+
+        Postponed(TokenType type, ParseToken[] operands, BitSet inverse, int begin, int end) {
+            super(TokenType.Number);
+            this.type = type;
+            this.operands = operands;
+            this.inverse = inverse;
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Context of node, which is neither sum nor product: whether it is inside some sum or product
+     */
+    private static final class Context {
+        Context parent;
+        boolean split = false;
+    }
+
+    private static final class Pending {
+        final Postponed number;
+        final ParseToken node;
+        final Context context;
+
+        Pending(Postponed number, ParseToken node, Context context) {
+            this.number = number;
+            this.node = node;
+            this.context = context;
+        }
+    }
+
+    private static ParseToken atom(String atom) {
+        if (isNumberLike(atom))
+            try {
+                return new ParseTokenNumber(NumberParser.COMPLEX_PARSER.parse(atom));
+            } catch (NumberFormatException ignored) {
+            }
+        return simpleTensor(atom);
+    }
+
+    private ParseToken call(String head, List<ParseToken> arguments, List<SimpleIndices> argumentsIndices) {
+        if (head.equals("Power")) {
+            if (arguments.size() != 2)
+                throw new ParserException("Power takes only two arguments.");
+            return nested(new ParseToken(TokenType.Power, arguments.get(0), arguments.get(1)));
+        }
+        for (String function : functions)
+            if (head.equals(function)) {
+                if (arguments.size() != 1)
+                    throw new ParserException("Sin, Cos, Tan and others scalar functions take only one argument.");
+                return nested(new ParseTokenScalarFunction(function, new ParseToken[]{arguments.get(0)}));
+            }
+
+        ParseTokenSimpleTensor tensor = simpleTensor(head);
+        return nested(new ParseTokenTensorField(tensor.indices, tensor.name,
+                arguments.toArray(new ParseToken[arguments.size()]),
+                argumentsIndices.toArray(new SimpleIndices[argumentsIndices.size()])));
+    }
+
+    /**
+     * Splits atom into name and indices (see {@link ParserSimpleTensor})
+     */
+    private static ParseTokenSimpleTensor simpleTensor(String atom) {
+        if (atom.indexOf('{') >= 0) {
+            //removing empty braces
+            StringBuilder builder = new StringBuilder(atom.length());
+            int j;
+            for (int i = 0; i < atom.length(); ++i) {
+                if (atom.charAt(i) == '{') {
+                    j = i + 1;
+                    while (j < atom.length() && Character.isWhitespace(atom.charAt(j)))
+                        ++j;
+                    if (j < atom.length() && atom.charAt(j) == '}') {
+                        i = j;
+                        continue;
+                    }
+                }
+                builder.append(atom.charAt(i));
+            }
+            atom = builder.toString();
+        }
+        int indicesBegin = 0;
+        char c;
+        for (; indicesBegin < atom.length(); ++indicesBegin)
+            if ((c = atom.charAt(indicesBegin)) == '_' || c == '^')
+                break;
+        if (indicesBegin == 0)
+            throw new ParserException("Simple tensor with empty name.");
+        return new ParseTokenSimpleTensor(simpleIndices(atom.substring(indicesBegin)), atom.substring(0, indicesBegin));
+    }
+
+    /**
+     * Reads indices (see {@link ParserIndices#parse(String)})
+     */
+    private static SimpleIndices simpleIndices(String expression) {
+        if (expression.isEmpty())
+            return IndicesFactory.EMPTY_SIMPLE_INDICES;
+        IntArrayList indices = new IntArrayList();
+        int level = 0, state = 0, begin = 0, i = 0;
+        char c;
+        for (; i < expression.length(); ++i) {
+            c = expression.charAt(i);
+            if (c == '{')
+                ++level;
+            else if (c == '}')
+                --level;
+            else if (c == '_' && level == 0) {
+                if (i != 0)
+                    singleIndices(expression, begin + 1, i, indices, state);
+                state = 0;
+                begin = i;
+            } else if (c == '^') {
+                if (level != 0)
+                    throw new BracketsError();
+                if (i != 0)
+                    singleIndices(expression, begin + 1, i, indices, state);
+                state = 0x80000000;
+                begin = i;
+            }
+        }
+        if (level != 0)
+            throw new BracketsError();
+        if (begin != i)
+            singleIndices(expression, begin + 1, i, indices, state);
+        return IndicesFactory.createSimple(null, indices.toArray());
+    }
+
+    /**
+     * Reads indices of the same state; accepts the same strings as {@link ParserIndices#pattern}: a latin letter or
+     * a backslash followed by letters, optional subscript ({@code _1} or {@code _{12}}) and optional primes, while
+     * braces and whitespaces between indices are ignored
+     */
+    private static void singleIndices(String expression, int from, int to, IntArrayList indices, int state) {
+        int begin, i = from, j;
+        char c;
+        while (i < to) {
+            c = expression.charAt(i);
+            begin = i++;
+            if (c == '\\') {
+                //[a-zA-A]* as in ParserIndices.pattern
+                while (i < to && (((c = expression.charAt(i)) >= 'a' && c <= 'z') || c == 'A'))
+                    ++i;
+            } else if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                if (c != '{' && c != '}' && !Character.isWhitespace(c))
+                    throw new ParserException();
+                continue;
+            }
+            if (i + 1 < to && expression.charAt(i) == '_') {
+                c = expression.charAt(i + 1);
+                if (c >= '0' && c <= '9')
+                    i += 2;
+                else if (c == '{') {
+                    j = i + 2;
+                    while (j < to && (((c = expression.charAt(j)) >= '0' && c <= '9') || Character.isWhitespace(c)))
+                        ++j;
+                    if (j < to && expression.charAt(j) == '}')
+                        i = j + 1;
+                }
+            }
+            while (i < to && expression.charAt(i) == '\'')
+                ++i;
+            indices.add(CC.getIndexConverterManager().getCode(expression.substring(begin, i)) | state);
+        }
+    }
+
+    /**
+     * Reads name of tensor (or number) together with its indices; whitespaces outside curly braces are ignored
+     */
+    private String readAtom() {
+        StringBuilder atom = new StringBuilder();
+        int level = 0;
+        char c;
+        for (; pointer < chars.length; ++pointer) {
+            c = chars[pointer];
+            if (level == 0) {
+                if (isDelimiter(c))
+                    break;
+                if (c == '}')
+                    throw new BracketsError();
+                if (Character.isWhitespace(c))
+                    continue;
+            }
+            if (c == '{')
+                ++level;
+            else if (c == '}')
+                --level;
+            atom.append(c);
+        }
+        if (level != 0)
+            throw new BracketsError();
+        return atom.toString();
+    }
+
+    /**
+     * Returns true if '*' at current position is a part of '**'
+     */
+    private boolean isPowerOperator() {
+        int next = pointer + 1;
+        while (next < chars.length && Character.isWhitespace(chars[next]))
+            ++next;
+        return next < chars.length && chars[next] == '*';
+    }
+
+    /**
+     * Skips whitespaces and returns current symbol (or 0 at the end of expression)
+     */
+    private char peek() {
+        while (pointer < chars.length && Character.isWhitespace(chars[pointer]))
+            ++pointer;
+        return pointer < chars.length ? chars[pointer] : 0;
+    }
+
+    private ParserException unexpected() {
+        if (pointer >= chars.length)
+            return new ParserException("Unexpected end of expression.");
+        return new ParserException("Unexpected symbol '" + chars[pointer] + "' at position " + pointer + ".");
+    }
+
+    private static boolean isDelimiter(char c) {
+        switch (c) {
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '(':
+            case ')':
+            case '[':
+            case ']':
+            case ',':
+            case '=':
+            case ':':
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isNumberLike(String atom) {
+        char c = atom.charAt(0);
+        return (c >= '0' && c <= '9') || c == '.' || atom.equals("I") || atom.equals("NaN") || atom.equals("Infinity");
+    }
+
+    private static boolean isNumber(ParseToken token) {
+        return token instanceof ParseTokenNumber || token instanceof Postponed;
+    }
+}
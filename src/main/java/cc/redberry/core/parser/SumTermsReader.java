@@ -0,0 +1,123 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a character stream, which represents a sum, into string representations of its summands. Only the top
+ * level {@code +} and {@code -} (i.e. not enclosed in any brackets and not following other operators, as in
+ * {@code a**-1}) are treated as delimiters; the sign of each summand is kept within its string, while spaces outside
+ * curly braces are removed (as {@link ParserSum} does). The whole stream is never stored in memory: at most one
+ * summand is buffered at a time.
+ *
+ * <p>Method {@link #take()} is synchronized, so a single instance can be shared between several parsing
+ * threads.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1
+ */
+final class SumTermsReader {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position = 0, limit = 0;
+    /**
+     * Sign which starts the next summand (or 0)
+     */
+    private char pending = 0;
+
+    SumTermsReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns string representation of the next summand or {@code null} if stream is exhausted.
+     *
+     * @return next summand or {@code null} if stream is exhausted
+     * @throws IOException    if an I/O error occurs
+     * @throws BracketsError  if brackets are unbalanced
+     * @throws ParserException if stream represents an expression (contains top-level {@code =})
+     */
+    synchronized String take() throws IOException {
+        StringBuilder term = new StringBuilder();
+        //last non whitespace symbol
+        char last = pending, c;
+        if (pending != 0) {
+            term.append(pending);
+            pending = 0;
+        }
+        int level = 0, braces = 0;
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    break;
+                }
+            }
+            c = buffer[position++];
+            switch (c) {
+                case '{':
+                    ++braces;
+                    ++level;
+                    break;
+                case '(':
+                case '[':
+                    ++level;
+                    break;
+                case '}':
+                    --braces;
+                    if (--level < 0)
+                        throw new BracketsError();
+                    break;
+                case ')':
+                case ']':
+                    if (--level < 0)
+                        throw new BracketsError();
+                    break;
+                case '=':
+                    if (level == 0)
+                        throw new ParserException("Expressions can not be parsed as a stream of summands.");
+                    break;
+                case '+':
+                case '-':
+                    if (level == 0 && last != 0 && last != '+' && last != '-' && last != '*' && last != '/') {
+                        pending = c;
+                        return term.toString();
+                    }
+            }
+            if (!Character.isWhitespace(c))
+                last = c;
+            else if (c == ' ' && braces == 0)
+                //spaces are removed as ParserSum does (numbers are whitespace sensitive)
+                continue;
+            term.append(c);
+        }
+        if (level != 0)
+            throw new BracketsError();
+        return last == 0 ? null : term.toString();
+    }
+}
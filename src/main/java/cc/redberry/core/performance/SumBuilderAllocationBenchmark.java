@@ -0,0 +1,102 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.performance;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures time and memory allocated by {@link SumBuilder} on sums with many distinct non-scalar factors, i.e. on
+ * sums where the summands table of the builder holds many entries. Two workloads are used: distinct tensor names
+ * (each factor gets its own hash bucket) and distinct index structures of the same tensors (factors have equal hash
+ * codes and are chained in one bucket). Requires HotSpot (uses {@code com.sun.management}).
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class SumBuilderAllocationBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //terms c_i*A_j_n: factors A_j_n have distinct names
+    private static Tensor[] distinctNames(int size, int factors, Random random) {
+        Tensor[] terms = new Tensor[size];
+        for (int i = 0; i < size; ++i)
+            terms[i] = Tensors.parse("c" + random.nextInt(10) + "*A" + random.nextInt(factors) + "_n");
+        return terms;
+    }
+
+    //terms c_i*A_j_a*B_j^a_n or c_i*A_j_n*B_j^a_a: factors of the same j have equal hash codes
+    private static Tensor[] distinctIndices(int size, int factors, Random random) {
+        Tensor[] terms = new Tensor[size];
+        for (int i = 0, j; i < size; ++i) {
+            j = random.nextInt(factors);
+            terms[i] = Tensors.parse("c" + random.nextInt(10) + (random.nextBoolean()
+                    ? "*A" + j + "_a*B" + j + "^a_n"
+                    : "*A" + j + "_n*B" + j + "^a_a"));
+        }
+        return terms;
+    }
+
+    private static int sum(Tensor[] terms) {
+        SumBuilder sb = new SumBuilder();
+        for (Tensor t : terms)
+            sb.put(t);
+        return sb.build().size();
+    }
+
+    private static int run(String title, Tensor[] terms) {
+        int dummy = 0;
+        for (int i = 0; i < 3; ++i) //burn JVM
+            dummy += sum(terms);
+
+        long bytes = allocatedBytes();
+        long start = System.currentTimeMillis();
+        int size = sum(terms);
+        System.out.println(title + ": " + size + " distinct factors, " + (allocatedBytes() - bytes) / terms.length
+                + " bytes/term. Time: " + (System.currentTimeMillis() - start) + " ms");
+        return dummy + size;
+    }
+
+    public static void main(String[] args) {
+        CC.resetTensorNames(121313L);
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final int factors = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Random random = new Random(121313L);
+
+        int dummy = 0;
+        dummy += run("Distinct names  ", distinctNames(size, factors, random));
+        dummy += run("Distinct indices", distinctIndices(size, factors, random));
+        System.out.println(dummy);
+    }
+}
@@ -27,8 +27,12 @@ import cc.redberry.core.indices.IndicesFactory;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.utils.TensorHashCalculator;
 import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric;
 
@@ -41,7 +45,11 @@ import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric
  */
 public abstract class AbstractSumBuilder implements TensorBuilder {
 
-    final Map<Integer, List<FactorNode>> summands;
+    /**
+     * Collected summands grouped by hash of factor; the first node with a given hash is stored directly in the map
+     * and nodes with equal hashes but different factors are chained via {@link FactorNode#next}.
+     */
+    final TIntObjectHashMap<FactorNode> summands;
     Complex complex = Complex.ZERO;
     Indices indices = null;
     int[] sortedFreeIndices;
@@ -59,10 +67,10 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
      * @param initialCapacity initial capacity
      */
     public AbstractSumBuilder(int initialCapacity) {
-        summands = new HashMap<>(initialCapacity);
+        summands = new TIntObjectHashMap<>(initialCapacity);
     }
 
-    AbstractSumBuilder(Map<Integer, List<FactorNode>> summands, Complex complex, Indices indices, int[] sortedFreeIndices) {
+    AbstractSumBuilder(TIntObjectHashMap<FactorNode> summands, Complex complex, Indices indices, int[] sortedFreeIndices) {
         this.summands = summands;
         this.complex = complex;
         this.indices = indices;
@@ -77,8 +85,8 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
         List<Tensor> sum = new ArrayList<>();
 
         final boolean isNumeric = complex.isNumeric();
-        for (Map.Entry<Integer, List<FactorNode>> entry : summands.entrySet())
-            for (FactorNode node : entry.getValue()) {
+        for (FactorNode first : summands.valueCollection())
+            for (FactorNode node = first; node != null; node = node.next) {
                 if (isNumeric) {
                     Tensor summand = Tensors.multiply(toNumeric(node.build()), toNumeric(node.factor));
                     if (summand instanceof Complex)
@@ -132,31 +140,139 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
         }
 
         Split split = split(tensor);
+        putSplit(split, TensorHashCalculator.hashWithIndices(split.factor, sortedFreeIndices));//=split.factor.hashCode();
+    }
 
-        Integer hash = TensorHashCalculator.hashWithIndices(split.factor, sortedFreeIndices);//=split.factor.hashCode();
-        List<FactorNode> factorNodes = summands.get(hash);
-        if (factorNodes == null) {
-            List<FactorNode> fns = new ArrayList<>();
-            fns.add(new FactorNode(split.factor, split.getBuilder()));
-            summands.put(hash, fns);
-        } else {
-            Boolean b = null;
-            for (FactorNode node : factorNodes)
-                if ((b = compareFactors(split.factor, node.factor)) != null) {
-                    if (b)
-                        node.put(Tensors.negate(split.summand));
-                    else
-                        node.put(split.summand);
-                    break;
-                }
-            if (b == null)
-                factorNodes.add(new FactorNode(split.factor, split.getBuilder()));
+    /**
+     * Puts split term with already calculated hash of its factor.
+     *
+     * @param split split term
+     * @param hash  hash of split factor calculated with respect to {@code sortedFreeIndices}
+     */
+    final void putSplit(Split split, int hash) {
+        FactorNode node = summands.get(hash), last = null;
+        Boolean b;
+        //calculated only if there are factors with the same hash
+        ProductCanonicalForm form = node == null ? null : canonicalForm(split.factor);
+        for (; node != null; last = node, node = node.next)
+            if ((b = compareFactors(split.factor, form, node)) != null) {
+                if (b)
+                    node.put(Tensors.negate(split.summand));
+                else
+                    node.put(split.summand);
+                return;
+            }
+        node = new FactorNode(split.factor, split.getBuilder());
+        if (last == null)
+            summands.put(hash, node);
+        else
+            last.next = node;
+    }
+
+    /**
+     * Merges all terms collected by the specified builder into this builder. Terms of the specified builder are
+     * not re-splitted and re-hashed, so merging is much cheaper than putting the result of {@code other.build()}.
+     * The specified builder becomes invalid after this operation and should not be used anymore.
+     *
+     * @param other builder to be merged into this builder
+     * @throws IllegalArgumentException if {@code other == this}
+     * @throws TensorException          if free indices of collected terms are inconsistent
+     */
+    public void merge(AbstractSumBuilder other) {
+        if (other == this)
+            throw new IllegalArgumentException("Can not merge builder with itself.");
+        if (complex.isNaN())
+            return;
+        if (other.getClass() != getClass() || complex.isNumeric() != other.complex.isNumeric()) {
+            //builders collect terms in a different way
+            put(other.build());
+            return;
+        }
+        if (other.indices != null) {
+            if (indices == null) {
+                indices = other.indices;
+                sortedFreeIndices = other.sortedFreeIndices;
+            } else if (!indices.equalsRegardlessOrder(other.indices))
+                throw new TensorException("Inconsistent indices in sum. " +
+                        "Expected: " + indices + " Actual: " + other.indices);
+        }
+        complex = complex.add(other.complex);
+        FactorNode node, next;
+        TIntObjectIterator<FactorNode> iterator = other.summands.iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            for (node = iterator.value(); node != null; node = next) {
+                next = node.next;
+                node.next = null;
+                putNode(iterator.key(), node);
+            }
+        }
+    }
+
+    private void putNode(int hash, FactorNode node) {
+        FactorNode fn = summands.get(hash), last = null;
+        Boolean b;
+        ProductCanonicalForm form = fn == null ? null : node.getCanonicalForm();
+        for (; fn != null; last = fn, fn = fn.next)
+            if ((b = compareFactors(node.factor, form, fn)) != null) {
+                if (b)
+                    fn.put(Tensors.negate(node.build()));
+                else
+                    fn.put(node.build());
+                return;
+            }
+        if (last == null)
+            summands.put(hash, node);
+        else
+            last.next = node;
+    }
+
+    /**
+     * Returns a deep copy of collected summands.
+     *
+     * @return deep copy of collected summands
+     */
+    final TIntObjectHashMap<FactorNode> cloneSummands() {
+        TIntObjectHashMap<FactorNode> summands = new TIntObjectHashMap<>(Math.max(this.summands.size(), 7));
+        FactorNode node, copy;
+        TIntObjectIterator<FactorNode> iterator = this.summands.iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            node = iterator.value();
+            summands.put(iterator.key(), copy = node.clone());
+            for (node = node.next; node != null; node = node.next)
+                copy = copy.next = node.clone();
         }
+        return summands;
     }
 
     @Override
     public abstract TensorBuilder clone();
 
+    /**
+     * Returns canonical form of factor if factor is a product which can be canonicalized.
+     *
+     * @param factor factor
+     * @return canonical form or null
+     */
+    static ProductCanonicalForm canonicalForm(Tensor factor) {
+        //canonical forms of single simple tensors are not profitable
+        if (!(factor instanceof Product))
+            return null;
+        ProductCanonicalForm form = ProductCanonicalForm.of(factor);
+        return form == null || form.isZero() ? null : form;
+    }
+
+    /**
+     * Compares factor with factor of the specified node using canonical forms if both factors have them.
+     */
+    private static Boolean compareFactors(Tensor factor, ProductCanonicalForm form, FactorNode node) {
+        ProductCanonicalForm nodeForm;
+        if (form != null && (nodeForm = node.getCanonicalForm()) != null)
+            return form.equals(nodeForm) ? form.getSign() ^ nodeForm.getSign() : null;
+        return compareFactors(factor, node.factor);
+    }
+
     static Boolean compareFactors(Tensor u, Tensor v) {
         return TensorUtils.compare1(u, v);
 //        IndexMappingBuffer buffer;
@@ -0,0 +1,345 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.concurrent.OutputPortUnsafe;
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Memory-compact immutable storage of terms of very large sum.
+ *
+ * <p>Instead of keeping each term as a separate tree of objects, all terms are encoded into a single {@code int[]}
+ * stream. Each multiplier of term is a handle into the shared pool of distinct multipliers: numerical factors and
+ * composite multipliers (powers, functions, sums, tensor fields etc.) are interned as is, while simple tensors are
+ * interned by name only and their indices are packed into the stream. So per term storage is a few integers per
+ * multiplier, while the pool of distinct multipliers is usually small.</p>
+ *
+ * <p>Terms are materialized lazily on access ({@link #get(int)}, {@link #iterator()}); materialized terms are not
+ * cached. The whole sum can be materialized by {@link #toTensor()}.</p>
+ *
+ * <p>Layout of term in the stream: handle of numerical factor, number of multipliers and then for each multiplier
+ * its handle followed (for simple tensors only) by its indices.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public final class CompactSum implements Iterable<Tensor> {
+    /**
+     * Distinct multipliers (for simple tensors -- the first occurrence of tensor with such name)
+     */
+    private final Tensor[] pool;
+    /**
+     * Term i occupies [offsets[i], offsets[i + 1]) of stream
+     */
+    private final int[] offsets;
+    private final int[] stream;
+    private final Indices indices;
+    /**
+     * Terms are distinct (taken from sum), so they can be put into the sum without collecting like terms
+     */
+    private final boolean collected;
+
+    private CompactSum(Tensor[] pool, int[] offsets, int[] stream, Indices indices, boolean collected) {
+        this.pool = pool;
+        this.offsets = offsets;
+        this.stream = stream;
+        this.indices = indices;
+        this.collected = collected;
+    }
+
+    /**
+     * Packs terms of the specified tensor (if tensor is not a sum, then it is treated as a sum with single term).
+     *
+     * @param tensor tensor
+     * @return compact storage of terms of the specified tensor
+     */
+    public static CompactSum of(Tensor tensor) {
+        Builder builder = new Builder();
+        if (tensor instanceof Sum)
+            for (Tensor t : tensor)
+                builder.put(t);
+        else if (!TensorUtils.isZero(tensor))
+            builder.put(tensor);
+        return builder.build(tensor instanceof Sum);
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of distinct multipliers in the shared pool.
+     *
+     * @return the number of distinct multipliers
+     */
+    public int poolSize() {
+        return pool.length;
+    }
+
+    /**
+     * Returns free indices of the sum.
+     *
+     * @return free indices of the sum
+     */
+    public Indices getIndices() {
+        return indices;
+    }
+
+    /**
+     * Materializes i-th term.
+     *
+     * @param i position of term
+     * @return i-th term
+     */
+    public Tensor get(int i) {
+        if (i < 0 || i >= size())
+            throw new IndexOutOfBoundsException();
+        int pointer = offsets[i];
+        Complex factor = (Complex) pool[stream[pointer++]];
+        int count = stream[pointer++];
+        if (count == 0)
+            return factor;
+        Tensor[] multipliers = new Tensor[count + (factor.isOne() ? 0 : 1)];
+        Tensor multiplier;
+        int[] tensorIndices;
+        for (int j = 0; j < count; ++j) {
+            multiplier = pool[stream[pointer++]];
+            if (multiplier.getClass() == SimpleTensor.class && multiplier.getIndices().size() != 0) {
+                tensorIndices = Arrays.copyOfRange(stream, pointer, pointer += multiplier.getIndices().size());
+                multiplier = Tensors.simpleTensor(((SimpleTensor) multiplier).getName(),
+                        IndicesFactory.createSimple(null, tensorIndices));
+            }
+            multipliers[j] = multiplier;
+        }
+        if (count == 1 && factor.isOne())
+            return multipliers[0];
+        if (!factor.isOne())
+            multipliers[count] = factor;
+        return Tensors.multiply(multipliers);
+    }
+
+    /**
+     * Materializes the whole sum.
+     *
+     * @return sum of all terms
+     */
+    public Tensor toTensor() {
+        final int size = size();
+        if (size == 0)
+            return Complex.ZERO;
+        if (size == 1)
+            return get(0);
+        Tensor[] terms = new Tensor[size];
+        for (int i = 0; i < size; ++i)
+            terms[i] = get(i);
+        if (collected)
+            return new Sum(terms, indices);
+        return Tensors.sum(terms);
+    }
+
+    /**
+     * Returns port, which materializes terms one by one.
+     *
+     * @return port of terms
+     */
+    public OutputPortUnsafe<Tensor> port() {
+        return new OutputPortUnsafe<Tensor>() {
+            int pointer = 0;
+
+            @Override
+            public Tensor take() {
+                return pointer < size() ? get(pointer++) : null;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Tensor> iterator() {
+        return new Iterator<Tensor>() {
+            int pointer = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pointer < size();
+            }
+
+            @Override
+            public Tensor next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return get(pointer++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Builder of compact sum. Unlike {@link SumBuilder}, this builder does not collect like terms: terms are stored
+     * as is, and like terms are collected only when the whole sum is materialized by {@link CompactSum#toTensor()}.
+     */
+    public static final class Builder {
+        private final List<Tensor> pool = new ArrayList<>();
+        /**
+         * Name of simple tensor -> handle
+         */
+        private final TIntIntHashMap simpleHandles = new TIntIntHashMap();
+        /**
+         * Other multipliers -> handle
+         */
+        private final Map<Key, Integer> handles = new HashMap<>();
+        private final TIntArrayList offsets = new TIntArrayList(), stream = new TIntArrayList();
+        private Indices indices;
+
+        /**
+         * Creates empty builder.
+         */
+        public Builder() {
+            offsets.add(0);
+        }
+
+        /**
+         * Puts term.
+         *
+         * @param term term
+         * @throws TensorException if free indices of term are not equal to free indices of previous terms
+         */
+        public void put(Tensor term) {
+            if (indices == null)
+                indices = IndicesFactory.create(term.getIndices().getFree());
+            else if (!indices.equalsRegardlessOrder(term.getIndices().getFree()))
+                throw new TensorException("Inconsistent indices in sum. " +
+                        "Expected: " + indices + " Actual: " + term.getIndices().getFree(), term);
+            if (term instanceof Sum) {
+                for (Tensor t : term)
+                    put(t);
+                return;
+            }
+            if (term instanceof Complex) {
+                stream.add(handle(term));
+                stream.add(0);
+            } else if (term instanceof Product) {
+                Product product = (Product) term;
+                stream.add(handle(product.factor));
+                stream.add(product.indexlessData.length + product.data.length);
+                for (Tensor t : product.indexlessData)
+                    putMultiplier(t);
+                for (Tensor t : product.data)
+                    putMultiplier(t);
+            } else {
+                stream.add(handle(Complex.ONE));
+                stream.add(1);
+                putMultiplier(term);
+            }
+            offsets.add(stream.size());
+        }
+
+        private void putMultiplier(Tensor multiplier) {
+            if (multiplier.getClass() != SimpleTensor.class) {
+                stream.add(handle(multiplier));
+                return;
+            }
+            int name = ((SimpleTensor) multiplier).getName();
+            int handle = simpleHandles.get(name);
+            if (!simpleHandles.containsKey(name)) {
+                handle = pool.size();
+                pool.add(multiplier);
+                simpleHandles.put(name, handle);
+            }
+            stream.add(handle);
+            Indices indices = multiplier.getIndices();
+            for (int i = 0, size = indices.size(); i < size; ++i)
+                stream.add(indices.get(i));
+        }
+
+        private int handle(Tensor tensor) {
+            Key key = new Key(tensor);
+            Integer handle = handles.get(key);
+            if (handle == null) {
+                handles.put(key, handle = pool.size());
+                pool.add(tensor);
+            }
+            return handle;
+        }
+
+        /**
+         * Returns compact sum of all terms put into this builder.
+         *
+         * @return compact sum
+         */
+        public CompactSum build() {
+            return build(false);
+        }
+
+        private CompactSum build(boolean collected) {
+            return new CompactSum(pool.toArray(new Tensor[pool.size()]), offsets.toArray(), stream.toArray(),
+                    indices == null ? IndicesFactory.EMPTY_INDICES : indices, collected);
+        }
+    }
+
+    /**
+     * Key of pool of multipliers (exact equality)
+     */
+    private static final class Key {
+        final Tensor tensor;
+
+        Key(Tensor tensor) {
+            this.tensor = tensor;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            return TensorUtils.equalsExactly(tensor, ((Key) obj).tensor);
+        }
+
+        @Override
+        public int hashCode() {
+            return tensor.hashCode();
+        }
+    }
+}
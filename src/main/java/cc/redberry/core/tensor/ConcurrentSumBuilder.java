@@ -0,0 +1,181 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.TensorHashCalculator;
+import cc.redberry.core.utils.TensorUtils;
+
+import java.util.Arrays;
+
+import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric;
+
+/**
+ * Thread-safe builder for sums, which allows many threads to put terms simultaneously. Collected terms are
+ * partitioned by their hashes into several independently locked segments (each segment is an ordinary
+ * {@link SumBuilder}), so threads putting terms with different hashes do not contend with each other. The result
+ * of {@link #build()} is the same as the result of {@link SumBuilder} fed with the same terms.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see SumBuilder
+ * @since 1.1.3
+ */
+public final class ConcurrentSumBuilder implements TensorBuilder {
+    /**
+     * Default number of segments.
+     */
+    public static final int DEFAULT_SEGMENTS_COUNT = 32;
+    private final SumBuilder[] segments;
+    private final int segmentMask;
+    private final Object complexLock = new Object();
+    private volatile Complex complex = Complex.ZERO;
+    private volatile Indices indices = null;
+    private int[] sortedFreeIndices;
+
+    /**
+     * Creates builder with default number of segments.
+     */
+    public ConcurrentSumBuilder() {
+        this(DEFAULT_SEGMENTS_COUNT);
+    }
+
+    /**
+     * Creates builder with specified number of segments (will be rounded up to the nearest power of two).
+     *
+     * @param segmentsCount number of segments
+     * @throws IllegalArgumentException if {@code segmentsCount} is not positive
+     */
+    public ConcurrentSumBuilder(int segmentsCount) {
+        if (segmentsCount <= 0)
+            throw new IllegalArgumentException("Number of segments should be positive: " + segmentsCount);
+        int size = Integer.highestOneBit(segmentsCount);
+        if (size < segmentsCount)
+            size <<= 1;
+        segments = new SumBuilder[size];
+        for (int i = 0; i < size; ++i)
+            segments[i] = new SumBuilder();
+        segmentMask = size - 1;
+    }
+
+    private ConcurrentSumBuilder(SumBuilder[] segments, Complex complex, Indices indices, int[] sortedFreeIndices) {
+        this.segments = segments;
+        this.segmentMask = segments.length - 1;
+        this.complex = complex;
+        this.indices = indices;
+        this.sortedFreeIndices = sortedFreeIndices;
+    }
+
+    private SumBuilder segmentFor(int hash) {
+        //spread bits, since hashes of similar terms may differ only in high bits
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return segments[hash & segmentMask];
+    }
+
+    private void initIndices(Tensor tensor) {
+        synchronized (complexLock) {
+            if (indices != null)
+                return;
+            Indices indices = IndicesFactory.create(tensor.getIndices().getFree());
+            int[] sortedFreeIndices = indices.getAllIndices().copy();
+            Arrays.sort(sortedFreeIndices);
+            for (SumBuilder segment : segments) {
+                segment.indices = indices;
+                segment.sortedFreeIndices = sortedFreeIndices;
+            }
+            this.sortedFreeIndices = sortedFreeIndices;
+            this.indices = indices;
+        }
+    }
+
+    private void addComplex(Complex value) {
+        synchronized (complexLock) {
+            complex = complex.add(value);
+        }
+    }
+
+    @Override
+    public void put(Tensor tensor) {
+        Complex complex = this.complex;
+        if (complex.isNaN())
+            return;
+        if (complex.isNumeric())
+            tensor = toNumeric(tensor);
+        if (TensorUtils.isZero(tensor))
+            return;
+        if (indices == null)
+            initIndices(tensor);
+        if (!indices.equalsRegardlessOrder(tensor.getIndices().getFree()))
+            throw new TensorException("Inconsistent indices in sum. " +
+                    "Expected: " + indices + " Actual: " + tensor.getIndices().getFree(), tensor);
+        if (tensor instanceof Sum) {
+            for (Tensor s : tensor)
+                put(s);
+            return;
+        }
+        if (tensor instanceof Complex) {
+            addComplex((Complex) tensor);
+            return;
+        }
+
+        Split split = Split.splitIndexless(tensor);
+        int hash = TensorHashCalculator.hashWithIndices(split.factor, sortedFreeIndices);
+        SumBuilder segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.putSplit(split, hash);
+        }
+    }
+
+    @Override
+    public Tensor build() {
+        SumBuilder result = new SumBuilder();
+        for (SumBuilder segment : segments)
+            synchronized (segment) {
+                //merge invalidates merged builder, so segments are copied to keep collected terms intact
+                result.merge((SumBuilder) segment.clone());
+            }
+        synchronized (complexLock) {
+            if (result.indices == null && indices != null) {
+                result.indices = indices;
+                result.sortedFreeIndices = sortedFreeIndices;
+            }
+            result.complex = result.complex.add(complex);
+        }
+        return result.build();
+    }
+
+    @Override
+    public TensorBuilder clone() {
+        SumBuilder[] segments = new SumBuilder[this.segments.length];
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (this.segments[i]) {
+                segments[i] = (SumBuilder) this.segments[i].clone();
+            }
+        synchronized (complexLock) {
+            return new ConcurrentSumBuilder(segments, complex, indices, sortedFreeIndices);
+        }
+    }
+}
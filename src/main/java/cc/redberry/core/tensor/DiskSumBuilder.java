@@ -0,0 +1,422 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.concurrent.OutputPortUnsafe;
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.TensorHashCalculator;
+import cc.redberry.core.utils.TensorUtils;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric;
+
+/**
+ * Out-of-core builder for sums, which keeps collected terms on disk instead of heap. Each term is serialized (see
+ * {@link TensorCodec}) and appended to one of memory-mapped bucket files; the bucket is chosen by the hash of term
+ * factor ({@link TensorHashCalculator#hashWithIndices(Tensor, int[])}), so like terms always fall into the same
+ * bucket. Like terms are collected only when the result is requested: buckets are read one by one and terms of each
+ * bucket are put together by an ordinary {@link SumBuilder}, so only a single bucket is ever stored in heap. The result
+ * of {@link #build()} is the same as the result of {@link SumBuilder} fed with the same terms; for sums which do not
+ * fit in heap use {@link #port()}, which returns terms of the resulting sum bucket by bucket.
+ *
+ * <p>This builder is not thread-safe. Bucket files are stored in the specified (or a new temporary) directory and
+ * grow on demand; they are removed by {@link #close()} together with the temporary directory.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see SumBuilder
+ * @since 1.1.3
+ */
+public final class DiskSumBuilder implements TensorBuilder, Closeable {
+    /**
+     * Default number of buckets.
+     */
+    public static final int DEFAULT_BUCKETS_COUNT = 64;
+    /**
+     * Initial and maximal sizes of memory-mapped region of bucket file
+     */
+    private static final int INITIAL_CHUNK_SIZE = 1 << 12, CHUNK_SIZE = 1 << 22;
+    private final File directory;
+    //whether directory is created by this builder
+    private final boolean ownsDirectory;
+    private final Bucket[] buckets;
+    private final int bucketMask;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final TensorCodec.Writer writer = new TensorCodec.Writer(new DataOutputStream(bytes), true);
+    private Complex complex = Complex.ZERO;
+    private Indices indices = null;
+    private int[] sortedFreeIndices;
+
+    /**
+     * Creates builder with default number of buckets, which stores its files in a new temporary directory.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public DiskSumBuilder() throws IOException {
+        this(DEFAULT_BUCKETS_COUNT);
+    }
+
+    /**
+     * Creates builder with specified number of buckets (will be rounded up to the nearest power of two), which stores
+     * its files in a new temporary directory.
+     *
+     * @param bucketsCount number of buckets
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if {@code bucketsCount} is not positive
+     */
+    public DiskSumBuilder(int bucketsCount) throws IOException {
+        this(null, bucketsCount, true);
+    }
+
+    /**
+     * Creates builder with specified number of buckets (will be rounded up to the nearest power of two), which stores
+     * its files in the specified directory.
+     *
+     * @param directory    directory for bucket files
+     * @param bucketsCount number of buckets
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if {@code bucketsCount} is not positive
+     */
+    public DiskSumBuilder(File directory, int bucketsCount) throws IOException {
+        this(directory, bucketsCount, false);
+    }
+
+    private DiskSumBuilder(File directory, int bucketsCount, boolean ownsDirectory) throws IOException {
+        if (bucketsCount <= 0)
+            throw new IllegalArgumentException("Number of buckets should be positive: " + bucketsCount);
+        int size = Integer.highestOneBit(bucketsCount);
+        if (size < bucketsCount)
+            size <<= 1;
+        this.ownsDirectory = ownsDirectory;
+        if (ownsDirectory)
+            directory = createTempDirectory();
+        else
+            Files.createDirectories(directory.toPath());
+        this.directory = directory;
+        this.buckets = new Bucket[size];
+        this.bucketMask = size - 1;
+        for (int i = 0; i < size; ++i)
+            buckets[i] = new Bucket(File.createTempFile("bucket" + i + "-", ".bin", directory).toPath());
+    }
+
+    private DiskSumBuilder(DiskSumBuilder builder) throws IOException {
+        this.ownsDirectory = builder.ownsDirectory;
+        this.directory = ownsDirectory ? createTempDirectory() : builder.directory;
+        this.buckets = new Bucket[builder.buckets.length];
+        this.bucketMask = builder.bucketMask;
+        for (int i = 0; i < buckets.length; ++i)
+            buckets[i] = new Bucket(builder.buckets[i], File.createTempFile("bucket" + i + "-", ".bin", directory).toPath());
+        this.complex = builder.complex;
+        this.indices = builder.indices;
+        this.sortedFreeIndices = builder.sortedFreeIndices;
+    }
+
+    private static File createTempDirectory() throws IOException {
+        return Files.createTempDirectory("redberry-sum").toFile();
+    }
+
+    private Bucket bucketFor(int hash) {
+        //spread bits, since hashes of similar terms may differ only in high bits
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return buckets[hash & bucketMask];
+    }
+
+    @Override
+    public void put(Tensor tensor) {
+        if (complex.isNaN())
+            return;
+        if (complex.isNumeric())
+            tensor = toNumeric(tensor);
+        if (TensorUtils.isZero(tensor))
+            return;
+        if (indices == null) {
+            indices = IndicesFactory.create(tensor.getIndices().getFree());
+            sortedFreeIndices = indices.getAllIndices().copy();
+            Arrays.sort(sortedFreeIndices);
+        } else if (!indices.equalsRegardlessOrder(tensor.getIndices().getFree()))
+            throw new TensorException("Inconsistent indices in sum. " +
+                    "Expected: " + indices + " Actual: " + tensor.getIndices().getFree(), tensor);
+        if (tensor instanceof Sum) {
+            for (Tensor s : tensor)
+                put(s);
+            return;
+        }
+        if (tensor instanceof Complex) {
+            complex = complex.add((Complex) tensor);
+            return;
+        }
+
+        int hash = TensorHashCalculator.hashWithIndices(Split.splitIndexless(tensor).factor, sortedFreeIndices);
+        try {
+            bytes.reset();
+            writer.write(tensor);
+            bucketFor(hash).append(hash, bytes.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the number of terms stored on disk (like terms are not collected yet).
+     *
+     * @return the number of terms stored on disk
+     */
+    public long storedTerms() {
+        long count = 0;
+        for (Bucket bucket : buckets)
+            count += bucket.count;
+        return count;
+    }
+
+    /**
+     * Returns port, which collects like terms bucket by bucket and returns terms of the resulting sum (numerical
+     * term, if any, is returned last). Only a single bucket is stored in heap at a time.
+     *
+     * @return port of terms of the resulting sum
+     */
+    public OutputPortUnsafe<Tensor> port() {
+        return new OutputPortUnsafe<Tensor>() {
+            private int bucket = 0, pointer = 0;
+            private Tensor[] terms = new Tensor[0];
+            private Complex complex = DiskSumBuilder.this.complex;
+
+            @Override
+            public Tensor take() {
+                if (complex != null && (complex.isNaN() || complex.isInfinite())) {
+                    Tensor result = complex;
+                    complex = null;
+                    bucket = buckets.length;
+                    return result;
+                }
+                while (pointer == terms.length) {
+                    if (bucket == buckets.length) {
+                        if (complex == null || complex.isZero())
+                            return null;
+                        Tensor result = complex;
+                        complex = null;
+                        return result;
+                    }
+                    Tensor collected = collect(buckets[bucket++]);
+                    pointer = 0;
+                    if (collected instanceof Complex) {
+                        complex = complex.add((Complex) collected);
+                        terms = new Tensor[0];
+                    } else
+                        terms = collected instanceof Sum ? ((Sum) collected).data : new Tensor[]{collected};
+                }
+                return terms[pointer++];
+            }
+        };
+    }
+
+    /**
+     * Collects like terms of a single bucket.
+     */
+    private Tensor collect(Bucket bucket) {
+        SumBuilder builder = new SumBuilder();
+        builder.indices = indices;
+        builder.sortedFreeIndices = sortedFreeIndices;
+        //terms stored before numerical complex was put should be converted too
+        final boolean isNumeric = complex.isNumeric();
+        Tensor term;
+        try (Bucket.Cursor cursor = bucket.cursor()) {
+            TensorCodec.Reader reader = new TensorCodec.Reader(cursor, true);
+            while (cursor.next()) {
+                term = reader.read();
+                if (isNumeric) {
+                    term = toNumeric(term);
+                    if (TensorUtils.isZero(term))
+                        continue;
+                }
+                builder.putSplit(Split.splitIndexless(term), cursor.hash);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Tensor build() {
+        if (complex.isNaN() || complex.isInfinite())
+            return complex;
+        List<Tensor> sum = new ArrayList<>();
+        Complex complex = Complex.ZERO;
+        OutputPortUnsafe<Tensor> port = port();
+        Tensor t;
+        while ((t = port.take()) != null)
+            if (t instanceof Complex)
+                complex = complex.add((Complex) t);
+            else
+                sum.add(t);
+        if (sum.isEmpty())
+            return complex;
+        if (!complex.isZero())
+            sum.add(complex);
+        if (sum.size() == 1)
+            return sum.get(0);
+        return new Sum(sum.toArray(new Tensor[sum.size()]), indices);
+    }
+
+    /**
+     * Returns a copy of this builder; bucket files are copied into the same directory.
+     *
+     * @return copy of this builder
+     */
+    @Override
+    public TensorBuilder clone() {
+        try {
+            return new DiskSumBuilder(this);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes all bucket files (and the directory, if it was created by this builder). Builder can not be used after
+     * this operation.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        for (Bucket bucket : buckets)
+            bucket.close();
+        if (ownsDirectory)
+            Files.deleteIfExists(directory.toPath());
+    }
+
+    /**
+     * Append-only file of records {@code [hash of factor, length, serialized term]}, which is written via
+     * memory-mapped regions; the size of region grows from {@link #INITIAL_CHUNK_SIZE} up to {@link #CHUNK_SIZE}, so
+     * files of small buckets stay small.
+     */
+    private static final class Bucket {
+        private final Path path;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        //file position of buffer start
+        private long offset = 0;
+        private long count = 0;
+
+        Bucket(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        Bucket(Bucket bucket, Path path) throws IOException {
+            Files.copy(bucket.path, path, StandardCopyOption.REPLACE_EXISTING);
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.offset = bucket.offset;
+            this.count = bucket.count;
+            if (bucket.buffer != null) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, bucket.buffer.capacity());
+                this.buffer.position(bucket.buffer.position());
+            }
+        }
+
+        long size() {
+            return buffer == null ? offset : offset + buffer.position();
+        }
+
+        void append(int hash, byte[] record) throws IOException {
+            if (buffer == null || buffer.remaining() < record.length + 8) {
+                int chunk = buffer == null ? INITIAL_CHUNK_SIZE : Math.min(CHUNK_SIZE, buffer.capacity() << 1);
+                offset = size();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(chunk, record.length + 8));
+            }
+            buffer.putInt(hash).putInt(record.length).put(record);
+            ++count;
+        }
+
+        Cursor cursor() {
+            return new Cursor(size());
+        }
+
+        void close() throws IOException {
+            buffer = null;
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+
+        /**
+         * Reads records from the bucket file via read-only memory-mapped regions.
+         */
+        final class Cursor extends DataInputStream implements Closeable {
+            private final long size;
+            private MappedByteBuffer region;
+            //file position of region start
+            private long regionOffset = 0;
+            int hash;
+
+            private Cursor(long size) {
+                super(null);
+                this.size = size;
+            }
+
+            /**
+             * Moves to the next record, which then can be read from this stream.
+             */
+            boolean next() throws IOException {
+                long position = regionOffset + (region == null ? 0 : region.position());
+                if (position == size)
+                    return false;
+                if (region == null || region.remaining() < 8)
+                    map(position, 8);
+                hash = region.getInt();
+                int length = region.getInt();
+                if (region.remaining() < length)
+                    map(regionOffset + region.position(), length);
+                byte[] record = new byte[length];
+                region.get(record);
+                in = new ByteArrayInputStream(record);
+                return true;
+            }
+
+            private void map(long position, int minSize) throws IOException {
+                regionOffset = position;
+                region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(size - position, Math.max(CHUNK_SIZE, minSize)));
+            }
+
+            @Override
+            public void close() {
+                region = null;
+            }
+        }
+    }
+}
@@ -33,6 +33,15 @@ final class FactorNode {
     final Tensor factor;
     private final TensorBuilder builder;
     int[] factorForbiddenIndices;
+    /**
+     * Next node with the same hash of factor (used by {@link AbstractSumBuilder} to resolve hash collisions)
+     */
+    FactorNode next;
+    /**
+     * Lazily calculated canonical form of factor ({@link #NOT_CANONICAL} if factor has no canonical form)
+     */
+    private Object canonicalForm;
+    private static final Object NOT_CANONICAL = new Object();
 
     FactorNode(Tensor factor, TensorBuilder builder) {
         this.factor = factor;
@@ -40,10 +49,24 @@ final class FactorNode {
         factorForbiddenIndices = TensorUtils.getAllIndicesNamesT(factor).toArray();
     }
 
-    private FactorNode(Tensor factor, TensorBuilder builder, int[] factorForbiddenIndices) {
+    private FactorNode(Tensor factor, TensorBuilder builder, int[] factorForbiddenIndices, Object canonicalForm) {
         this.factor = factor;
         this.builder = builder;
         this.factorForbiddenIndices = factorForbiddenIndices;
+        this.canonicalForm = canonicalForm;
+    }
+
+    /**
+     * Returns canonical form of factor or null if it has no canonical form.
+     *
+     * @return canonical form of factor or null if it has no canonical form
+     */
+    ProductCanonicalForm getCanonicalForm() {
+        if (canonicalForm == null) {
+            ProductCanonicalForm form = AbstractSumBuilder.canonicalForm(factor);
+            canonicalForm = form == null ? NOT_CANONICAL : form;
+        }
+        return canonicalForm == NOT_CANONICAL ? null : (ProductCanonicalForm) canonicalForm;
     }
 
     void put(Tensor t) {
@@ -57,7 +80,7 @@ final class FactorNode {
 
     @Override
     public FactorNode clone() {
-        //factorForbiddenIndices are immuable
-        return new FactorNode(factor, builder.clone(), factorForbiddenIndices);
+        //factorForbiddenIndices and canonical form are immuable; next is not copied
+        return new FactorNode(factor, builder.clone(), factorForbiddenIndices, canonicalForm);
     }
 }
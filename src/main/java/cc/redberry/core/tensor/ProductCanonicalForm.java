@@ -0,0 +1,345 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.combinatorics.PermutationGroup;
+import cc.redberry.core.combinatorics.Symmetry;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.IntArray;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical form of a product of simple tensors with respect to symmetries of its factors, permutations of
+ * identical factors and renaming of dummy indices (including simultaneous raising and lowering of dummy indices of
+ * metric types). Two products have equal canonical forms if and only if they are equal up to these
+ * transformations, so like terms can be found by {@link #hashCode()} and {@link #equals(Object)} instead of
+ * searching for index mappings.
+ *
+ * <p>The canonical form is the lexicographically minimal labelling of index slots in the double coset
+ * S&middot;g&middot;D, where S is the group of slot symmetries (symmetries of factors together with permutations of
+ * identical factors) and D is the group of dummy relabellings (Butler-Portugal canonicalization). The minimum over D is
+ * obtained directly by labelling dummies in order of their first occurrence, while the minimum over S is searched
+ * position by position along the stabilizer chain of S (see {@link PermutationGroup}); candidates leading to the same
+ * arrangement of indices are merged, so the search does not enumerate S.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public final class ProductCanonicalForm {
+    /**
+     * Dummy labels are greater than any free index
+     */
+    private static final long DUMMY = 1L << 32;
+    private final SimpleTensor[] factors;
+    private final long[] labels;
+    private final boolean sign, zero;
+    private final int hash;
+
+    private ProductCanonicalForm(SimpleTensor[] factors, long[] labels, boolean sign, boolean zero) {
+        this.factors = factors;
+        this.labels = labels;
+        this.sign = sign;
+        this.zero = zero;
+        int hash = Arrays.hashCode(labels);
+        for (SimpleTensor factor : factors)
+            hash = 31 * hash + factor.getName();
+        this.hash = hash;
+    }
+
+    /**
+     * Calculates canonical form of the specified tensor. Supported tensors are simple tensors (but not fields) and
+     * products of simple tensors without numerical factor and indexless multipliers; for other tensors this method
+     * returns {@code null}.
+     *
+     * @param tensor tensor
+     * @return canonical form of the specified tensor or {@code null} if tensor is not supported
+     */
+    public static ProductCanonicalForm of(Tensor tensor) {
+        Tensor[] data;
+        if (tensor.getClass() == SimpleTensor.class)
+            data = new Tensor[]{tensor};
+        else if (tensor instanceof Product) {
+            Product product = (Product) tensor;
+            if (product.factor != Complex.ONE || product.indexlessData.length != 0)
+                return null;
+            data = product.data;
+        } else
+            return null;
+
+        SimpleTensor[] factors = new SimpleTensor[data.length];
+        int size = 0, i;
+        for (i = 0; i < data.length; ++i) {
+            if (data[i].getClass() != SimpleTensor.class)
+                return null;
+            factors[i] = (SimpleTensor) data[i];
+            size += factors[i].getIndices().size();
+        }
+
+        //index slots and group of slot symmetries
+        int[] slots = new int[size];
+        PermutationGroup group = new PermutationGroup(size);
+        int offset = 0, j, length;
+        for (i = 0; i < factors.length; ++i) {
+            length = factors[i].getIndices().size();
+            for (j = 0; j < length; ++j)
+                slots[offset + j] = factors[i].getIndices().get(j);
+            for (Symmetry symmetry : factors[i].getIndices().getSymmetries().getBasis()) {
+                int[] permutation = identity(size);
+                for (j = 0; j < length; ++j)
+                    permutation[offset + j] = offset + symmetry.newIndexOf(j);
+                group.add(new Symmetry(permutation, symmetry.isAntiSymmetry()));
+            }
+            if (i != 0 && factors[i - 1].getName() == factors[i].getName()) {
+                //identical factors commute (data of product is sorted by names)
+                int[] permutation = identity(size);
+                for (j = 0; j < length; ++j) {
+                    permutation[offset - length + j] = offset + j;
+                    permutation[offset + j] = offset - length + j;
+                }
+                group.add(new Symmetry(permutation, false));
+            }
+            offset += length;
+        }
+
+        //dummy index -> its number
+        TIntIntHashMap dummies = new TIntIntHashMap();
+        TIntHashSet names = new TIntHashSet();
+        for (int index : slots)
+            if (!names.add(IndicesUtils.getNameWithType(index)))
+                dummies.put(IndicesUtils.getNameWithType(index), dummies.size());
+
+        List<Candidate> candidates = new ArrayList<>(), next = new ArrayList<>();
+        List<Symmetry> transversals = new ArrayList<>();
+        candidates.add(new Candidate(slots, false, dummies.size()));
+        Map<IntArray, Candidate> merged = new HashMap<>();
+        long best, label;
+        for (int position = 0; position < size; ++position) {
+            int[] orbit = group.getOrbit(position);
+            best = Long.MAX_VALUE;
+            next.clear();
+            transversals.clear();
+            for (Candidate candidate : candidates)
+                for (int point : orbit) {
+                    label = candidate.label(candidate.slots[point], dummies);
+                    if (label > best)
+                        continue;
+                    if (label < best) {
+                        best = label;
+                        next.clear();
+                        transversals.clear();
+                    }
+                    next.add(candidate);
+                    transversals.add(group.getTransversal(position, point));
+                }
+
+            merged.clear();
+            candidates = new ArrayList<>(next.size());
+            for (i = 0; i < next.size(); ++i) {
+                Candidate candidate = next.get(i).apply(transversals.get(i), position, dummies);
+                Candidate previous = merged.put(new IntArray(candidate.slots), candidate);
+                if (previous == null)
+                    candidates.add(candidate);
+                else if (previous.sign != candidate.sign)
+                    //tensor is equal to itself with opposite sign
+                    return new ProductCanonicalForm(factors, new long[0], false, true);
+            }
+        }
+
+        Candidate result = candidates.get(0);
+        for (Candidate candidate : candidates)
+            if (candidate.sign != result.sign)
+                return new ProductCanonicalForm(factors, new long[0], false, true);
+        return new ProductCanonicalForm(factors, result.labels(dummies), result.sign, false);
+    }
+
+    private static int[] identity(int size) {
+        int[] identity = new int[size];
+        for (int i = 0; i < size; ++i)
+            identity[i] = i;
+        return identity;
+    }
+
+    /**
+     * Arrangement of indices over slots obtained by some slot symmetry, together with labels of dummies which are
+     * already placed to the fixed positions.
+     */
+    private static final class Candidate {
+        final int[] slots;
+        final boolean sign;
+        /**
+         * Dummy number -> its label (-1 if not placed yet)
+         */
+        final int[] dummyLabels;
+        int counter;
+
+        Candidate(int[] slots, boolean sign, int dummiesCount) {
+            this.slots = slots;
+            this.sign = sign;
+            this.dummyLabels = new int[dummiesCount];
+            Arrays.fill(dummyLabels, -1);
+        }
+
+        Candidate(int[] slots, boolean sign, int[] dummyLabels, int counter) {
+            this.slots = slots;
+            this.sign = sign;
+            this.dummyLabels = dummyLabels;
+            this.counter = counter;
+        }
+
+        long label(int index, TIntIntHashMap dummies) {
+            int name = IndicesUtils.getNameWithType(index);
+            if (!dummies.containsKey(name))
+                return index & 0xFFFFFFFFL;
+            int dummy = dummyLabels[dummies.get(name)];
+            boolean metric = CC.isMetric(IndicesUtils.getType(index));
+            if (dummy == -1)
+                return DUMMY + (counter << 1) + (metric ? 0 : IndicesUtils.getStateInt(index));
+            return DUMMY + (dummy << 1) + (metric ? 1 : IndicesUtils.getStateInt(index));
+        }
+
+        /**
+         * Applies slot permutation and places the index at the specified position.
+         */
+        Candidate apply(Symmetry transversal, int position, TIntIntHashMap dummies) {
+            int[] slots = new int[this.slots.length];
+            for (int i = 0; i < slots.length; ++i)
+                slots[i] = this.slots[transversal.newIndexOf(i)];
+            Candidate candidate = new Candidate(slots, sign ^ transversal.isAntiSymmetry(),
+                    dummyLabels.clone(), counter);
+            int name = IndicesUtils.getNameWithType(slots[position]);
+            if (dummies.containsKey(name) && candidate.dummyLabels[dummies.get(name)] == -1)
+                candidate.dummyLabels[dummies.get(name)] = candidate.counter++;
+            return candidate;
+        }
+
+        long[] labels(TIntIntHashMap dummies) {
+            long[] labels = new long[slots.length];
+            Candidate labelling = new Candidate(slots, sign, dummies.size());
+            int name;
+            for (int i = 0; i < slots.length; ++i) {
+                labels[i] = labelling.label(slots[i], dummies);
+                name = IndicesUtils.getNameWithType(slots[i]);
+                if (dummies.containsKey(name) && labelling.dummyLabels[dummies.get(name)] == -1)
+                    labelling.dummyLabels[dummies.get(name)] = labelling.counter++;
+            }
+            return labels;
+        }
+    }
+
+    /**
+     * Returns {@code true} if tensor is equal to zero due to symmetries (i.e. it is equal to itself taken with
+     * the opposite sign). Zero canonical forms are not comparable.
+     *
+     * @return {@code true} if tensor is equal to zero due to symmetries
+     */
+    public boolean isZero() {
+        return zero;
+    }
+
+    /**
+     * Returns sign of the original tensor with respect to the canonical tensor: {@code true} means that the original
+     * tensor is equal to the canonical tensor taken with minus.
+     *
+     * @return sign of the original tensor with respect to the canonical tensor
+     */
+    public boolean getSign() {
+        return sign;
+    }
+
+    /**
+     * Returns canonical tensor (without sign, see {@link #getSign()}). Dummy indices of each type are named by the
+     * first names which are not occupied by free indices.
+     *
+     * @return canonical tensor
+     * @throws IllegalStateException if tensor is zero
+     */
+    public Tensor getTensor() {
+        if (zero)
+            throw new IllegalStateException("Zero.");
+        TIntHashSet free = new TIntHashSet();
+        for (long label : labels)
+            if (label < DUMMY)
+                free.add(IndicesUtils.getNameWithType((int) label));
+
+        int[] dummyNames = new int[labels.length], lastNames = new int[IndexType.TYPES_COUNT];
+        Arrays.fill(dummyNames, -1);
+        Tensor[] tensors = new Tensor[factors.length];
+        int position = 0, dummy, index, type, name;
+        for (int i = 0; i < factors.length; ++i) {
+            int[] indices = new int[factors[i].getIndices().size()];
+            for (int j = 0; j < indices.length; ++j, ++position) {
+                if (labels[position] < DUMMY) {
+                    indices[j] = (int) labels[position];
+                    continue;
+                }
+                type = IndicesUtils.getType(factors[i].getIndices().get(j));
+                dummy = (int) ((labels[position] - DUMMY) >> 1);
+                if (dummyNames[dummy] == -1) {
+                    do {
+                        name = IndicesUtils.createIndex(lastNames[type]++, (byte) type, false);
+                    } while (free.contains(name));
+                    dummyNames[dummy] = name;
+                }
+                index = dummyNames[dummy];
+                if (CC.isMetric((byte) type))
+                    //first occurrence is upper
+                    indices[j] = ((labels[position] - DUMMY) & 1) == 0 ? IndicesUtils.inverseIndexState(index) : index;
+                else
+                    indices[j] = ((labels[position] - DUMMY) & 1) == 1 ? IndicesUtils.inverseIndexState(index) : index;
+            }
+            tensors[i] = Tensors.simpleTensor(factors[i].getName(), IndicesFactory.createSimple(null, indices));
+        }
+        return Tensors.multiply(tensors);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        ProductCanonicalForm other = (ProductCanonicalForm) o;
+        if (zero || other.zero || hash != other.hash || factors.length != other.factors.length)
+            return false;
+        for (int i = 0; i < factors.length; ++i)
+            if (factors[i].getName() != other.factors[i].getName())
+                return false;
+        return Arrays.equals(labels, other.labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
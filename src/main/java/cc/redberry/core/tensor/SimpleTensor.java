@@ -69,6 +69,11 @@ public class SimpleTensor extends Tensor {
         return name;
     }
 
+    @Override
+    long calculateSummary() {
+        return TensorSummary.nameBit(name) | TensorSummary.typeBits(indices);
+    }
+
     @Override
     public SimpleIndices getIndices() {
         return indices;
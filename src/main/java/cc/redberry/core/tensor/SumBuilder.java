@@ -24,10 +24,7 @@ package cc.redberry.core.tensor;
 
 import cc.redberry.core.indices.Indices;
 import cc.redberry.core.number.Complex;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
 /**
  * Basic builder for sums. The implementation puts terms together as described in specification.
@@ -45,7 +42,7 @@ public final class SumBuilder extends AbstractSumBuilder {
     public SumBuilder() {
     }
 
-    SumBuilder(Map<Integer, List<FactorNode>> summands, Complex complex, Indices indices, int[] sortedFreeIndices) {
+    SumBuilder(TIntObjectHashMap<FactorNode> summands, Complex complex, Indices indices, int[] sortedFreeIndices) {
         super(summands, complex, indices, sortedFreeIndices);
     }
 
@@ -56,12 +53,7 @@ public final class SumBuilder extends AbstractSumBuilder {
 
     @Override
     public TensorBuilder clone() {
-        Map<Integer, List<FactorNode>> summands = new HashMap<>(this.summands);
-        for (Map.Entry<Integer, List<FactorNode>> entry : summands.entrySet()) {
-            List<FactorNode> fns = entry.getValue();
-            for (int i = fns.size() - 1; i >= 0; --i)
-                fns.set(i, fns.get(i).clone());
-        }
-        return new SumBuilder(summands, complex, indices, sortedFreeIndices.clone());
+        return new SumBuilder(cloneSummands(), complex, indices,
+                sortedFreeIndices == null ? null : sortedFreeIndices.clone());
     }
 }
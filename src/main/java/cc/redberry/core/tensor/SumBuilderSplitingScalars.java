@@ -24,10 +24,7 @@ package cc.redberry.core.tensor;
 
 import cc.redberry.core.indices.Indices;
 import cc.redberry.core.number.Complex;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
 /**
  *
@@ -37,7 +34,7 @@ import java.util.Map;
  */
 public final class SumBuilderSplitingScalars extends AbstractSumBuilder {
 
-    SumBuilderSplitingScalars(Map<Integer, List<FactorNode>> summands, Complex complex, Indices indices, int[] sortedFreeIndices) {
+    SumBuilderSplitingScalars(TIntObjectHashMap<FactorNode> summands, Complex complex, Indices indices, int[] sortedFreeIndices) {
         super(summands, complex, indices, sortedFreeIndices);
     }
 
@@ -55,12 +52,7 @@ public final class SumBuilderSplitingScalars extends AbstractSumBuilder {
 
     @Override
     public TensorBuilder clone() {
-        Map<Integer, List<FactorNode>> summands = new HashMap<>(this.summands);
-        for (Map.Entry<Integer, List<FactorNode>> entry : summands.entrySet()) {
-            List<FactorNode> fns = entry.getValue();
-            for (int i = fns.size() - 1; i >= 0; --i)
-                fns.set(i, fns.get(i).clone());
-        }
-        return new SumBuilderSplitingScalars(summands, complex, indices, sortedFreeIndices.clone());
+        return new SumBuilderSplitingScalars(cloneSummands(), complex, indices,
+                sortedFreeIndices == null ? null : sortedFreeIndices.clone());
     }
 }
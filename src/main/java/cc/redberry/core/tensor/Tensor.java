@@ -42,6 +42,10 @@ import java.util.Iterator;
 public abstract class Tensor
         implements Comparable<Tensor>,
         Iterable<Tensor> {
+    /**
+     * Lazily calculated summary of this tensor (see {@link TensorSummary})
+     */
+    private volatile long summary;
 
     /**
      * Hash code of this tensor.
@@ -173,6 +177,30 @@ public abstract class Tensor
         return hash();
     }
 
+    /**
+     * Returns cached summary of this tensor (see {@link TensorSummary}).
+     *
+     * @return summary of this tensor
+     */
+    final long getSummary() {
+        long summary = this.summary;
+        if (summary == 0)
+            this.summary = summary = calculateSummary() | TensorSummary.CALCULATED;
+        return summary;
+    }
+
+    /**
+     * Calculates summary of this tensor (see {@link TensorSummary}).
+     *
+     * @return summary of this tensor
+     */
+    long calculateSummary() {
+        long summary = 0;
+        for (int i = size() - 1; i >= 0; --i)
+            summary |= get(i).getSummary();
+        return summary;
+    }
+
     /**
      * Creates a builder for this tensor. See {@link TensorBuilder} for more
      * information.
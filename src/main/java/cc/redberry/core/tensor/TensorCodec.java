@@ -0,0 +1,591 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.NameAndStructureOfIndices;
+import cc.redberry.core.context.NameDescriptor;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.indices.SimpleIndices;
+import cc.redberry.core.indices.StructureOfIndices;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.number.Numeric;
+import cc.redberry.core.number.Rational;
+import cc.redberry.core.number.Real;
+import cc.redberry.core.tensor.functions.*;
+import cc.redberry.core.utils.ByteBackedBitArray;
+import cc.redberry.core.utils.IntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Compact versioned binary format of tensors. The format is intended for checkpointing of long computations:
+ * unlike {@link Tensor#toString(cc.redberry.core.context.OutputFormat)} followed by parsing, it is lossless for all
+ * tensors and is read without any parsing.
+ *
+ * <p>The stream starts with a header (magic number and version of format) and contains an arbitrary number of
+ * tensors written by the same {@link Writer}. The format includes:
+ * <ul>
+ * <li>a table of names: each name is written only once, at its first occurrence, as a string name together with
+ * structures of indices (see {@link NameDescriptor#extractKey(cc.redberry.core.context.NameDescriptor)}), so when
+ * reading the names are remapped via {@link cc.redberry.core.context.NameManager#mapNameDescriptor(String,
+ * cc.redberry.core.indices.StructureOfIndices...)} into the current context, which may differ from the context where
+ * the stream was written;</li>
+ * <li>varint-packed indices (name, type and state of a typical index fit in two bytes);</li>
+ * <li>back-references to already written subtrees (subtrees are shared by identity, so trees of interned tensors
+ * (see {@link TensorInterner}) are especially compact);</li>
+ * <li>compact encoding of numbers: small integers and rationals are written as varints, big rationals as bytes
+ * of their numerators and denominators and numeric values as {@code double}s.</li>
+ * </ul>
+ * </p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1
+ */
+public final class TensorCodec {
+    /**
+     * Current version of format
+     */
+    public static final int VERSION = 1;
+    //"RBTC"
+    private static final int MAGIC = 0x52425443;
+
+    private static final byte T_REFERENCE = 0, T_SIMPLE_TENSOR = 1, T_TENSOR_FIELD = 2, T_SUM = 3, T_PRODUCT = 4,
+            T_POWER = 5, T_EXPRESSION = 6, T_SCALAR_FUNCTION = 7, T_INTEGER = 8, T_COMPLEX = 9;
+    private static final byte R_LONG = 0, R_BIG = 1, R_NUMERIC = 2;
+    private static final Class<?>[] functions = {Sin.class, Cos.class, Tan.class, Cot.class, ArcSin.class,
+            ArcCos.class, ArcTan.class, ArcCot.class, Log.class, Exp.class};
+
+    private TensorCodec() {
+    }
+
+    /**
+     * Writes specified tensor (together with header) to the specified output.
+     *
+     * @param tensor tensor
+     * @param output output
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(Tensor tensor, DataOutput output) throws IOException {
+        new Writer(output).write(tensor);
+    }
+
+    /**
+     * Reads tensor written by {@link #write(Tensor, java.io.DataOutput)}.
+     *
+     * @param input input
+     * @return tensor
+     * @throws IOException if an I/O error occurs or input is not a valid stream of tensors
+     */
+    public static Tensor read(DataInput input) throws IOException {
+        return new Reader(input).read();
+    }
+
+    /**
+     * Writes specified tensor (together with header) to the specified channel. Channel is not closed.
+     *
+     * @param tensor  tensor
+     * @param channel channel
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(Tensor tensor, WritableByteChannel channel) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        write(tensor, output);
+        output.flush();
+    }
+
+    /**
+     * Reads tensor written by {@link #write(Tensor, java.nio.channels.WritableByteChannel)}. Channel is read with
+     * buffering, so it should not contain any data after the tensor. Channel is not closed.
+     *
+     * @param channel channel
+     * @return tensor
+     * @throws IOException if an I/O error occurs or channel does not contain a valid stream of tensors
+     */
+    public static Tensor read(ReadableByteChannel channel) throws IOException {
+        return read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+    }
+
+    /**
+     * Writes a sequence of tensors to a single stream. Names and shared subtrees are written only once for the whole
+     * sequence.
+     */
+    public static final class Writer {
+        private final DataOutput output;
+        //name in context -> number in the stream (or name itself if stream is local)
+        private final TIntIntHashMap names;
+        private final IdentityHashMap<Tensor, Integer> references;
+
+        /**
+         * Creates writer and writes header to the specified output.
+         *
+         * @param output output
+         * @throws IOException if an I/O error occurs
+         */
+        public Writer(DataOutput output) throws IOException {
+            this(output, false);
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+        }
+
+        /**
+         * @param output output
+         * @param local  if true, no header is written, names are written as their identifiers in the current context
+         *               and no back-references are used; so each tensor can be read independently (by the local
+         *               reader in the same context)
+         */
+        Writer(DataOutput output, boolean local) {
+            this.output = output;
+            this.names = local ? null : new TIntIntHashMap();
+            this.references = local ? null : new IdentityHashMap<Tensor, Integer>();
+        }
+
+        /**
+         * Writes specified tensor.
+         *
+         * @param tensor tensor
+         * @throws IOException if an I/O error occurs
+         */
+        public void write(Tensor tensor) throws IOException {
+            if (tensor instanceof Complex) {
+                writeComplex((Complex) tensor);
+                return;
+            }
+            if (references != null && tensor.size() != 0) {
+                Integer reference = references.get(tensor);
+                if (reference != null) {
+                    output.writeByte(T_REFERENCE);
+                    writeVarInt(output, reference);
+                    return;
+                }
+                references.put(tensor, references.size());
+            }
+
+            if (tensor instanceof SimpleTensor) {
+                SimpleTensor simpleTensor = (SimpleTensor) tensor;
+                output.writeByte(tensor instanceof TensorField ? T_TENSOR_FIELD : T_SIMPLE_TENSOR);
+                writeName(simpleTensor.getName());
+                writeIndices(simpleTensor.getIndices());
+                if (tensor instanceof TensorField) {
+                    TensorField field = (TensorField) tensor;
+                    for (int i = 0; i < field.size(); ++i) {
+                        writeIndices(field.getArgIndices(i));
+                        write(field.get(i));
+                    }
+                }
+                return;
+            }
+
+            if (tensor instanceof ScalarFunction) {
+                output.writeByte(T_SCALAR_FUNCTION);
+                output.writeByte(functionKind(tensor));
+                write(tensor.get(0));
+                return;
+            }
+
+            if (tensor instanceof Sum)
+                output.writeByte(T_SUM);
+            else if (tensor instanceof Product)
+                output.writeByte(T_PRODUCT);
+            else if (tensor instanceof Power)
+                output.writeByte(T_POWER);
+            else if (tensor instanceof Expression)
+                output.writeByte(T_EXPRESSION);
+            else
+                throw new IllegalArgumentException("Unsupported tensor: " + tensor.getClass());
+            if (tensor instanceof MultiTensor)
+                writeVarInt(output, tensor.size());
+            for (Tensor t : tensor)
+                write(t);
+        }
+
+        private void writeName(int name) throws IOException {
+            if (names == null) {
+                writeVarInt(output, name);
+                return;
+            }
+            if (names.containsKey(name)) {
+                writeVarInt(output, names.get(name) + 1);
+                return;
+            }
+            names.put(name, names.size());
+            writeVarInt(output, 0);
+            NameAndStructureOfIndices key = NameDescriptor.extractKey(CC.getNameDescriptor(name));
+            output.writeUTF(key.getName());
+            StructureOfIndices[] structures = key.getStructure();
+            writeVarInt(output, structures.length);
+            for (StructureOfIndices structure : structures)
+                writeStructure(structure);
+        }
+
+        private void writeStructure(StructureOfIndices structure) throws IOException {
+            int[] counts = structure.getTypesCounts();
+            ByteBackedBitArray[] states = structure.getStates();
+            int types = 0, i, j;
+            for (i = 0; i < counts.length; ++i)
+                if (counts[i] != 0)
+                    ++types;
+            writeVarInt(output, types);
+            for (i = 0; i < counts.length; ++i) {
+                if (counts[i] == 0)
+                    continue;
+                output.writeByte(i);
+                writeVarInt(output, (counts[i] << 1) | (states[i] == null ? 0 : 1));
+                if (states[i] == null)
+                    continue;
+                for (j = 0; j < counts[i]; j += 8) {
+                    int b = 0;
+                    for (int k = 0; k < 8 && j + k < counts[i]; ++k)
+                        if (states[i].get(j + k))
+                            b |= 1 << k;
+                    output.writeByte(b);
+                }
+            }
+        }
+
+        private void writeIndices(SimpleIndices indices) throws IOException {
+            writeVarInt(output, indices.size());
+            for (int i = 0; i < indices.size(); ++i) {
+                int index = indices.get(i);
+                writeVarInt(output, (IndicesUtils.getNameWithoutType(index) << 8)
+                        | (IndicesUtils.getType(index) << 1) | IndicesUtils.getStateInt(index));
+            }
+        }
+
+        private void writeComplex(Complex complex) throws IOException {
+            Real real = complex.getReal(), imaginary = complex.getImaginary();
+            if (real instanceof Rational && imaginary instanceof Rational && imaginary.isZero()
+                    && ((Rational) real).isInteger() && ((Rational) real).getNumerator().bitLength() < 64) {
+                output.writeByte(T_INTEGER);
+                writeVarLong(output, zigzag(((Rational) real).getNumeratorAsLong()));
+                return;
+            }
+            output.writeByte(T_COMPLEX);
+            writeReal(real);
+            writeReal(imaginary);
+        }
+
+        private void writeReal(Real real) throws IOException {
+            if (real instanceof Numeric) {
+                output.writeByte(R_NUMERIC);
+                output.writeDouble(real.doubleValue());
+                return;
+            }
+            BigInteger numerator = ((Rational) real).getNumerator(), denominator = ((Rational) real).getDenominator();
+            if (numerator.bitLength() < 64 && denominator.bitLength() < 64) {
+                output.writeByte(R_LONG);
+                writeVarLong(output, zigzag(numerator.longValue()));
+                writeVarLong(output, denominator.longValue());
+                return;
+            }
+            output.writeByte(R_BIG);
+            writeBytes(numerator.toByteArray());
+            writeBytes(denominator.toByteArray());
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            writeVarInt(output, bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a sequence of tensors written by {@link Writer}. Names are mapped into the current context.
+     */
+    public static final class Reader {
+        private final DataInput input;
+        //number in the stream -> name in the current context
+        private final IntArrayList names;
+        private final List<Tensor> references;
+
+        /**
+         * Creates reader and reads header from the specified input.
+         *
+         * @param input input
+         * @throws IOException if an I/O error occurs, input is not a stream of tensors or version of format is not
+         *                     supported
+         */
+        public Reader(DataInput input) throws IOException {
+            this(input, false);
+            if (input.readInt() != MAGIC)
+                throw new IOException("Not a stream of tensors.");
+            int version = input.readUnsignedByte();
+            if (version != VERSION)
+                throw new IOException("Unsupported version of format: " + version);
+        }
+
+        /**
+         * @param input input
+         * @param local whether stream was written by local writer
+         */
+        Reader(DataInput input, boolean local) {
+            this.input = input;
+            this.names = local ? null : new IntArrayList();
+            this.references = local ? null : new ArrayList<Tensor>();
+        }
+
+        /**
+         * Reads next tensor.
+         *
+         * @return tensor
+         * @throws IOException  if an I/O error occurs or input is corrupted
+         * @throws EOFException if stream is exhausted
+         */
+        public Tensor read() throws IOException {
+            byte tag = input.readByte();
+            switch (tag) {
+                case T_INTEGER:
+                    return new Complex(unzigzag(readVarLong(input)));
+                case T_COMPLEX:
+                    return new Complex(readReal(), readReal());
+                case T_REFERENCE:
+                    int reference = readVarInt(input);
+                    if (references == null || reference >= references.size() || references.get(reference) == null)
+                        throw new IOException("Illegal reference: " + reference);
+                    return references.get(reference);
+                case T_SIMPLE_TENSOR:
+                    return Tensors.simpleTensor(readName(), readIndices());
+            }
+
+            int reference = -1;
+            if (references != null) {
+                reference = references.size();
+                references.add(null);
+            }
+            Tensor result;
+            switch (tag) {
+                case T_TENSOR_FIELD:
+                    int name = readName();
+                    SimpleIndices indices = readIndices();
+                    int size = CC.getNameDescriptor(name).getStructuresOfIndices().length - 1;
+                    SimpleIndices[] argIndices = new SimpleIndices[size];
+                    Tensor[] arguments = new Tensor[size];
+                    for (int i = 0; i < size; ++i) {
+                        argIndices[i] = readIndices();
+                        arguments[i] = read();
+                    }
+                    result = Tensors.field(name, indices, argIndices, arguments);
+                    break;
+                case T_SCALAR_FUNCTION:
+                    result = createFunction(input.readByte(), read());
+                    break;
+                case T_SUM:
+                    size = readVarInt(input);
+                    SumBuilder sum = new SumBuilder(size);
+                    for (int i = 0; i < size; ++i)
+                        sum.put(read());
+                    result = sum.build();
+                    break;
+                case T_PRODUCT:
+                    Tensor[] factors = new Tensor[readVarInt(input)];
+                    for (int i = 0; i < factors.length; ++i)
+                        factors[i] = read();
+                    result = Tensors.multiply(factors);
+                    break;
+                case T_POWER:
+                    result = Tensors.pow(read(), read());
+                    break;
+                case T_EXPRESSION:
+                    result = Tensors.expression(read(), read());
+                    break;
+                default:
+                    throw new IOException("Unknown tag: " + tag);
+            }
+            if (references != null)
+                references.set(reference, result);
+            return result;
+        }
+
+        private int readName() throws IOException {
+            int name = readVarInt(input);
+            if (names == null)
+                return name;
+            if (name != 0) {
+                if (name > names.size())
+                    throw new IOException("Illegal name reference: " + name);
+                return names.get(name - 1);
+            }
+            String string = input.readUTF();
+            StructureOfIndices[] structures = new StructureOfIndices[readVarInt(input)];
+            for (int i = 0; i < structures.length; ++i)
+                structures[i] = readStructure();
+            name = CC.getNameManager().mapNameDescriptor(string, structures).getId();
+            names.add(name);
+            return name;
+        }
+
+        private StructureOfIndices readStructure() throws IOException {
+            int[] counts = new int[IndexType.TYPES_COUNT];
+            ByteBackedBitArray[] states = new ByteBackedBitArray[IndexType.TYPES_COUNT];
+            int i, j;
+            for (i = 0; i < IndexType.TYPES_COUNT; ++i)
+                if (!CC.isMetric((byte) i))
+                    states[i] = ByteBackedBitArray.EMPTY;
+            for (i = readVarInt(input); i > 0; --i) {
+                int type = input.readUnsignedByte();
+                if (type >= IndexType.TYPES_COUNT)
+                    throw new IOException("Illegal index type: " + type);
+                int count = readVarInt(input);
+                boolean hasStates = (count & 1) != 0;
+                counts[type] = count >>>= 1;
+                if (!hasStates)
+                    continue;
+                ByteBackedBitArray typeStates = new ByteBackedBitArray(count);
+                for (j = 0; j < count; j += 8) {
+                    int b = input.readUnsignedByte();
+                    for (int k = 0; k < 8 && j + k < count; ++k)
+                        if ((b & (1 << k)) != 0)
+                            typeStates.set(j + k);
+                }
+                //in the current context the type may be metric
+                if (states[type] != null)
+                    states[type] = typeStates;
+            }
+            return new StructureOfIndices(counts, states);
+        }
+
+        private SimpleIndices readIndices() throws IOException {
+            int[] indices = new int[readVarInt(input)];
+            for (int i = 0; i < indices.length; ++i) {
+                int packed = readVarInt(input);
+                indices[i] = (packed >>> 8) | (((packed >>> 1) & 0x7F) << 24) | ((packed & 1) << 31);
+            }
+            return IndicesFactory.createSimple(null, indices);
+        }
+
+        private Real readReal() throws IOException {
+            byte kind = input.readByte();
+            switch (kind) {
+                case R_LONG:
+                    return new Rational(unzigzag(readVarLong(input)), readVarLong(input));
+                case R_BIG:
+                    return new Rational(new BigInteger(readBytes()), new BigInteger(readBytes()));
+                case R_NUMERIC:
+                    return new Numeric(input.readDouble());
+                default:
+                    throw new IOException("Unknown kind of number: " + kind);
+            }
+        }
+
+        private byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readVarInt(input)];
+            input.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static int functionKind(Tensor function) {
+        for (int i = 0; i < functions.length; ++i)
+            if (functions[i] == function.getClass())
+                return i;
+        throw new IllegalArgumentException("Unsupported function: " + function.getClass());
+    }
+
+    private static Tensor createFunction(int kind, Tensor argument) throws IOException {
+        switch (kind) {
+            case 0:
+                return Tensors.sin(argument);
+            case 1:
+                return Tensors.cos(argument);
+            case 2:
+                return Tensors.tan(argument);
+            case 3:
+                return Tensors.cot(argument);
+            case 4:
+                return Tensors.arcsin(argument);
+            case 5:
+                return Tensors.arccos(argument);
+            case 6:
+                return Tensors.arctan(argument);
+            case 7:
+                return Tensors.arccot(argument);
+            case 8:
+                return Tensors.log(argument);
+            case 9:
+                return Tensors.exp(argument);
+            default:
+                throw new IOException("Unknown function: " + kind);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        byte b;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28)
+                throw new IOException("Malformed varint.");
+            b = input.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    private static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        byte b;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 63)
+                throw new IOException("Malformed varint.");
+            b = input.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+}
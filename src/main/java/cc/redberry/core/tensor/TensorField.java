@@ -74,6 +74,14 @@ public final class TensorField extends SimpleTensor {
         return args.length;
     }
 
+    @Override
+    long calculateSummary() {
+        long summary = super.calculateSummary();
+        for (Tensor argument : args)
+            summary |= argument.getSummary();
+        return summary;
+    }
+
     @Override
     public Iterator<Tensor> iterator() {
         return new BasicTensorIterator(this);
@@ -0,0 +1,249 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.TensorUtils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Weak interning table of tensors (hash-consing). Interned tensors which are exactly equal
+ * (see {@link TensorUtils#equalsExactly(Tensor, Tensor)}) are represented by a single shared instance, so
+ * reference-equality fast paths in equality checks hit more often and duplicates are not kept in memory.
+ *
+ * <p>Only simple tensors, tensor fields and scalar subtrees (tensors without indices, e.g. {@code Power[M,2]}) are
+ * interned. Table holds weak references to tensors, so interned tensors are garbage collected as usual, when they are
+ * not used anywhere else.</p>
+ *
+ * <p>Each {@link cc.redberry.core.context.Context} holds its own table, which is disabled by default and can be
+ * switched on via {@link cc.redberry.core.context.Context#setTensorInterning(boolean)}. When enabled, {@link Tensors}
+ * factory methods (and thus parser and {@link ApplyIndexMapping}) return interned instances.</p>
+ *
+ * <p>This class is thread-safe: when enabled, all lookups synchronize on the table, so it is a single global lock for
+ * all threads creating tensors in the context; for heavily concurrent computations interning is better kept switched
+ * off. When disabled (or when no table is enabled at all) factory methods of {@link Tensors} neither lock nor look up
+ * the current context.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public final class TensorInterner {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    /**
+     * Number of enabled tables; allows to skip look up of current context when interning is switched off everywhere
+     */
+    private static final AtomicInteger ENABLED_TABLES = new AtomicInteger();
+    private final ReferenceQueue<Tensor> queue = new ReferenceQueue<>();
+    private Entry[] table = new Entry[INITIAL_CAPACITY];
+    private int size = 0;
+    private long requests = 0, hits = 0;
+    private volatile boolean enabled;
+
+    /**
+     * Creates empty interning table.
+     *
+     * @param enabled whether interning is switched on
+     */
+    public TensorInterner(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled)
+            ENABLED_TABLES.incrementAndGet();
+    }
+
+    /**
+     * Returns true if interning is switched on.
+     *
+     * @return true if interning is switched on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches interning on or off. Switching off also clears the table.
+     *
+     * @param enabled whether interning is switched on
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        if (this.enabled == enabled)
+            return;
+        this.enabled = enabled;
+        if (enabled)
+            ENABLED_TABLES.incrementAndGet();
+        else {
+            ENABLED_TABLES.decrementAndGet();
+            clear();
+        }
+    }
+
+    /**
+     * Returns shared instance of specified tensor if interning is switched on and tensor is internable (simple tensor,
+     * tensor field or scalar); otherwise returns the specified tensor.
+     *
+     * @param tensor tensor
+     * @param <T>    type of tensor
+     * @return shared instance of tensor
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Tensor> T intern(T tensor) {
+        if (!enabled || !isInternable(tensor))
+            return tensor;
+        int hash = hash(tensor);
+        synchronized (this) {
+            ++requests;
+            expungeStaleEntries();
+            int i = hash & (table.length - 1);
+            Tensor t;
+            for (Entry e = table[i]; e != null; e = e.next)
+                if (e.hash == hash && (t = e.get()) != null && TensorUtils.equalsExactly(t, tensor)) {
+                    ++hits;
+                    return (T) t;
+                }
+            table[i] = new Entry(tensor, hash, table[i], queue);
+            if (++size > (table.length >> 1) + (table.length >> 2))
+                resize();
+            return tensor;
+        }
+    }
+
+    /**
+     * Returns the number of tensors in the table (some of them may be already garbage collected).
+     *
+     * @return the number of tensors in the table
+     */
+    public synchronized int size() {
+        expungeStaleEntries();
+        return size;
+    }
+
+    /**
+     * Returns the total number of {@link #intern(Tensor)} requests, which were looked up in the table.
+     *
+     * @return the total number of requests
+     */
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of {@link #intern(Tensor)} requests, which returned already existing instance.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the ratio of hits to the total number of requests.
+     *
+     * @return hit rate
+     */
+    public synchronized double getHitRate() {
+        return requests == 0 ? 0 : ((double) hits) / requests;
+    }
+
+    /**
+     * Removes all tensors from the table and resets statistics.
+     */
+    public synchronized void clear() {
+        while (queue.poll() != null) ;
+        table = new Entry[INITIAL_CAPACITY];
+        size = 0;
+        requests = hits = 0;
+    }
+
+    private static boolean isInternable(Tensor tensor) {
+        return tensor instanceof SimpleTensor
+                || (tensor.getIndices().size() == 0 && !(tensor instanceof Complex));
+    }
+
+    private static int hash(Tensor tensor) {
+        int hash = tensor.hashCode();
+        if (tensor instanceof SimpleTensor)
+            hash = 31 * hash + tensor.getIndices().hashCode();
+        //spread bits as in java.util.HashMap
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+    private void resize() {
+        Entry[] newTable = new Entry[table.length << 1];
+        Entry next;
+        int i;
+        for (Entry e : table)
+            for (; e != null; e = next) {
+                next = e.next;
+                i = e.hash & (newTable.length - 1);
+                e.next = newTable[i];
+                newTable[i] = e;
+            }
+        table = newTable;
+    }
+
+    private void expungeStaleEntries() {
+        Entry stale, e, previous;
+        int i;
+        while ((stale = (Entry) queue.poll()) != null) {
+            i = stale.hash & (table.length - 1);
+            previous = null;
+            for (e = table[i]; e != null; previous = e, e = e.next)
+                if (e == stale) {
+                    if (previous == null)
+                        table[i] = e.next;
+                    else
+                        previous.next = e.next;
+                    --size;
+                    break;
+                }
+        }
+    }
+
+    private static final class Entry extends WeakReference<Tensor> {
+        final int hash;
+        Entry next;
+
+        Entry(Tensor tensor, int hash, Entry next, ReferenceQueue<Tensor> queue) {
+            super(tensor, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Interns tensor in the table of current context.
+     *
+     * @param tensor tensor
+     * @param <T>    type of tensor
+     * @return shared instance of tensor
+     */
+    static <T extends Tensor> T internInCurrent(T tensor) {
+        if (ENABLED_TABLES.get() == 0)
+            return tensor;
+        return CC.current().getTensorInterner().intern(tensor);
+    }
+}
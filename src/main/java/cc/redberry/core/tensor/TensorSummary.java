@@ -0,0 +1,174 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.tensor.iterator.TraversePermission;
+
+/**
+ * Summary of tensor content: 64-bit Bloom filter of names of all simple tensors (including tensor fields and
+ * their arguments) and of all types of indices which occur in the tensor. Summary is calculated lazily and cached
+ * in each node of the tree (like hash code), so it occupies exactly one {@code long} field per node regardless of
+ * the size of subtree; once calculated, checking whether subtree may contain some name costs O(1).
+ *
+ * <p>Summary has no false negatives: if {@code mayContain(tensor, name)} returns {@code false}, then the tensor
+ * definitely does not contain simple tensors with the specified name. Positive answers are approximate.</p>
+ *
+ * <p>Layout: bits 0..7 are types of indices (see {@link IndexType#getType()}), bits 8..62 are names and the highest
+ * bit marks calculated summary.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public final class TensorSummary {
+    /**
+     * Marks calculated summary, so calculated summary is never zero
+     */
+    static final long CALCULATED = 1L << 63;
+    private static final int NAME_BITS_OFFSET = IndexType.TYPES_COUNT;
+    private static final int NAME_BITS_COUNT = 63 - NAME_BITS_OFFSET;
+
+    private TensorSummary() {
+    }
+
+    /**
+     * Returns summary of the specified tensor.
+     *
+     * @param tensor tensor
+     * @return summary of the specified tensor
+     */
+    public static long of(Tensor tensor) {
+        return tensor.getSummary() & ~CALCULATED;
+    }
+
+    /**
+     * Returns bit which corresponds to the specified name.
+     *
+     * @param name name of simple tensor
+     * @return bit which corresponds to the specified name
+     */
+    public static long nameBit(int name) {
+        int h = name * 0x9E3779B9;
+        h ^= h >>> 16;
+        return 1L << (NAME_BITS_OFFSET + (h & 0x7FFFFFFF) % NAME_BITS_COUNT);
+    }
+
+    /**
+     * Returns bit which corresponds to the specified type of indices.
+     *
+     * @param type type of indices
+     * @return bit which corresponds to the specified type of indices
+     */
+    public static long typeBit(IndexType type) {
+        return 1L << type.getType();
+    }
+
+    /**
+     * Returns bits of all types of the specified indices.
+     *
+     * @param indices indices
+     * @return bits of all types of the specified indices
+     */
+    public static long typeBits(Indices indices) {
+        long bits = 0;
+        for (int i = indices.size() - 1; i >= 0; --i)
+            bits |= 1L << IndicesUtils.getType(indices.get(i));
+        return bits;
+    }
+
+    /**
+     * Returns summary of names of all simple tensors (including fields, but not their arguments) which occur in
+     * the specified tensor. Such a summary is a mask, which is contained in summary of any tensor that can be
+     * matched by the specified tensor.
+     *
+     * @param tensor tensor
+     * @return summary of names
+     */
+    public static long namesMask(Tensor tensor) {
+        if (tensor instanceof SimpleTensor)
+            return nameBit(((SimpleTensor) tensor).getName());
+        long mask = 0;
+        for (Tensor t : tensor)
+            mask |= namesMask(t);
+        return mask;
+    }
+
+    /**
+     * Returns {@code false} if the specified tensor definitely does not contain all bits of the specified mask.
+     *
+     * @param tensor tensor
+     * @param mask   mask
+     * @return {@code false} if the specified tensor definitely does not contain all bits of the specified mask
+     */
+    public static boolean mayContain(Tensor tensor, long mask) {
+        return (tensor.getSummary() & mask) == mask;
+    }
+
+    /**
+     * Returns {@code false} if the specified tensor definitely does not contain simple tensors with the specified name.
+     *
+     * @param tensor tensor
+     * @param name   name of simple tensor
+     * @return {@code false} if the specified tensor definitely does not contain simple tensors with the specified name
+     */
+    public static boolean mayContainName(Tensor tensor, int name) {
+        return mayContain(tensor, nameBit(name));
+    }
+
+    /**
+     * Returns {@code false} if the specified tensor definitely does not contain indices of the specified type.
+     *
+     * @param tensor tensor
+     * @param type   type of indices
+     * @return {@code false} if the specified tensor definitely does not contain indices of the specified type
+     */
+    public static boolean mayContainType(Tensor tensor, IndexType type) {
+        return mayContain(tensor, typeBit(type));
+    }
+
+    /**
+     * Returns traverse guide, which does not show subtrees that definitely do not contain all bits of at least one
+     * of the specified masks.
+     *
+     * @param masks masks
+     * @return traverse guide
+     */
+    public static TraverseGuide guide(final long... masks) {
+        for (long mask : masks)
+            if (mask == 0)
+                return TraverseGuide.ALL;
+        return new TraverseGuide() {
+            @Override
+            public TraversePermission getPermission(Tensor tensor, Tensor parent, int indexInParent) {
+                long summary = tensor.getSummary();
+                for (long mask : masks)
+                    if ((summary & mask) == mask)
+                        return TraversePermission.Enter;
+                return TraversePermission.DontShow;
+            }
+        };
+    }
+}
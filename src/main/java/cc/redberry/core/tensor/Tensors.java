@@ -74,7 +74,7 @@ public final class Tensors {
         PowerBuilder pb = new PowerBuilder();
         pb.put(argument);
         pb.put(power);
-        return pb.build();
+        return TensorInterner.internInCurrent(pb.build());
     }
 
     /**
@@ -263,9 +263,9 @@ public final class Tensors {
      */
     public static SimpleTensor simpleTensor(String name, SimpleIndices indices) {
         NameDescriptor descriptor = CC.getNameManager().mapNameDescriptor(name, indices.getStructureOfIndices());
-        return new SimpleTensor(descriptor.getId(),
+        return TensorInterner.internInCurrent(new SimpleTensor(descriptor.getId(),
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(),
-                        indices));
+                        indices)));
     }
 
     /**
@@ -282,9 +282,9 @@ public final class Tensors {
             throw new IllegalArgumentException("This name is not registered in the system.");
         if (!descriptor.getStructureOfIndices().isStructureOf(indices))
             throw new IllegalArgumentException("Specified indices are not indices of specified tensor.");
-        return new SimpleTensor(name,
+        return TensorInterner.internInCurrent(new SimpleTensor(name,
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(),
-                        indices));
+                        indices)));
     }
 
     /**
@@ -328,9 +328,9 @@ public final class Tensors {
         for (int i = 0; i < argIndices.length; ++i)
             structures[i + 1] = argIndices[i].getStructureOfIndices();
         NameDescriptor descriptor = CC.getNameManager().mapNameDescriptor(name, structures);
-        return new TensorField(descriptor.getId(),
+        return TensorInterner.internInCurrent(new TensorField(descriptor.getId(),
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(), indices),
-                arguments, argIndices);
+                arguments, argIndices));
     }
 
     /**
@@ -364,9 +364,9 @@ public final class Tensors {
             if (!arguments[i].getIndices().getFree().equalsRegardlessOrder(argIndices[i]))
                 throw new IllegalArgumentException("Arguments indices are inconsistent with arguments.");
         }
-        return new TensorField(name,
+        return TensorInterner.internInCurrent(new TensorField(name,
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(), indices),
-                arguments, argIndices);
+                arguments, argIndices));
     }
 
     /**
@@ -390,9 +390,9 @@ public final class Tensors {
         SimpleIndices[] argIndices = new SimpleIndices[arguments.length];
         for (int i = 0; i < arguments.length; ++i)
             argIndices[i] = IndicesFactory.createSimple(null, arguments[i].getIndices().getFree());
-        return new TensorField(name,
+        return TensorInterner.internInCurrent(new TensorField(name,
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(), indices),
-                arguments, argIndices);
+                arguments, argIndices));
     }
 
     /**
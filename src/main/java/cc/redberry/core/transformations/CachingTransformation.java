@@ -0,0 +1,246 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.indexmapping.IndexMappingBuffer;
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.indexmapping.MappingsPort;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.ApplyIndexMapping;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transformation, which caches results of the specified transformation. Tensors are considered to be equal if there
+ * is a positive mapping of indices of one onto another (i.e. tensors are equal up to renaming of dummy and free
+ * indices), so on a cache hit the stored result is returned with its indices renamed according to that mapping. The
+ * cache holds at most {@code maxSize} entries and the least recently used entries are evicted first.
+ *
+ * <p>Dummy indices of a returned result never clash with indices of the transformed tensor; if the tensor is a part
+ * of a larger expression, indices of the rest of expression should be passed to {@link #transform(Tensor, int[])},
+ * so dummies of the result (both cached and just calculated) will not clash with them too.</p>
+ *
+ * <p>Results, whose free indices differ from free indices of the transformed tensor, are not cached. The
+ * transformation is thread-safe if the wrapped transformation is thread-safe.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.3
+ */
+public final class CachingTransformation implements Transformation {
+    /**
+     * Default maximal number of cached entries.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    private final Transformation transformation;
+    private final int maxSize;
+    //bucket of tensors with equal hash codes ordered by access (the least recently used bucket goes first)
+    private final LinkedHashMap<Integer, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int size = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+
+    /**
+     * Creates caching wrapper of specified transformation with default maximal size of cache.
+     *
+     * @param transformation transformation
+     */
+    public CachingTransformation(Transformation transformation) {
+        this(transformation, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates caching wrapper of specified transformation.
+     *
+     * @param transformation transformation
+     * @param maxSize        maximal number of cached results
+     * @throws IllegalArgumentException if {@code maxSize} is not positive
+     */
+    public CachingTransformation(Transformation transformation, int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Cache size should be positive: " + maxSize);
+        this.transformation = transformation;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Tensor transform(Tensor t) {
+        return transform(t, new int[0]);
+    }
+
+    /**
+     * Transforms tensor, which is a part of a larger expression; dummy indices of the result will not clash with
+     * the specified forbidden indices (e.g. indices of other factors of a product, which contains the tensor).
+     *
+     * @param t         tensor
+     * @param forbidden forbidden indices names
+     * @return result of transformation
+     */
+    public Tensor transform(Tensor t, int[] forbidden) {
+        if (t instanceof Complex)
+            return transformation.transform(t);
+        //hash code does not depend on names of indices
+        final Integer hash = t.hashCode();
+        synchronized (cache) {
+            for (Entry entry = cache.get(hash); entry != null; entry = entry.next) {
+                IndexMappingBuffer buffer = positiveMapping(entry.from, t);
+                if (buffer != null) {
+                    ++hits;
+                    //dummies of cached result should be renamed with respect to the current tensor and its context
+                    TIntHashSet forbiddenNames = TensorUtils.getAllIndicesNamesT(t);
+                    forbiddenNames.addAll(forbidden);
+                    return ApplyIndexMapping.applyIndexMapping(entry.to, buffer, forbiddenNames.toArray());
+                }
+            }
+            ++misses;
+        }
+
+        Tensor result = transformation.transform(t);
+        if (!result.getIndices().getFree().equalsRegardlessOrder(t.getIndices().getFree()))
+            return ApplyIndexMapping.renameDummy(result, forbidden);
+
+        synchronized (cache) {
+            Entry entry = cache.get(hash);
+            if (entry == null)
+                cache.put(hash, new Entry(t, result));
+            else {
+                //another thread may put equal tensor in the meantime
+                for (; ; entry = entry.next) {
+                    if (positiveMapping(entry.from, t) != null)
+                        return ApplyIndexMapping.renameDummy(result, forbidden);
+                    if (entry.next == null)
+                        break;
+                }
+                entry.next = new Entry(t, result);
+            }
+            if (++size > maxSize)
+                evict();
+        }
+        return ApplyIndexMapping.renameDummy(result, forbidden);
+    }
+
+    private static IndexMappingBuffer positiveMapping(Tensor from, Tensor to) {
+        IndexMappingBuffer buffer;
+        MappingsPort port = IndexMappings.createPort(from, to);
+        while ((buffer = port.take()) != null)
+            if (!buffer.getSign())
+                return buffer;
+        return null;
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = cache.values().iterator();
+        while (size > maxSize) {
+            //the least recently used bucket
+            Entry entry = iterator.next();
+            iterator.remove();
+            for (; entry != null; entry = entry.next) {
+                --size;
+                ++evictions;
+            }
+        }
+    }
+
+    /**
+     * Returns wrapped transformation.
+     *
+     * @return wrapped transformation
+     */
+    public Transformation getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * Returns current number of cached results.
+     *
+     * @return current number of cached results
+     */
+    public int size() {
+        synchronized (cache) {
+            return size;
+        }
+    }
+
+    /**
+     * Returns number of cache hits.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns number of cache misses.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    /**
+     * Returns number of evicted results.
+     *
+     * @return number of evicted results
+     */
+    public long getEvictions() {
+        synchronized (cache) {
+            return evictions;
+        }
+    }
+
+    /**
+     * Removes all cached results and resets counters.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            size = 0;
+            hits = misses = evictions = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Cached[" + transformation + "]";
+    }
+
+    private static final class Entry {
+        final Tensor from, to;
+        Entry next;
+
+        Entry(Tensor from, Tensor to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
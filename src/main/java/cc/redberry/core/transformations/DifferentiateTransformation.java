@@ -29,11 +29,16 @@ import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
 import cc.redberry.core.tensor.functions.ScalarFunction;
 import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
+import cc.redberry.core.transformations.expand.ExpandUtils;
 import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
 import cc.redberry.core.transformations.symmetrization.SymmetrizeSimpleTensorTransformation;
 import cc.redberry.core.utils.TensorUtils;
 import gnu.trove.set.hash.TIntHashSet;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static cc.redberry.core.indices.IndicesUtils.*;
 import static cc.redberry.core.tensor.ApplyIndexMapping.applyIndexMapping;
 import static cc.redberry.core.tensor.ApplyIndexMapping.renameDummy;
@@ -44,14 +49,24 @@ import static cc.redberry.core.utils.ArraysUtils.addAll;
  * Differentiates specified tensor with respect to specified simple tensors.
  * It temporary does not support derivatives of tensor fields.
  *
+ * <p>Subtrees which do not contain the variable are skipped using their {@link TensorSummary}. Optionally,
+ * derivatives of repeated composite subexpressions can be cached (see {@link #asMemoizedTransformation()}) and
+ * terms of large sums can be differentiated concurrently (see {@link #asParallelTransformation(int)}).</p>
+ *
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  * @since 1.0
  */
 public final class DifferentiateTransformation implements Transformation {
-
+    /**
+     * Minimal number of terms in sum, starting from which its terms will be differentiated in parallel (if parallel
+     * differentiation was requested)
+     */
+    static final int PARALLEL_DIFFERENTIATE_THRESHOLD = 1024;
     private final SimpleTensor[] vars;
     private final Transformation[] expandAndContract;
+    private final int threads;
+    private final boolean memoize;
 
     /**
      * Creates transformations which differentiate with respect to specified simple tensors.
@@ -59,18 +74,48 @@ public final class DifferentiateTransformation implements Transformation {
      * @param vars
      */
     public DifferentiateTransformation(SimpleTensor... vars) {
-        this.vars = vars;
-        this.expandAndContract = new Transformation[0];
+        this(new Transformation[0], vars);
     }
 
     public DifferentiateTransformation(Transformation[] expandAndContract, SimpleTensor... vars) {
+        this(expandAndContract, 1, false, vars);
+    }
+
+    private DifferentiateTransformation(Transformation[] expandAndContract, int threads, boolean memoize,
+                                        SimpleTensor... vars) {
         this.vars = vars;
         this.expandAndContract = expandAndContract;
+        this.threads = threads;
+        this.memoize = memoize;
+    }
+
+    /**
+     * Creates a new transformation, which caches derivatives of repeated composite subexpressions (sums, products,
+     * powers and scalar functions which are equal exactly) for each variable during one transformation.
+     *
+     * @return new transformation, which caches derivatives of repeated subexpressions
+     */
+    public DifferentiateTransformation asMemoizedTransformation() {
+        return new DifferentiateTransformation(expandAndContract, threads, true, vars);
+    }
+
+    /**
+     * Creates a new transformation, which differentiates terms of large sums concurrently using the specified
+     * number of threads taken from {@link cc.redberry.core.context.ContextManager#getExecutorService()}.
+     *
+     * @param threads number of threads (1 means serial differentiation)
+     * @return new transformation, which differentiates terms of large sums concurrently
+     * @throws IllegalArgumentException if {@code threads} is not positive
+     */
+    public DifferentiateTransformation asParallelTransformation(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        return new DifferentiateTransformation(expandAndContract, threads, memoize, vars);
     }
 
     @Override
     public Tensor transform(Tensor t) {
-        return differentiate(t, expandAndContract, vars);
+        return differentiate(t, expandAndContract, threads, memoize, vars);
     }
 
     /**
@@ -116,10 +161,15 @@ public final class DifferentiateTransformation implements Transformation {
      * @throws IllegalArgumentException if there is clash of indices
      */
     public static Tensor differentiate(Tensor tensor, Transformation[] expandAndContract, SimpleTensor... vars) {
+        return differentiate(tensor, expandAndContract, 1, false, vars);
+    }
+
+    private static Tensor differentiate(Tensor tensor, Transformation[] expandAndContract,
+                                        int threads, boolean memoize, SimpleTensor... vars) {
         if (vars.length == 0)
             return tensor;
         if (vars.length == 1)
-            return differentiate(tensor, expandAndContract, vars[0]);
+            return differentiate(tensor, expandAndContract, vars[0], threads, memoize);
 
         TIntHashSet forbidden = TensorUtils.getAllIndicesNamesT(tensor);
         for (SimpleTensor var : vars)
@@ -134,17 +184,22 @@ public final class DifferentiateTransformation implements Transformation {
             }
         tensor = renameDummy(tensor, TensorUtils.getAllIndicesNamesT(vars1).toArray());
         for (SimpleTensor var : vars1)
-            tensor = differentiate1(tensor, createRule(var), expandAndContract);
+            tensor = differentiate1(tensor, createRule(var, threads, memoize), expandAndContract);
         return tensor;
     }
 
     private static Tensor differentiate(Tensor tensor, Transformation[] expandAndContract, SimpleTensor var) {
+        return differentiate(tensor, expandAndContract, var, 1, false);
+    }
+
+    private static Tensor differentiate(Tensor tensor, Transformation[] expandAndContract, SimpleTensor var,
+                                        int threads, boolean memoize) {
         if (var.getIndices().size() != 0) {
             if (var.getIndices().size() != var.getIndices().getFree().size())
                 var = (SimpleTensor) renameDummy(var, TensorUtils.getAllIndicesNamesT(tensor).toArray());
             tensor = renameDummy(tensor, TensorUtils.getAllIndicesNamesT(var).toArray());
         }
-        return differentiate1(tensor, createRule(var), expandAndContract);
+        return differentiate1(tensor, createRule(var, threads, memoize), expandAndContract);
     }
 
     private static Tensor differentiateWithRenaming(Tensor tensor, SimpleTensorDifferentiationRule rule, Transformation[] expandAndContarct) {
@@ -154,6 +209,22 @@ public final class DifferentiateTransformation implements Transformation {
     }
 
     private static Tensor differentiate1(Tensor tensor, SimpleTensorDifferentiationRule rule, Transformation[] transformations) {
+        //summary is cached in each node, so subtrees without var are skipped in O(1)
+        if (!TensorSummary.mayContainName(tensor, rule.var.getName()))
+            return Complex.ZERO;
+        if (rule.cache == null || tensor instanceof SimpleTensor)
+            return differentiate2(tensor, rule, transformations);
+        TensorKey key = new TensorKey(tensor);
+        Tensor result = rule.cache.get(key);
+        if (result == null) {
+            result = differentiate2(tensor, rule, transformations);
+            rule.cache.put(key, result);
+        }
+        return result;
+    }
+
+    private static Tensor differentiate2(final Tensor tensor, final SimpleTensorDifferentiationRule rule,
+                                         final Transformation[] transformations) {
         if (tensor.getClass() == SimpleTensor.class) {
             Tensor temp = rule.differentiateSimpleTensor((SimpleTensor) tensor);
             return applyTransformations(temp, transformations);
@@ -168,6 +239,17 @@ public final class DifferentiateTransformation implements Transformation {
             return Complex.ZERO;
         }
         if (tensor instanceof Sum) {
+            if (rule.threads > 1 && tensor.size() >= PARALLEL_DIFFERENTIATE_THRESHOLD) {
+                //nested sums are differentiated serially
+                final SimpleTensorDifferentiationRule serialRule = rule.serial();
+                return ExpandUtils.drainConcurrently(new ExpandUtils.SumPort((Sum) tensor),
+                        new Transformation[]{new Transformation() {
+                            @Override
+                            public Tensor transform(Tensor t) {
+                                return applyTransformations(differentiate1(t, serialRule, transformations), transformations);
+                            }
+                        }}, rule.threads);
+            }
             SumBuilder builder = new SumBuilder();
             Tensor temp;
             for (Tensor t : tensor) {
@@ -199,6 +281,8 @@ public final class DifferentiateTransformation implements Transformation {
             SumBuilder result = new SumBuilder();
             Tensor temp;
             for (int i = tensor.size() - 1; i >= 0; --i) {
+                if (!TensorSummary.mayContainName(tensor.get(i), rule.var.getName()))
+                    continue;
                 temp = tensor.set(i, differentiate1(tensor.get(i), rule, transformations));
                 if (rule.var.getIndices().size() != 0)
                     temp = EliminateMetricsTransformation.eliminate(temp);
@@ -218,20 +302,65 @@ public final class DifferentiateTransformation implements Transformation {
         return tensor;
     }
 
-    private static SimpleTensorDifferentiationRule createRule(SimpleTensor var) {
+    private static SimpleTensorDifferentiationRule createRule(SimpleTensor var, int threads, boolean memoize) {
         if (var.getIndices().size() == 0)
-            return new SymbolicDifferentiationRule(var);
-        return new SymmetricDifferentiationRule(var);
+            return new SymbolicDifferentiationRule(var, threads, memoize ? newCache(threads) : null);
+        return new SymmetricDifferentiationRule(var, threads, memoize ? newCache(threads) : null);
+    }
+
+    private static Map<TensorKey, Tensor> newCache(int threads) {
+        return threads > 1 ? new ConcurrentHashMap<TensorKey, Tensor>() : new HashMap<TensorKey, Tensor>();
+    }
+
+    /**
+     * Key of cache of derivatives: tensors are equal if they are equal exactly (including names of dummies),
+     * so cached derivative can be used as is.
+     */
+    private static final class TensorKey {
+        final Tensor tensor;
+
+        TensorKey(Tensor tensor) {
+            this.tensor = tensor;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            return TensorUtils.equalsExactly(tensor, ((TensorKey) obj).tensor);
+        }
+
+        @Override
+        public int hashCode() {
+            return tensor.hashCode();
+        }
     }
 
     private static abstract class SimpleTensorDifferentiationRule {
 
         protected final SimpleTensor var;
-
-        protected SimpleTensorDifferentiationRule(SimpleTensor var) {
+        /**
+         * Number of threads used to differentiate terms of large sums
+         */
+        protected final int threads;
+        /**
+         * Derivatives of composite subexpressions (null if memoization is off)
+         */
+        protected final Map<TensorKey, Tensor> cache;
+
+        protected SimpleTensorDifferentiationRule(SimpleTensor var, int threads, Map<TensorKey, Tensor> cache) {
             this.var = var;
+            this.threads = threads;
+            this.cache = cache;
         }
 
+        /**
+         * Returns the same rule which differentiates terms of sums serially (sharing the same cache).
+         */
+        abstract SimpleTensorDifferentiationRule serial();
+
         Tensor differentiateSimpleTensor(SimpleTensor simpleTensor) {
             if (simpleTensor.getName() != var.getName())
                 return Complex.ZERO;
@@ -247,8 +376,13 @@ public final class DifferentiateTransformation implements Transformation {
 
     private static final class SymbolicDifferentiationRule extends SimpleTensorDifferentiationRule {
 
-        private SymbolicDifferentiationRule(SimpleTensor var) {
-            super(var);
+        private SymbolicDifferentiationRule(SimpleTensor var, int threads, Map<TensorKey, Tensor> cache) {
+            super(var, threads, cache);
+        }
+
+        @Override
+        SimpleTensorDifferentiationRule serial() {
+            return threads == 1 ? this : new SymbolicDifferentiationRule(var, 1, cache);
         }
 
         @Override
@@ -272,15 +406,16 @@ public final class DifferentiateTransformation implements Transformation {
         private final Tensor derivative;
         private final int[] allFreeFrom, freeVarIndices;
 
-        private SymmetricDifferentiationRule(SimpleTensor var, Tensor derivative, int[] allFreeFrom, int[] freeVarIndices) {
-            super(var);
+        private SymmetricDifferentiationRule(SimpleTensor var, Tensor derivative, int[] allFreeFrom, int[] freeVarIndices,
+                                             int threads, Map<TensorKey, Tensor> cache) {
+            super(var, threads, cache);
             this.derivative = derivative;
             this.allFreeFrom = allFreeFrom;
             this.freeVarIndices = freeVarIndices;
         }
 
-        SymmetricDifferentiationRule(SimpleTensor var) {
-            super(var);
+        SymmetricDifferentiationRule(SimpleTensor var, int threads, Map<TensorKey, Tensor> cache) {
+            super(var, threads, cache);
             SimpleIndices varIndices = var.getIndices();
             int[] allFreeVarIndices = new int[varIndices.size()];
             int[] allFreeArgIndices = new int[varIndices.size()];
@@ -323,8 +458,15 @@ public final class DifferentiateTransformation implements Transformation {
 
         @Override
         SimpleTensorDifferentiationRule newRuleForTensor(Tensor tensor) {
+            //derivative of the new rule has other dummies, so it needs its own cache
             return new SymmetricDifferentiationRule(this.var,
-                    renameDummy(derivative, TensorUtils.getAllIndicesNamesT(tensor).toArray()), allFreeFrom, freeVarIndices);
+                    renameDummy(derivative, TensorUtils.getAllIndicesNamesT(tensor).toArray()), allFreeFrom, freeVarIndices,
+                    1, cache == null ? null : newCache(1));
+        }
+
+        @Override
+        SimpleTensorDifferentiationRule serial() {
+            return threads == 1 ? this : new SymmetricDifferentiationRule(var, derivative, allFreeFrom, freeVarIndices, 1, cache);
         }
 
         @Override
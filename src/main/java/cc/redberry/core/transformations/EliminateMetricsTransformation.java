@@ -26,22 +26,39 @@ import cc.redberry.core.indexmapping.IndexMapping;
 import cc.redberry.core.indices.SimpleIndices;
 import cc.redberry.core.tensor.*;
 import cc.redberry.core.tensor.functions.ScalarFunction;
+import cc.redberry.core.transformations.expand.ExpandUtils;
 
 import java.util.*;
 
 /**
  * Eliminates contractions with metrics and Kronecker deltas.
  *
+ * <p>Products at the top level of expression (or in terms of top level sums) are processed directly on their
+ * {@link StructureOfContractions}: chains of contracted metrics are found from the contraction graph and the indices
+ * of tensors contracted with the ends of chains are renamed in one pass. All other cases (metrics contracted with
+ * sums or other composite tensors inside products, closed loops of metrics) are processed recursively by passing
+ * chains of metrics down the tree. Both engines give the same result.</p>
+ *
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  * @since 1.0
  */
 public final class EliminateMetricsTransformation implements Transformation {
+    /**
+     * Minimal number of terms in the top level sum, starting from which its terms will be processed in parallel
+     * (if parallel processing was requested)
+     */
+    static final int PARALLEL_ELIMINATE_THRESHOLD = 1024;
     /**
      * Singleton instance.
      */
     public static final EliminateMetricsTransformation ELIMINATE_METRICS
-            = new EliminateMetricsTransformation();
+            = new EliminateMetricsTransformation(1, true);
+    /**
+     * Instance which does not use contraction graphs of products (reference implementation)
+     */
+    static final EliminateMetricsTransformation ELIMINATE_METRICS_RECURSIVE
+            = new EliminateMetricsTransformation(1, false);
 
     /**
      * Eliminates contractions with metrics and Kronecker deltas in specified tensor and returns the result.
@@ -53,11 +70,35 @@ public final class EliminateMetricsTransformation implements Transformation {
         return ELIMINATE_METRICS.transform(t);
     }
 
-    private EliminateMetricsTransformation() {
+    private final int threads;
+    private final boolean useContractions;
+
+    private EliminateMetricsTransformation(int threads, boolean useContractions) {
+        this.threads = threads;
+        this.useContractions = useContractions;
+    }
+
+    /**
+     * Creates a new transformation, which processes terms of large top level sums concurrently using the specified
+     * number of threads taken from {@link cc.redberry.core.context.ContextManager#getExecutorService()}.
+     *
+     * @param threads number of threads (1 means serial transformation)
+     * @return new transformation, which processes terms of large sums concurrently
+     * @throws IllegalArgumentException if {@code threads} is not positive
+     */
+    public EliminateMetricsTransformation asParallelTransformation(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        return new EliminateMetricsTransformation(threads, useContractions);
     }
 
     @Override
     public Tensor transform(Tensor tensor) {
+        if (threads > 1 && tensor instanceof Sum && tensor.size() >= PARALLEL_ELIMINATE_THRESHOLD)
+            //terms of sum have independent dummies, so they can be processed independently
+            return ExpandUtils.drainConcurrently(new ExpandUtils.SumPort((Sum) tensor),
+                    new Transformation[]{new EliminateMetricsTransformation(1, useContractions)},
+                    threads);
         return transform(tensor, DummyMetricsChain.INSTANCE);
     }
 
@@ -86,6 +127,10 @@ public final class EliminateMetricsTransformation implements Transformation {
                 builder.put(transform(tensor.get(i)));
             return builder.build();
         } else if (tensor instanceof Product) {
+            Tensor result;
+            if (useContractions && chain == DummyMetricsChain.INSTANCE
+                    && (result = transformProduct((Product) tensor)) != null)
+                return result;
             MetricsChainImpl tempContainer = new MetricsChainImpl(chain);
             List<Tensor> nonMetrics = new ArrayList<>();
             Tensor current, temp;
@@ -141,6 +186,175 @@ public final class EliminateMetricsTransformation implements Transformation {
             return tensor;
     }
 
+    /**
+     * Eliminates metrics in product using its contraction graph. Returns null if product contains closed loops of
+     * metrics or metrics contracted with composite tensors, which should be processed recursively.
+     */
+    private Tensor transformProduct(Product product) {
+        ProductContent content = product.getContent();
+        StructureOfContractions structure = content.getStructureOfContractions();
+        final int size = content.size();
+        boolean[] metrics = new boolean[size];
+        int i, j, metricsCount = 0;
+        for (i = 0; i < size; ++i)
+            if (metrics[i] = Tensors.isKroneckerOrMetric(content.get(i)))
+                ++metricsCount;
+        if (metricsCount == 0)
+            return null;
+
+        //chains of metrics: ends of chain are indices of metrics which are not contracted with other metrics
+        //chainOf[tensor][index] -- number of chain which ends at index of non metric tensor (-1 if none)
+        int[][] chainOf = new int[size][];
+        int[] chainEnds = new int[2 * metricsCount];
+        Tensor[] chainMetrics = new Tensor[metricsCount];
+        boolean[] visited = new boolean[size];
+        int chainsCount = 0, visitedCount = 0, to, slot, current;
+        for (i = 0; i < size; ++i) {
+            if (metrics[i])
+                continue;
+            chainOf[i] = new int[content.get(i).getIndices().size()];
+            Arrays.fill(chainOf[i], -1);
+        }
+        for (i = 0; i < size; ++i) {
+            if (!metrics[i] || visited[i])
+                continue;
+            for (slot = 0; slot < 2; ++slot) {
+                to = StructureOfContractions.getToTensorIndex(structure.contractions[i][slot]);
+                if (to != -1 && metrics[to])
+                    continue;
+                //i is the end of chain
+                if (to != -1 && !(content.get(to) instanceof SimpleTensor))
+                    //metric contracted with composite tensor
+                    return null;
+                int length = 1;
+                current = i;
+                int currentSlot = 1 - slot;
+                visited[i] = true;
+                while ((to = StructureOfContractions.getToTensorIndex(structure.contractions[current][currentSlot])) != -1
+                        && metrics[to]) {
+                    if (visited[to])
+                        //metric contracted with itself
+                        return null;
+                    currentSlot = 1 - metricSlotOf(content.get(to),
+                            content.get(current).getIndices().get(currentSlot));
+                    current = to;
+                    visited[current] = true;
+                    ++length;
+                }
+                if (to != -1 && !(content.get(to) instanceof SimpleTensor))
+                    return null;
+                visitedCount += length;
+                chainEnds[2 * chainsCount] = content.get(i).getIndices().get(slot);
+                chainEnds[2 * chainsCount + 1] = content.get(current).getIndices().get(currentSlot);
+                chainMetrics[chainsCount] = length == 1 ? content.get(i) : null;
+                markEnd(content, structure, chainOf, i, slot, chainsCount);
+                markEnd(content, structure, chainOf, current, currentSlot, chainsCount);
+                ++chainsCount;
+                break;
+            }
+        }
+        if (visitedCount != metricsCount)
+            //closed loops of metrics
+            return null;
+
+        //renaming indices of tensors contracted with chains
+        boolean[] used = new boolean[chainsCount];
+        boolean applied = metricsCount != chainsCount;
+        Tensor[] data = new Tensor[size - metricsCount];
+        int[] from = new int[4], newIndices = new int[4];
+        int mappingSize, chain, pointer = 0, index;
+        Tensor tensor;
+        for (i = 0; i < size; ++i) {
+            if (metrics[i])
+                continue;
+            tensor = content.get(i);
+            mappingSize = 0;
+            for (j = 0; j < chainOf[i].length; ++j) {
+                if ((chain = chainOf[i][j]) == -1 || used[chain])
+                    continue;
+                used[chain] = true;
+                index = tensor.getIndices().get(j);
+                if (mappingSize == from.length) {
+                    from = Arrays.copyOf(from, 2 * mappingSize);
+                    newIndices = Arrays.copyOf(newIndices, 2 * mappingSize);
+                }
+                from[mappingSize] = index;
+                //index is contracted with one end of chain, so it is renamed to another end
+                newIndices[mappingSize++] = (chainEnds[2 * chain] ^ index) == 0x80000000
+                        ? chainEnds[2 * chain + 1] : chainEnds[2 * chain];
+            }
+            data[pointer] = renameAndTransformArgs(tensor, from, newIndices, mappingSize);
+            if (data[pointer++] != tensor)
+                applied = true;
+        }
+
+        Tensor[] indexless = new Tensor[product.size() - size];
+        for (i = 0; i < indexless.length; ++i) {
+            indexless[i] = transform(product.get(i));
+            if (indexless[i] != product.get(i))
+                applied = true;
+        }
+        if (!applied)
+            return product;
+
+        ProductBuilder builder = new ProductBuilder();
+        for (Tensor t : indexless)
+            builder.put(t);
+        for (Tensor t : data)
+            builder.put(t);
+        for (i = 0; i < chainsCount; ++i)
+            if (!used[i])
+                builder.put(chainMetrics[i] != null ? chainMetrics[i]
+                        : Tensors.createMetricOrKronecker(chainEnds[2 * i], chainEnds[2 * i + 1]));
+        return builder.build();
+    }
+
+    /**
+     * Returns position of index of metric, which is contracted with the specified index.
+     */
+    private static int metricSlotOf(Tensor metric, int contracted) {
+        return (metric.getIndices().get(0) ^ contracted) == 0x80000000 ? 0 : 1;
+    }
+
+    /**
+     * Marks index of non metric tensor contracted with the end of chain.
+     */
+    private static void markEnd(ProductContent content, StructureOfContractions structure, int[][] chainOf,
+                                int metric, int slot, int chain) {
+        int to = StructureOfContractions.getToTensorIndex(structure.contractions[metric][slot]);
+        if (to == -1)
+            return;
+        int index = content.get(metric).getIndices().get(slot);
+        SimpleIndices indices = ((SimpleTensor) content.get(to)).getIndices();
+        for (int i = indices.size() - 1; i >= 0; --i)
+            if ((indices.get(i) ^ index) == 0x80000000) {
+                chainOf[to][i] = chain;
+                return;
+            }
+    }
+
+    private Tensor renameAndTransformArgs(Tensor tensor, final int[] from, final int[] to, final int size) {
+        if (size == 0)
+            return transform(tensor);
+        SimpleTensor st = (SimpleTensor) tensor;
+        SimpleIndices newIndices = st.getIndices().applyIndexMapping(new IndexMapping() {
+            @Override
+            public int map(int index) {
+                for (int i = 0; i < size; ++i)
+                    if (from[i] == index)
+                        return to[i];
+                return index;
+            }
+        });
+        if (st.getClass() == SimpleTensor.class)
+            return Tensors.simpleTensor(st.getName(), newIndices);
+        TensorField field = (TensorField) st;
+        Tensor[] args = new Tensor[field.size()];
+        for (int i = 0; i < args.length; ++i)
+            args[i] = transform(field.get(i));
+        return Tensors.field(field.getName(), newIndices, field.getArgIndices(), args);
+    }
+
     private static interface MetricsChain {
 
         boolean mergeWith(MetricWrapper mk);
@@ -57,6 +57,7 @@ abstract class AbstractExpandTransformation implements Transformation {
 
     protected final Transformation[] transformations;
     protected final TraverseGuide traverseGuide;
+    protected final int threads;
 
     protected AbstractExpandTransformation() {
         this(new Transformation[0], DefaultExpandTraverseGuide);
@@ -76,8 +77,25 @@ abstract class AbstractExpandTransformation implements Transformation {
      * @param traverseGuide   traverse guide
      */
     protected AbstractExpandTransformation(Transformation[] transformations, TraverseGuide traverseGuide) {
+        this(transformations, traverseGuide, 1);
+    }
+
+    /**
+     * Creates expand transformation with specified additional transformations to
+     * be applied after each step of expand and leaves unexpanded parts of expression specified by
+     * {@code traverseGuide}. Products of large sums will be expanded concurrently by the specified
+     * number of threads.
+     *
+     * @param transformations transformations to be applied after each step of expand
+     * @param traverseGuide   traverse guide
+     * @param threads         number of threads (1 means serial expand)
+     */
+    protected AbstractExpandTransformation(Transformation[] transformations, TraverseGuide traverseGuide, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
         this.transformations = transformations;
         this.traverseGuide = traverseGuide;
+        this.threads = threads;
     }
 
     @Override
@@ -97,9 +115,9 @@ abstract class AbstractExpandTransformation implements Transformation {
                 exponent = Math.abs(exponent);
                 Tensor temp;
                 if (symbolic)
-                    temp = ExpandUtils.expandSymbolicPower(sum, exponent, transformations);
+                    temp = ExpandUtils.expandSymbolicPower(sum, exponent, transformations, threads);
                 else
-                    temp = ExpandUtils.expandPower(sum, exponent, iterator.getForbidden(), transformations);
+                    temp = ExpandUtils.expandPower(sum, exponent, iterator.getForbidden(), transformations, threads);
                 if (reciprocal)
                     temp = reciprocal(temp);
                 if (symbolic)
@@ -70,6 +70,21 @@ public final class ExpandAllTransformation extends AbstractExpandTransformation
         super(transformations, traverseGuide);
     }
 
+    /**
+     * Creates expand transformation with specified additional transformations to
+     * be applied after each step of expand and leaves unexpanded parts of expression specified by
+     * {@code traverseGuide}. Products of large sums will be expanded concurrently using specified number
+     * of threads from {@link cc.redberry.core.context.ContextManager#getExecutorService()}; the result is
+     * the same as the result of serial expand.
+     *
+     * @param transformations transformations to be applied after each step of expand
+     * @param traverseGuide   traverse guide
+     * @param threads         number of threads (1 means serial expand)
+     */
+    public ExpandAllTransformation(Transformation[] transformations, TraverseGuide traverseGuide, int threads) {
+        super(transformations, traverseGuide, threads);
+    }
+
     /**
      * Expands out all products and integer powers in any part of expression.
      *
@@ -98,14 +113,14 @@ public final class ExpandAllTransformation extends AbstractExpandTransformation
 
 //        assert !isPositiveIntegerPower(denominator);
         if (denominator instanceof Product)
-            denominator = ExpandUtils.expandProductOfSums((Product) numDen.denominator, transformations);
+            denominator = ExpandUtils.expandProductOfSums((Product) numDen.denominator, transformations, threads);
         boolean denExpanded = denominator != numDen.denominator;
         denominator = reciprocal(denominator);
 
         Tensor numerator = numDen.numerator;
         Tensor res = Tensors.multiply(denominator, numerator), temp = res;
         if (res instanceof Product)
-            res = ExpandUtils.expandProductOfSums((Product) temp, transformations);
+            res = ExpandUtils.expandProductOfSums((Product) temp, transformations, threads);
         if (denExpanded || res != temp)
             return res;
         return product;
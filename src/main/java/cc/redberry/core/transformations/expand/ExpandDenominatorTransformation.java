@@ -114,7 +114,7 @@ public final class ExpandDenominatorTransformation extends AbstractExpandTransfo
         NumeratorDenominator numDen = NumeratorDenominator.getNumeratorAndDenominator(product, NumeratorDenominator.integerDenominatorIndicator);
         Tensor denominator = numDen.denominator;
         if (denominator instanceof Product)
-            denominator = ExpandUtils.expandProductOfSums((Product) numDen.denominator, transformations);
+            denominator = ExpandUtils.expandProductOfSums((Product) numDen.denominator, transformations, threads);
         if (numDen.denominator == denominator)
             return product;
         return Tensors.multiply(numDen.numerator, Tensors.reciprocal(denominator));
@@ -95,7 +95,7 @@ public final class ExpandNumeratorTransformation extends AbstractExpandTransform
         NumeratorDenominator numDen = NumeratorDenominator.getNumeratorAndDenominator(product, NumeratorDenominator.integerDenominatorIndicator);
         Tensor numerator = numDen.numerator;
         if (numerator instanceof Product)
-            numerator = ExpandUtils.expandProductOfSums((Product) numDen.numerator, transformations);
+            numerator = ExpandUtils.expandProductOfSums((Product) numDen.numerator, transformations, threads);
         if (numDen.numerator == numerator)
             return product;
         return Tensors.multiply(numerator, Tensors.reciprocal(numDen.denominator));
@@ -22,10 +22,12 @@
  */
 package cc.redberry.core.transformations.expand;
 
+import cc.redberry.concurrent.OutputPort;
 import cc.redberry.concurrent.OutputPortUnsafe;
 import cc.redberry.core.combinatorics.IntTuplesPort;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
+import cc.redberry.core.transformations.Transformation;
 import cc.redberry.core.utils.TensorUtils;
 import gnu.trove.set.hash.TIntHashSet;
 
@@ -52,6 +54,51 @@ public final class ExpandPort {
         return sb.build();
     }
 
+    /**
+     * Expands out tensor using port and applies specified transformations to each term on the fly.
+     *
+     * @param t               tensor
+     * @param transformations transformations to be applied to each term
+     * @return expanded tensor
+     */
+    public static Tensor expandUsingPort(Tensor t, Transformation... transformations) {
+        SumBuilder sb = new SumBuilder();
+        OutputPortUnsafe<Tensor> port = createPort(t, transformations);
+        Tensor n;
+        while ((n = port.take()) != null)
+            sb.put(n);
+        return sb.build();
+    }
+
+    /**
+     * Creates port, which lazily returns terms of expanded tensor one by one, so the whole expanded expression
+     * is never held in memory: the port walks through the Cartesian product of all sums and positive integer powers
+     * of sums (including nested ones) in the tensor. Specified transformations are applied to each term on the fly.
+     *
+     * @param tensor          tensor
+     * @param transformations transformations to be applied to each term
+     * @return port of terms of expanded tensor
+     */
+    public static OutputPortUnsafe<Tensor> createPort(Tensor tensor, Transformation... transformations) {
+        if (transformations.length == 0)
+            return createPort(tensor);
+        return new TransformingPort(createPort(tensor), transformations);
+    }
+
+    /**
+     * Creates thread-safe port, which lazily returns terms of expanded tensor one by one. Terms are generated
+     * serially, while specified transformations are applied to each term in the calling thread, so the port
+     * can be drained concurrently (e.g. via {@link ExpandUtils#drainConcurrently(OutputPort, Transformation[], int)}).
+     *
+     * @param tensor          tensor
+     * @param transformations transformations to be applied to each term
+     * @return thread-safe port of terms of expanded tensor
+     * @see #createPort(Tensor, Transformation...)
+     */
+    public static OutputPort<Tensor> createConcurrentPort(Tensor tensor, Transformation... transformations) {
+        return new ConcurrentPort(createPort(tensor), transformations);
+    }
+
     public static OutputPortUnsafe<Tensor> createPort(Tensor tensor) {
         if (tensor instanceof Product)
             return new ProductPort(tensor);
@@ -63,6 +110,41 @@ public final class ExpandPort {
             return new OutputPortUnsafe.Singleton<>(tensor);
     }
 
+    private static final class TransformingPort implements OutputPortUnsafe<Tensor> {
+        private final OutputPortUnsafe<Tensor> port;
+        private final Transformation[] transformations;
+
+        public TransformingPort(OutputPortUnsafe<Tensor> port, Transformation[] transformations) {
+            this.port = port;
+            this.transformations = transformations;
+        }
+
+        @Override
+        public Tensor take() {
+            Tensor t = port.take();
+            return t == null ? null : ExpandUtils.apply(transformations, t);
+        }
+    }
+
+    private static final class ConcurrentPort implements OutputPort<Tensor> {
+        private final OutputPortUnsafe<Tensor> port;
+        private final Transformation[] transformations;
+
+        public ConcurrentPort(OutputPortUnsafe<Tensor> port, Transformation[] transformations) {
+            this.port = port;
+            this.transformations = transformations;
+        }
+
+        @Override
+        public Tensor take() {
+            Tensor t;
+            synchronized (port) {
+                t = port.take();
+            }
+            return t == null ? null : ExpandUtils.apply(transformations, t);
+        }
+    }
+
     private static interface ResetablePort extends OutputPortUnsafe<Tensor> {
         void reset();
     }
@@ -22,6 +22,7 @@
  */
 package cc.redberry.core.transformations.expand;
 
+import cc.redberry.concurrent.OutputPortUnsafe;
 import cc.redberry.core.tensor.Product;
 import cc.redberry.core.tensor.Tensor;
 import cc.redberry.core.tensor.iterator.TraverseGuide;
@@ -66,6 +67,21 @@ public final class ExpandTransformation extends AbstractExpandTransformation {
         super(transformations, traverseGuide);
     }
 
+    /**
+     * Creates expand transformation with specified additional transformations to
+     * be applied after each step of expand and leaves unexpanded parts of expression specified by
+     * {@code traverseGuide}. Products of large sums will be expanded concurrently using specified number
+     * of threads from {@link cc.redberry.core.context.ContextManager#getExecutorService()}; the result is
+     * the same as the result of serial expand.
+     *
+     * @param transformations transformations to be applied after each step of expand
+     * @param traverseGuide   traverse guide
+     * @param threads         number of threads (1 means serial expand)
+     */
+    public ExpandTransformation(Transformation[] transformations, TraverseGuide traverseGuide, int threads) {
+        super(transformations, traverseGuide, threads);
+    }
+
     /**
      * Expands out products and positive integer powers in tensor.
      *
@@ -88,8 +104,22 @@ public final class ExpandTransformation extends AbstractExpandTransformation {
         return new ExpandTransformation(transformations).transform(tensor);
     }
 
+    /**
+     * Returns port, which lazily returns terms of expanded tensor one by one (with transformations of this
+     * expand applied to each term), so the whole expanded expression is never held in memory. Unlike
+     * {@link #transform(Tensor)}, like terms are not collected and subexpressions protected by traverse guide
+     * are not expanded inside.
+     *
+     * @param tensor tensor
+     * @return port of terms of expanded tensor
+     * @see ExpandPort#createPort(Tensor, Transformation...)
+     */
+    public OutputPortUnsafe<Tensor> expandAsPort(Tensor tensor) {
+        return ExpandPort.createPort(tensor, transformations);
+    }
+
     @Override
     protected Tensor expandProduct(Product product, Transformation[] transformations) {
-        return ExpandUtils.expandProductOfSums(product, transformations);
+        return ExpandUtils.expandProductOfSums(product, transformations, threads);
     }
 }
@@ -23,6 +23,7 @@
 package cc.redberry.core.transformations.expand;
 
 import cc.redberry.concurrent.OutputPort;
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
 import cc.redberry.core.transformations.Transformation;
@@ -33,6 +34,11 @@ import gnu.trove.set.hash.TIntHashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -43,6 +49,11 @@ import java.util.concurrent.atomic.AtomicLong;
  * @since 1.0
  */
 public final class ExpandUtils {
+    /**
+     * Minimal number of terms in the product of two sums, starting from which the product will be expanded
+     * in parallel (if parallel expand was requested)
+     */
+    static final long PARALLEL_EXPAND_THRESHOLD = 1024;
 
     /**
      * This is a safe concurrent port, which expands out product of two sums.
@@ -87,7 +98,7 @@ public final class ExpandUtils {
         @Override
         public Tensor take() {
             long index = atomicLong.getAndIncrement();
-            if (index >= sum1.size() * sum2.size())
+            if (index >= (long) sum1.size() * sum2.size())
                 return null;
             int i1 = (int) (index / sum2.size());
             int i2 = (int) (index % sum2.size());
@@ -98,6 +109,34 @@ public final class ExpandUtils {
         }
     }
 
+    /**
+     * This is a safe concurrent port of terms of sum.
+     */
+    public static final class SumPort implements OutputPort<Tensor> {
+        private final Sum sum;
+        private final AtomicInteger pointer = new AtomicInteger();
+
+        /**
+         * Creates port of terms of the specified sum.
+         *
+         * @param sum sum
+         */
+        public SumPort(Sum sum) {
+            this.sum = sum;
+        }
+
+        /**
+         * Consequently returns terms of sum.
+         *
+         * @return next term of sum or null if there are no more terms
+         */
+        @Override
+        public Tensor take() {
+            int i = pointer.getAndIncrement();
+            return i < sum.size() ? sum.get(i) : null;
+        }
+    }
+
     /**
      * Expands out the product of two sums.
      *
@@ -110,7 +149,27 @@ public final class ExpandUtils {
      * @return the resulting expanded tensor
      */
     public static Tensor expandPairOfSums(Sum s1, Sum s2, Tensor[] factors, Transformation[] transformations) {
+        return expandPairOfSums(s1, s2, factors, transformations, 1);
+    }
+
+    /**
+     * Expands out the product of two sums. If {@code threads > 1} and the resulting expression is large enough,
+     * then the terms of the resulting expression will be calculated concurrently by the specified number of
+     * workers taken from {@link ContextManager#getExecutorService()}.
+     *
+     * @param s1              first sum
+     * @param s2              second sum
+     * @param factors         if specified, then each resulting term will be multiplied on this factor
+     * @param transformations additional transformations to be
+     *                        consequently applied on each term
+     *                        in the resulting expression.
+     * @param threads         number of threads
+     * @return the resulting expanded tensor
+     */
+    public static Tensor expandPairOfSums(Sum s1, Sum s2, Tensor[] factors, Transformation[] transformations, int threads) {
         ExpandPairPort epp = new ExpandPairPort(s1, s2, factors);
+        if (threads > 1 && (long) s1.size() * s2.size() >= PARALLEL_EXPAND_THRESHOLD)
+            return drainConcurrently(epp, transformations, threads);
         TensorBuilder sum = new SumBuilder();
         Tensor t;
         while ((t = epp.take()) != null)
@@ -129,10 +188,185 @@ public final class ExpandUtils {
      * @return the resulting expanded tensor
      */
     public static Tensor expandPairOfSums(Sum s1, Sum s2, Transformation[] transformations) {
-        return expandPairOfSums(s1, s2, new Tensor[0], transformations);
+        return expandPairOfSums(s1, s2, new Tensor[0], transformations, 1);
+    }
+
+    /**
+     * Expands out the product of two sums using specified number of threads.
+     *
+     * @param s1              first sum
+     * @param s2              second sum
+     * @param transformations additional transformations to be
+     *                        consequently applied on each term
+     *                        in the resulting expression.
+     * @param threads         number of threads
+     * @return the resulting expanded tensor
+     */
+    public static Tensor expandPairOfSums(Sum s1, Sum s2, Transformation[] transformations, int threads) {
+        return expandPairOfSums(s1, s2, new Tensor[0], transformations, threads);
+    }
+
+    /**
+     * Takes all terms from the specified concurrent port, applies transformations to each of them and puts them
+     * together into a sum. The port is drained concurrently by the specified number of workers (the current
+     * thread is one of them, while others are taken from {@link ContextManager#getExecutorService()}); each
+     * worker collects terms into its own {@link SumBuilder} and the partial builders are merged at the end
+     * (see {@link AbstractSumBuilder#merge(AbstractSumBuilder)}).
+     *
+     * @param port            safe concurrent port
+     * @param transformations additional transformations to be
+     *                        consequently applied on each term
+     *                        in the resulting expression.
+     * @param threads         number of workers
+     * @return sum of all terms returned by the port
+     */
+    public static Tensor drainConcurrently(OutputPort<Tensor> port, Transformation[] transformations, int threads) {
+        ExecutorService executorService = ContextManager.getExecutorService();
+        List<Future<SumBuilder>> futures = new ArrayList<>(threads - 1);
+        for (int i = 1; i < threads; ++i)
+            futures.add(executorService.submit(new SumWorker(port, transformations)));
+
+        SumBuilder sum;
+        try {
+            sum = new SumWorker(port, transformations).call();
+            for (Future<SumBuilder> future : futures)
+                sum.merge(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<SumBuilder> future : futures)
+                future.cancel(true);
+        }
+        return sum.build();
+    }
+
+    private static final class SumWorker implements Callable<SumBuilder> {
+        private final OutputPort<Tensor> port;
+        private final Transformation[] transformations;
+
+        private SumWorker(OutputPort<Tensor> port, Transformation[] transformations) {
+            this.port = port;
+            this.transformations = transformations;
+        }
+
+        @Override
+        public SumBuilder call() throws InterruptedException {
+            SumBuilder sum = new SumBuilder();
+            Tensor t;
+            while ((t = port.take()) != null) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                sum.put(apply(transformations, t));
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Task processing elements with specified indices.
+     *
+     * @param <E> type of checked exception thrown by task
+     * @see #parallelFor(int, int, cc.redberry.core.transformations.expand.ExpandUtils.IndexedTask)
+     */
+    public interface IndexedTask<E extends Exception> {
+        /**
+         * Processes element with specified index.
+         *
+         * @param i index
+         * @throws E if task fails
+         */
+        void process(int i) throws E;
+    }
+
+    /**
+     * Invokes specified task for each index from {@code 0} (inclusive) to {@code size} (exclusive) using specified
+     * number of workers (the current thread is one of them, while others are taken from
+     * {@link ContextManager#getExecutorService()}); indices are distributed among workers dynamically. The task
+     * should be safe to invoke concurrently for different indices.
+     *
+     * @param size    number of indices
+     * @param threads number of workers
+     * @param task    task
+     * @param <E>     type of checked exception thrown by task
+     * @throws E if task fails (the first failure is rethrown, other workers are cancelled)
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Exception> void parallelFor(final int size, int threads, final IndexedTask<E> task)
+            throws E {
+        if (threads <= 1 || size <= 1) {
+            for (int i = 0; i < size; ++i)
+                task.process(i);
+            return;
+        }
+        final AtomicInteger pointer = new AtomicInteger();
+        Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                int i;
+                while ((i = pointer.getAndIncrement()) < size) {
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+                    task.process(i);
+                }
+                return null;
+            }
+        };
+
+        ExecutorService executorService = ContextManager.getExecutorService();
+        List<Future<Void>> futures = new ArrayList<>(threads - 1);
+        for (int i = Math.min(threads, size) - 1; i > 0; --i)
+            futures.add(executorService.submit(worker));
+        try {
+            worker.call();
+            for (Future<Void> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            if (cause instanceof InterruptedException)
+                throw new RuntimeException(cause);
+            //task can throw only E
+            throw (E) cause;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Exception e) {
+            //task can throw only E
+            throw (E) e;
+        } finally {
+            for (Future<Void> future : futures)
+                future.cancel(true);
+        }
     }
 
     public static Tensor expandProductOfSums(Product product, Transformation[] transformations) {
+        return expandProductOfSums(product, transformations, 1);
+    }
+
+    /**
+     * Expands out the product of sums; products of large sums will be expanded concurrently if
+     * {@code threads > 1}.
+     *
+     * @param product         product
+     * @param transformations additional transformations to be
+     *                        consequently applied on each term
+     *                        in the resulting expression.
+     * @param threads         number of threads
+     * @return the resulting expanded tensor
+     */
+    public static Tensor expandProductOfSums(Product product, Transformation[] transformations, int threads) {
         Tensor indexless = product.getIndexlessSubProduct(),
                 data = product.getDataSubProduct();
         boolean expandIndexless = false, expandData = false, containsIndexlessSumNeededExpand = false;
@@ -168,10 +402,10 @@ public final class ExpandUtils {
             return product;
 
         if (!expandData)
-            return Tensors.multiply(expandProductOfSums1(indexless, transformations, false), data);
+            return Tensors.multiply(expandProductOfSums1(indexless, transformations, false, threads), data);
 
         if (!expandIndexless) {
-            Tensor newData = expandProductOfSums1(data, transformations, true);
+            Tensor newData = expandProductOfSums1(data, transformations, true, threads);
             if (newData instanceof Sum)
                 return FastTensors.multiplySumElementsOnScalarFactorAndExpandScalars((Sum) newData, indexless);
             else
@@ -179,8 +413,8 @@ public final class ExpandUtils {
         }
 
         if (!containsIndexlessSumNeededExpand) {
-            indexless = expandProductOfSums1(indexless, transformations, false);
-            data = expandProductOfSums1(data, transformations, true);
+            indexless = expandProductOfSums1(indexless, transformations, false, threads);
+            data = expandProductOfSums1(data, transformations, true, threads);
         } else {
             List<Tensor> dataList;
             if (data instanceof Product)
@@ -192,7 +426,7 @@ public final class ExpandUtils {
             if (indexless instanceof Sum) {
                 dataList.add(indexless);
                 indexless = Complex.ONE;
-                data = expandProductOfSums1(dataList, transformations, true);
+                data = expandProductOfSums1(dataList, transformations, true, threads);
             } else {
                 assert indexless instanceof Product;
                 List<Tensor> indexlessList = new ArrayList<>(indexless.size());
@@ -206,10 +440,10 @@ public final class ExpandUtils {
                         indexlessList.add(in);
                     }
                 if (expandIndexless)
-                    indexless = expandProductOfSums1(indexlessList, transformations, false);
+                    indexless = expandProductOfSums1(indexlessList, transformations, false, threads);
                 else
                     indexless = Tensors.multiply(indexlessList.toArray(new Tensor[indexlessList.size()]));
-                data = expandProductOfSums1(dataList, transformations, true);
+                data = expandProductOfSums1(dataList, transformations, true, threads);
             }
         }
 
@@ -229,6 +463,10 @@ public final class ExpandUtils {
     }
 
     public static Tensor expandProductOfSums1(Iterable<Tensor> tensor, Transformation[] transformations, boolean indexed) {
+        return expandProductOfSums1(tensor, transformations, indexed, 1);
+    }
+
+    public static Tensor expandProductOfSums1(Iterable<Tensor> tensor, Transformation[] transformations, boolean indexed, int threads) {
         Transformation[] transformations1 =
                 indexed
                         ? ArraysUtils.addAll(new Transformation[]{expandIndexlessSubproduct}, transformations)
@@ -261,6 +499,16 @@ public final class ExpandUtils {
                 return apply(transformations,
                         FastTensors.multiplySumElementsOnFactor(sums.get(0), Tensors.multiply(ns.toArray(new Tensor[ns.size()]))));
 
+        if (!indexed && transformations.length == 0 && allPolynomials(sums)) {
+            Tensor product = SymbolicPolynomials.expandProduct(sums);
+            if (ns.isEmpty())
+                return product;
+            if (product instanceof Sum)
+                return FastTensors.multiplySumElementsOnFactor((Sum) product, Tensors.multiply(ns.toArray(new Tensor[ns.size()])));
+            ns.add(product);
+            return Tensors.multiply(ns.toArray(new Tensor[ns.size()]));
+        }
+
         Tensor base = sums.get(0);
         for (int i = 1, size = sums.size(); ; ++i)
             if (i == size - 1) {
@@ -272,14 +520,14 @@ public final class ExpandUtils {
                         return apply(transformations,
                                 FastTensors.multiplySumElementsOnFactor(sums.get(i), Tensors.multiply(ns.toArray(new Tensor[ns.size()]))));
 
-                return expandPairOfSums((Sum) base, sums.get(i), ns.toArray(new Tensor[ns.size()]), transformations1);
+                return expandPairOfSums((Sum) base, sums.get(i), ns.toArray(new Tensor[ns.size()]), transformations1, threads);
             } else {
                 if (base == null) {
                     base = sums.get(i);
                     continue;
                 }
 
-                base = expandPairOfSums((Sum) base, sums.get(i), transformations1);
+                base = expandPairOfSums((Sum) base, sums.get(i), transformations1, threads);
                 if (!(base instanceof Sum)) {
                     ns.add(base);
                     base = null;
@@ -287,6 +535,13 @@ public final class ExpandUtils {
             }
     }
 
+    private static boolean allPolynomials(List<? extends Tensor> tensors) {
+        for (Tensor t : tensors)
+            if (!SymbolicPolynomials.isPolynomial(t))
+                return false;
+        return true;
+    }
+
     public static boolean isExpandablePower(Tensor t) {
         return t instanceof Power && t.get(0) instanceof Sum && TensorUtils.isInteger(t.get(1));
     }
@@ -301,16 +556,26 @@ public final class ExpandUtils {
     }
 
     public static Tensor expandSymbolicPower(Sum argument, int power, Transformation[] transformations) {
+        return expandSymbolicPower(argument, power, transformations, 1);
+    }
+
+    public static Tensor expandSymbolicPower(Sum argument, int power, Transformation[] transformations, int threads) {
+        if (transformations.length == 0 && SymbolicPolynomials.isPolynomial(argument))
+            return SymbolicPolynomials.expandPower(argument, power);
         //TODO improve algorithm using Newton formula!!!
         int i;
         Tensor temp = argument;
         for (i = power - 1; i >= 1; --i)
             temp = expandPairOfSums((Sum) temp,
-                    argument, transformations);
+                    argument, transformations, threads);
         return temp;
     }
 
     public static Tensor expandPower(Sum argument, int power, int[] forbiddenIndices, Transformation[] transformations) {
+        return expandPower(argument, power, forbiddenIndices, transformations, 1);
+    }
+
+    public static Tensor expandPower(Sum argument, int power, int[] forbiddenIndices, Transformation[] transformations, int threads) {
         //TODO improve algorithm using Newton formula!!!
         int i;
         Tensor temp = argument;
@@ -321,7 +586,7 @@ public final class ExpandUtils {
         for (i = power - 1; i >= 1; --i)
             temp = expandPairOfSums((Sum) temp,
                     (Sum) ApplyIndexMapping.renameDummy(argument, forbidden.toArray(), forbidden),
-                    transformations);
+                    transformations, threads);
 
         return temp;
     }
@@ -0,0 +1,186 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations.expand;
+
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.number.Rational;
+import cc.redberry.core.tensor.*;
+import cc.redberry.core.transformations.factor.jasfactor.edu.jas.arith.BigInteger;
+import cc.redberry.core.transformations.factor.jasfactor.edu.jas.arith.BigRational;
+import cc.redberry.core.transformations.factor.jasfactor.edu.jas.poly.ExpVector;
+import cc.redberry.core.transformations.factor.jasfactor.edu.jas.poly.GenPolynomial;
+import cc.redberry.core.transformations.factor.jasfactor.edu.jas.poly.GenPolynomialRing;
+import cc.redberry.core.transformations.factor.jasfactor.edu.jas.poly.Monomial;
+import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Expand of polynomials in scalar simple tensors with rational coefficients using sparse multivariate polynomials
+ * (with packed exponent vectors) instead of products of tensors and collecting of like terms in {@link SumBuilder}.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+final class SymbolicPolynomials {
+    private SymbolicPolynomials() {
+    }
+
+    /**
+     * Returns true if specified tensor is a polynomial in scalar simple tensors with rational coefficients
+     *
+     * @param tensor tensor
+     * @return true if specified tensor is a polynomial with rational coefficients
+     */
+    static boolean isPolynomial(Tensor tensor) {
+        if (tensor.getClass() == SimpleTensor.class)
+            return tensor.getIndices().size() == 0;
+        if (tensor instanceof Complex)
+            return ((Complex) tensor).isReal() && ((Complex) tensor).getReal() instanceof Rational;
+        if (tensor instanceof Power)
+            return TensorUtils.isNaturalNumber(tensor.get(1)) && isPolynomial(tensor.get(0));
+        if (tensor instanceof Sum || tensor instanceof Product) {
+            for (Tensor t : tensor)
+                if (!isPolynomial(t))
+                    return false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Expands out integer power of polynomial
+     *
+     * @param base  polynomial (see {@link #isPolynomial(Tensor)})
+     * @param power positive power
+     * @return expanded power
+     */
+    static Tensor expandPower(Tensor base, long power) {
+        Converter converter = new Converter(base);
+        return converter.toTensor(converter.power(converter.toPolynomial(base), power));
+    }
+
+    /**
+     * Expands out product of polynomials
+     *
+     * @param factors polynomials (see {@link #isPolynomial(Tensor)})
+     * @return expanded product
+     */
+    static Tensor expandProduct(List<? extends Tensor> factors) {
+        Tensor[] array = factors.toArray(new Tensor[factors.size()]);
+        Converter converter = new Converter(array);
+        GenPolynomial<BigRational> result = converter.ring.getONE();
+        for (Tensor factor : array)
+            result = result.multiply(converter.toPolynomial(factor));
+        return converter.toTensor(result);
+    }
+
+    private static final class Converter {
+        /**
+         * Name of variable -> position in exponent vector
+         */
+        final TIntIntHashMap positions = new TIntIntHashMap();
+        final List<SimpleTensor> variables = new ArrayList<>();
+        final GenPolynomialRing<BigRational> ring;
+
+        Converter(Tensor... tensors) {
+            for (Tensor tensor : tensors)
+                addVariables(tensor);
+            ring = new GenPolynomialRing<>(BigRational.ONE, variables.size());
+        }
+
+        void addVariables(Tensor tensor) {
+            if (tensor instanceof SimpleTensor) {
+                int name = ((SimpleTensor) tensor).getName();
+                if (!positions.containsKey(name)) {
+                    positions.put(name, variables.size());
+                    variables.add((SimpleTensor) tensor);
+                }
+            } else if (!(tensor instanceof Complex))
+                for (Tensor t : tensor)
+                    addVariables(t);
+        }
+
+        GenPolynomial<BigRational> toPolynomial(Tensor tensor) {
+            if (tensor instanceof SimpleTensor)
+                return ring.getONE().multiply(
+                        ExpVector.create(variables.size(), positions.get(((SimpleTensor) tensor).getName()), 1L));
+            if (tensor instanceof Complex) {
+                Rational rational = (Rational) ((Complex) tensor).getReal();
+                return ring.getONE().multiply(new BigRational(new BigInteger(rational.getNumerator()),
+                        new BigInteger(rational.getDenominator())));
+            }
+            if (tensor instanceof Power) {
+                long power = ((Complex) tensor.get(1)).longValue();
+                if (tensor.get(0) instanceof SimpleTensor)
+                    return ring.getONE().multiply(ExpVector.create(variables.size(),
+                            positions.get(((SimpleTensor) tensor.get(0)).getName()), power));
+                return power(toPolynomial(tensor.get(0)), power);
+            }
+            GenPolynomial<BigRational> result;
+            if (tensor instanceof Sum) {
+                result = ring.getZERO();
+                for (Tensor t : tensor)
+                    result = result.sum(toPolynomial(t));
+            } else {
+                result = ring.getONE();
+                for (Tensor t : tensor)
+                    result = result.multiply(toPolynomial(t));
+            }
+            return result;
+        }
+
+        GenPolynomial<BigRational> power(GenPolynomial<BigRational> base, long power) {
+            GenPolynomial<BigRational> result = ring.getONE();
+            while (power > 0) {
+                if ((power & 0x1) != 0)
+                    result = result.multiply(base);
+                if ((power >>>= 1) != 0)
+                    base = base.multiply(base);
+            }
+            return result;
+        }
+
+        Tensor toTensor(GenPolynomial<BigRational> polynomial) {
+            if (polynomial.length() == 0)
+                return Complex.ZERO;
+            List<Tensor> terms = new ArrayList<>(polynomial.length()), factors = new ArrayList<>();
+            BigRational coefficient;
+            ExpVector exponent;
+            long e;
+            for (Monomial<BigRational> monomial : polynomial) {
+                coefficient = monomial.coefficient();
+                exponent = monomial.exponent();
+                factors.clear();
+                factors.add(new Complex(new Rational(coefficient.numerator(), coefficient.denominator())));
+                for (int i = 0; i < exponent.length(); ++i)
+                    if ((e = exponent.getVal(i)) != 0)
+                        factors.add(e == 1 ? variables.get(i) : Tensors.pow(variables.get(i), new Complex(e)));
+                terms.add(Tensors.multiply(factors.toArray(new Tensor[factors.size()])));
+            }
+            return Tensors.sum(terms.toArray(new Tensor[terms.size()]));
+        }
+    }
+}
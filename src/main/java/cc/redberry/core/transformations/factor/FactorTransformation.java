@@ -22,6 +22,7 @@
  */
 package cc.redberry.core.transformations.factor;
 
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.number.Rational;
 import cc.redberry.core.tensor.*;
@@ -30,14 +31,20 @@ import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
 import cc.redberry.core.tensor.iterator.FromParentToChildIterator;
 import cc.redberry.core.tensor.iterator.TreeIterator;
 import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.transformations.expand.ExpandUtils.IndexedTask;
 import cc.redberry.core.transformations.fractions.TogetherTransformation;
 import cc.redberry.core.utils.IntArrayList;
 import cc.redberry.core.utils.TensorUtils;
+import cc.redberry.core.utils.TensorWrapperWithEquals;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import static cc.redberry.core.transformations.expand.ExpandUtils.parallelFor;
 
 /**
  * Factors a symbolic parts (without any indices) of tensor over the integers. The
@@ -51,17 +58,79 @@ public class FactorTransformation implements Transformation {
     /**
      * Singleton instance.
      */
-    public static final FactorTransformation FACTOR = new FactorTransformation();
+    public static final FactorTransformation FACTOR = new FactorTransformation(1);
+    private final int threads;
+
+    private FactorTransformation(int threads) {
+        this.threads = threads;
+    }
 
-    private FactorTransformation() {
+    /**
+     * Returns transformation, which factors independent symbolic sums concurrently using specified
+     * number of threads taken from {@link ContextManager#getExecutorService()}. All symbolic sums are collected
+     * first, identical ones are factored only once, and then results are substituted back; the result is the same
+     * as the result of serial factorization.
+     *
+     * @param threads number of threads (1 means serial factorization)
+     * @return new transformation, which factors independent symbolic sums concurrently
+     * @throws IllegalArgumentException if {@code threads} is not positive
+     */
+    public FactorTransformation asParallelTransformation(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        return new FactorTransformation(threads);
     }
 
     @Override
     public Tensor transform(Tensor t) {
-        return factorSymbolicTerms(t);
+        return factor(t, threads);
     }
 
     private static Tensor factorSymbolicTerms(Tensor tensor) {
+        return factorSymbolicTerms(tensor, SERIAL_FACTOR);
+    }
+
+    private static Tensor factorSymbolicTermsConcurrently(Tensor tensor, int threads) {
+        //collecting distinct symbolic sums
+        final Map<TensorWrapperWithEquals, Tensor> factored = new LinkedHashMap<>();
+        factorSymbolicTerms(tensor, new Transformation() {
+            @Override
+            public Tensor transform(Tensor t) {
+                factored.put(new TensorWrapperWithEquals(t), null);
+                return t;
+            }
+        });
+        if (factored.isEmpty())
+            return tensor;
+
+        final TensorWrapperWithEquals[] sums = factored.keySet().toArray(new TensorWrapperWithEquals[factored.size()]);
+        final Tensor[] results = new Tensor[sums.length];
+        parallelFor(sums.length, threads, new IndexedTask<RuntimeException>() {
+            @Override
+            public void process(int i) {
+                results[i] = factorSymbolicTerm(sums[i].getTensor());
+            }
+        });
+
+        //substituting results back
+        for (int i = 0; i < sums.length; ++i)
+            factored.put(sums[i], results[i]);
+        return factorSymbolicTerms(tensor, new Transformation() {
+            @Override
+            public Tensor transform(Tensor t) {
+                return factored.get(new TensorWrapperWithEquals(t));
+            }
+        });
+    }
+
+    private static final Transformation SERIAL_FACTOR = new Transformation() {
+        @Override
+        public Tensor transform(Tensor t) {
+            return factorSymbolicTerm(t);
+        }
+    };
+
+    private static Tensor factorSymbolicTerms(Tensor tensor, Transformation symbolicFactor) {
         FromParentToChildIterator iterator = new FromParentToChildIterator(tensor);
         Tensor c;
         while ((c = iterator.next()) != null) {
@@ -79,14 +148,14 @@ public class FactorTransformation implements Transformation {
                 }
             }
             Tensor symbolicPart = ((Sum) c).select(symbolicPositions.toArray());
-            symbolicPart = factorSymbolicTerm(symbolicPart);
+            symbolicPart = symbolicFactor.transform(symbolicPart);
             if (remainder instanceof Sum) {
                 SumBuilder sb = new SumBuilder(remainder.size());
                 for (Tensor tt : remainder)
-                    sb.put(factorSymbolicTerms(tt));
+                    sb.put(factorSymbolicTerms(tt, symbolicFactor));
                 remainder = sb.build();
             } else
-                remainder = factorSymbolicTerms(remainder);
+                remainder = factorSymbolicTerms(remainder, symbolicFactor);
             iterator.set(Tensors.sum(symbolicPart, remainder));
         }
         return iterator.result();
@@ -227,6 +296,21 @@ public class FactorTransformation implements Transformation {
 //        return iterator.result();
     }
 
+    /**
+     * Factors a symbolic parts (without any indices) of tensor over the integers; independent symbolic
+     * sums are factored concurrently using specified number of threads.
+     *
+     * @param tensor  tensor
+     * @param threads number of threads (1 means serial factorization)
+     * @return result
+     * @see #asParallelTransformation(int)
+     */
+    public static Tensor factor(Tensor tensor, int threads) {
+        if (threads == 1)
+            return factorSymbolicTerms(tensor);
+        return factorSymbolicTermsConcurrently(tensor, threads);
+    }
+
 
     static Tensor factorOut(Tensor tensor) {
         FromChildToParentIterator iterator = new FromChildToParentIterator(tensor);
@@ -26,6 +26,7 @@ import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
 import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
 import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.transformations.expand.ExpandUtils.IndexedTask;
 import cc.redberry.core.transformations.factor.FactorTransformation;
 import cc.redberry.core.utils.THashMap;
 import cc.redberry.core.utils.TensorUtils;
@@ -36,6 +37,7 @@ import java.util.Map;
 
 import static cc.redberry.core.transformations.CollectScalarFactorsTransformation.collectScalarFactors;
 import static cc.redberry.core.transformations.CollectScalarFactorsTransformation.collectScalarFactorsInProduct;
+import static cc.redberry.core.transformations.expand.ExpandUtils.parallelFor;
 
 /**
  * Puts terms in a sum over a common denominator.
@@ -47,18 +49,39 @@ import static cc.redberry.core.transformations.CollectScalarFactorsTransformatio
 //TODO review after logical completion of tensors standard form strategy 
 public final class TogetherTransformation implements Transformation {
 
-    public static final TogetherTransformation TOGETHER = new TogetherTransformation(false);
-    public static final TogetherTransformation TOGETHER_FACTOR = new TogetherTransformation(true);
+    public static final TogetherTransformation TOGETHER = new TogetherTransformation(false, 1);
+    public static final TogetherTransformation TOGETHER_FACTOR = new TogetherTransformation(true, 1);
+    /**
+     * Minimal size of sum, which terms are processed concurrently
+     */
+    private static final int PARALLEL_TOGETHER_THRESHOLD = 1024;
 
     private final boolean doFactor;
+    private final int threads;
 
-    private TogetherTransformation(boolean doFactor) {
+    private TogetherTransformation(boolean doFactor, int threads) {
         this.doFactor = doFactor;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns transformation, which splits terms of large sums into numerators and denominators and builds new
+     * numerators concurrently using specified number of threads taken from
+     * {@link cc.redberry.core.context.ContextManager#getExecutorService()}.
+     *
+     * @param threads number of threads (1 means serial transformation)
+     * @return new transformation, which processes terms of large sums concurrently
+     * @throws IllegalArgumentException if {@code threads} is not positive
+     */
+    public TogetherTransformation asParallelTransformation(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        return new TogetherTransformation(doFactor, threads);
     }
 
     @Override
     public Tensor transform(Tensor t) {
-        return together(t, doFactor);
+        return together(t, doFactor, threads);
     }
 
     /**
@@ -80,18 +103,32 @@ public final class TogetherTransformation implements Transformation {
      */
     //todo make two separate methods
     public static Tensor together(Tensor t, boolean doFactor) {
+        return together(t, doFactor, 1);
+    }
+
+    /**
+     * Puts terms in a sum over a common denominator and cancels factors in the result if specified; terms of large
+     * sums are processed concurrently using specified number of threads.
+     *
+     * @param t        tensor
+     * @param doFactor specifies whether to cancel factors in the result
+     * @param threads  number of threads (1 means serial transformation)
+     * @return result
+     * @see #asParallelTransformation(int)
+     */
+    public static Tensor together(Tensor t, boolean doFactor, int threads) {
         FromChildToParentIterator iterator = new FromChildToParentIterator(t);
         Tensor c;
         while ((c = iterator.next()) != null) {
             if (c instanceof Sum)
-                iterator.set(togetherSum(c, doFactor));
+                iterator.set(togetherSum(c, doFactor, threads));
             if (c instanceof Product)
                 iterator.set(collectScalarFactorsInProduct((Product) c));
         }
         return iterator.result();
     }
 
-    private static Tensor togetherSum(Tensor t, boolean doFactor) {
+    private static Tensor togetherSum(final Tensor t, final boolean doFactor, int threads) {
         boolean performTogether = false;
         for (Tensor s : t)
             if (s instanceof Product) {
@@ -107,57 +144,55 @@ public final class TogetherTransformation implements Transformation {
         if (!performTogether)
             return t;
 
-        SplitStruct base = splitFraction(t.get(0), doFactor), temp;
-        @SuppressWarnings("unchecked") List<Tensor> numeratorTerms[] = new List[t.size()];
-        numeratorTerms[0] = new ArrayList<>();
-        numeratorTerms[0].add(base.numerator);
-        Tensor s, power;
-        Complex exponent, _exponent;
-        int i, j;
-        for (i = 1; i < t.size(); ++i) {
-            s = t.get(i);
-            temp = splitFraction(s, doFactor);
-
-            List<Tensor> newNumeratorTerm = new ArrayList<>();
-            newNumeratorTerm.add(temp.numerator);
-            numeratorTerms[i] = newNumeratorTerm;
-
-            for (Map.Entry<Tensor, Complex> baseEntry : base.denominators.entrySet()) {
-                exponent = temp.denominators.get(baseEntry.getKey());
-                if (exponent == null) {
-                    power = Tensors.pow(baseEntry.getKey(), baseEntry.getValue());
-                    newNumeratorTerm.add(power);
-                } else if ((_exponent = baseEntry.getValue().subtract(exponent)).getReal().signum() > 0) {
-                    power = Tensors.pow(baseEntry.getKey(), _exponent);
-                    newNumeratorTerm.add(power);
-                }
+        if (t.size() < PARALLEL_TOGETHER_THRESHOLD)
+            threads = 1;
+
+        //splitting terms
+        final SplitStruct[] splits = new SplitStruct[t.size()];
+        parallelFor(splits.length, threads, new IndexedTask<RuntimeException>() {
+            @Override
+            public void process(int i) {
+                splits[i] = splitFraction(t.get(i), doFactor);
+            }
+        });
+
+        //common denominator: the maximal exponent of each denominator
+        final THashMap<Tensor, Complex> denominators = new THashMap<>();
+        Complex exponent;
+        for (SplitStruct split : splits)
+            for (Map.Entry<Tensor, Complex> entry : split.denominators.entrySet()) {
+                exponent = denominators.get(entry.getKey());
+                if (exponent == null || entry.getValue().subtract(exponent).getReal().signum() > 0)
+                    denominators.put(entry.getKey(), entry.getValue());
             }
 
-            for (Map.Entry<Tensor, Complex> tempEntry : temp.denominators.entrySet()) {
-                exponent = base.denominators.get(tempEntry.getKey());
-                if (exponent == null) {
-                    power = Tensors.pow(tempEntry.getKey(), tempEntry.getValue());
-                    for (j = 0; j < i; ++j)
-                        numeratorTerms[j].add(power);
-                    base.denominators.put(tempEntry.getKey(), tempEntry.getValue());
-                } else if ((_exponent = tempEntry.getValue().subtract(exponent)).getReal().signum() > 0) {
-                    power = Tensors.pow(tempEntry.getKey(), _exponent);
-                    for (j = 0; j < i; ++j)
-                        numeratorTerms[j].add(power);
-                    base.denominators.put(tempEntry.getKey(), tempEntry.getValue());
+        //numerator of each term is multiplied by the deficit of its denominator
+        final Tensor[] numerators = new Tensor[splits.length];
+        parallelFor(splits.length, threads, new IndexedTask<RuntimeException>() {
+            @Override
+            public void process(int i) {
+                List<Tensor> term = new ArrayList<>();
+                term.add(splits[i].numerator);
+                Complex exponent, deficit;
+                for (Map.Entry<Tensor, Complex> entry : denominators.entrySet()) {
+                    exponent = splits[i].denominators.get(entry.getKey());
+                    deficit = exponent == null ? entry.getValue() : entry.getValue().subtract(exponent);
+                    if (deficit.getReal().signum() > 0)
+                        term.add(Tensors.pow(entry.getKey(), deficit));
                 }
+                splits[i] = null;
+                numerators[i] = collectScalarFactors(Tensors.multiplyAndRenameConflictingDummies(term.toArray(new Tensor[term.size()])));//TODO ?rename conflicts
             }
+        });
 
-        }
         SumBuilder numeratorSumBuilder = new SumBuilder();
-        for (List<Tensor> term : numeratorTerms)
-            numeratorSumBuilder.put(collectScalarFactors(Tensors.multiplyAndRenameConflictingDummies(term.toArray(new Tensor[term.size()]))));//TODO ?rename conflicts
-        //TODO improve performance
-        Tensor[] resultProduct = new Tensor[1 + base.denominators.size()];
+        for (Tensor numerator : numerators)
+            numeratorSumBuilder.put(numerator);
+        Tensor[] resultProduct = new Tensor[1 + denominators.size()];
         resultProduct[0] = numeratorSumBuilder.build();
-        i = 0;
-        for (Map.Entry<Tensor, Complex> baseEntry : base.denominators.entrySet())
-            resultProduct[++i] = Tensors.pow(baseEntry.getKey(), baseEntry.getValue().negate());
+        int i = 0;
+        for (Map.Entry<Tensor, Complex> entry : denominators.entrySet())
+            resultProduct[++i] = Tensors.pow(entry.getKey(), entry.getValue().negate());
         return Tensors.multiplyAndRenameConflictingDummies(resultProduct);
     }
 
@@ -0,0 +1,118 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations.substitutions;
+
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.TensorSummary;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.utils.IntArrayList;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled form of a set of primitive substitutions. Substitutions are indexed by class of their left hand side
+ * (only nodes of the same class can be matched) and by names of simple tensors which should be present in the
+ * node in order to be matched (checked in O(1) using cached {@link TensorSummary}). So, at each node only substitutions that can potentially match it are
+ * consulted; the order of substitutions is preserved.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+final class SubstitutionRuleSet {
+    private final PrimitiveSubstitution[] substitutions;
+    /**
+     * Summaries of names of simple tensors required by each substitution (see {@link TensorSummary#namesMask(Tensor)})
+     */
+    private final long[] requiredNames;
+    /**
+     * Class of lhs -> positions of substitutions in ascending order
+     */
+    private final Map<Class<?>, int[]> byClass;
+
+    SubstitutionRuleSet(PrimitiveSubstitution[] substitutions) {
+        this.substitutions = substitutions;
+        this.requiredNames = new long[substitutions.length];
+        Map<Class<?>, IntArrayList> byClass = new HashMap<>();
+        IntArrayList positions;
+        for (int i = 0; i < substitutions.length; ++i) {
+            //arguments of fields are matched up to substitution of arguments, so they are not required
+            requiredNames[i] = TensorSummary.namesMask(substitutions[i].from);
+            if ((positions = byClass.get(substitutions[i].from.getClass())) == null)
+                byClass.put(substitutions[i].from.getClass(), positions = new IntArrayList());
+            positions.add(i);
+        }
+        this.byClass = new HashMap<>(byClass.size());
+        for (Map.Entry<Class<?>, IntArrayList> entry : byClass.entrySet())
+            this.byClass.put(entry.getKey(), entry.getValue().toArray());
+    }
+
+    /**
+     * Returns traverse guide, which skips subtrees that can not be matched by any of substitutions.
+     *
+     * @return traverse guide
+     */
+    TraverseGuide guide() {
+        return TensorSummary.guide(requiredNames);
+    }
+
+    /**
+     * Applies substitutions to the specified node in the same way as sequential application of all substitutions
+     * in the order they were specified.
+     *
+     * @param current         current node
+     * @param iterator        substitution iterator
+     * @param applyIfModified if false, then substitutions following the first applied one are skipped
+     * @return result
+     */
+    Tensor apply(Tensor current, SubstitutionIterator iterator, boolean applyIfModified) {
+        int[] candidates;
+        Tensor old;
+        int last = -1, position, rule;
+        while ((candidates = byClass.get(current.getClass())) != null) {
+            //first candidate following the last considered substitution
+            position = Arrays.binarySearch(candidates, last + 1);
+            if (position < 0)
+                position = -position - 1;
+            if (position == candidates.length)
+                break;
+            last = rule = candidates[position];
+
+            if (current instanceof SimpleTensor) {
+                //lhs is simple tensor or field with the same head
+                if (substitutions[rule].from instanceof SimpleTensor
+                        && ((SimpleTensor) substitutions[rule].from).getName() != ((SimpleTensor) current).getName())
+                    continue;
+            } else if (!TensorSummary.mayContain(current, requiredNames[rule]))
+                continue;
+
+            old = current;
+            current = substitutions[rule].newTo(old, iterator);
+            if (current != old && !applyIfModified)
+                break;
+        }
+        return current;
+    }
+}
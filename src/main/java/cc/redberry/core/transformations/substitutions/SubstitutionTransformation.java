@@ -24,6 +24,7 @@ package cc.redberry.core.transformations.substitutions;
 
 import cc.redberry.core.tensor.*;
 import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.transformations.expand.ExpandUtils;
 import cc.redberry.core.utils.TensorUtils;
 
 /**
@@ -34,12 +35,27 @@ import cc.redberry.core.utils.TensorUtils;
  * @since 1.0
  */
 public final class SubstitutionTransformation implements Transformation {
+    /**
+     * Minimal number of terms in the top level sum, starting from which substitutions will be applied to its terms
+     * in parallel (if parallel substitution was requested)
+     */
+    static final int PARALLEL_SUBSTITUTION_THRESHOLD = 1024;
     private final PrimitiveSubstitution[] primitiveSubstitutions;
     private final boolean applyIfModified;
+    private final int threads;
+    //lazily compiled rules (immutable, so racy initialization is safe)
+    private SubstitutionRuleSet ruleSet;
+
+    private SubstitutionTransformation(PrimitiveSubstitution[] primitiveSubstitutions, boolean applyIfModified,
+                                       SubstitutionRuleSet ruleSet) {
+        this(primitiveSubstitutions, applyIfModified, 1);
+        this.ruleSet = ruleSet;
+    }
 
-    private SubstitutionTransformation(PrimitiveSubstitution[] primitiveSubstitutions, boolean applyIfModified) {
+    private SubstitutionTransformation(PrimitiveSubstitution[] primitiveSubstitutions, boolean applyIfModified, int threads) {
         this.primitiveSubstitutions = primitiveSubstitutions;
         this.applyIfModified = applyIfModified;
+        this.threads = threads;
     }
 
     /**
@@ -52,6 +68,7 @@ public final class SubstitutionTransformation implements Transformation {
      */
     public SubstitutionTransformation(boolean applyIfModified, Expression... expressions) {
         this.applyIfModified = applyIfModified;
+        this.threads = 1;
         primitiveSubstitutions = new PrimitiveSubstitution[expressions.length];
         for (int i = expressions.length - 1; i >= 0; --i)
             primitiveSubstitutions[i] = createPrimitiveSubstitution(expressions[i].get(0), expressions[i].get(1));
@@ -82,6 +99,7 @@ public final class SubstitutionTransformation implements Transformation {
         primitiveSubstitutions = new PrimitiveSubstitution[1];
         primitiveSubstitutions[0] = createPrimitiveSubstitution(from, to);
         this.applyIfModified = applyIfModified;
+        this.threads = 1;
     }
 
 
@@ -131,6 +149,7 @@ public final class SubstitutionTransformation implements Transformation {
         for (int i = 0; i < from.length; ++i)
             primitiveSubstitutions[i] = createPrimitiveSubstitution(from[i], to[i]);
         this.applyIfModified = applyIfModified;
+        this.threads = 1;
     }
 
     /**
@@ -141,7 +160,7 @@ public final class SubstitutionTransformation implements Transformation {
      *         the inner substitutions as simple substitutions.
      */
     public SubstitutionTransformation asSimpleSubstitution() {
-        SubstitutionTransformation ss = new SubstitutionTransformation(primitiveSubstitutions.clone(), applyIfModified);
+        SubstitutionTransformation ss = new SubstitutionTransformation(primitiveSubstitutions.clone(), applyIfModified, threads);
         for (int i = primitiveSubstitutions.length - 1; i >= 0; --i)
             ss.primitiveSubstitutions[i] =
                     new PrimitiveSimpleTensorSubstitution(
@@ -150,6 +169,22 @@ public final class SubstitutionTransformation implements Transformation {
         return ss;
     }
 
+    /**
+     * Creates a new substitution, which applies substitutions to terms of large top level sums concurrently using
+     * the specified number of threads taken from {@link cc.redberry.core.context.ContextManager#getExecutorService()}.
+     * The result is the same as the result of serial substitution up to renaming of dummy indices. If some of the
+     * inner substitutions has sum in the left hand side, then terms are always processed serially.
+     *
+     * @param threads number of threads (1 means serial substitution)
+     * @return new substitution, which processes terms of large sums concurrently
+     * @throws IllegalArgumentException if {@code threads} is not positive
+     */
+    public SubstitutionTransformation asParallelSubstitution(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads should be positive: " + threads);
+        return new SubstitutionTransformation(primitiveSubstitutions, applyIfModified, threads);
+    }
+
     private static void checkConsistence(Tensor[] from, Tensor[] to) {
         if (from.length != to.length)
             throw new IllegalArgumentException("from array and to array have different length.");
@@ -188,23 +223,38 @@ public final class SubstitutionTransformation implements Transformation {
 
     @Override
     public Tensor transform(Tensor t) {
-        SubstitutionIterator iterator = new SubstitutionIterator(t);
+        if (threads > 1 && t instanceof Sum && t.size() >= PARALLEL_SUBSTITUTION_THRESHOLD && termwise())
+            //terms of sum have independent dummies, so they can be substituted independently
+            return ExpandUtils.drainConcurrently(new ExpandUtils.SumPort((Sum) t),
+                    new Transformation[]{
+                            new SubstitutionTransformation(primitiveSubstitutions, applyIfModified, ruleSet())},
+                    threads);
+        SubstitutionRuleSet ruleSet = ruleSet();
+        //subtrees which do not contain names required by substitutions are skipped
+        SubstitutionIterator iterator = new SubstitutionIterator(t, ruleSet.guide());
         Tensor current;
         while ((current = iterator.next()) != null) {
             if (!applyIfModified && iterator.isCurrentModified())
                 continue;
-            Tensor old = current;
-            for (PrimitiveSubstitution nodeSubstitution : primitiveSubstitutions) {
-                current = nodeSubstitution.newTo(old, iterator);
-                if (current != old && !applyIfModified)
-                    break;
-                old = current;
-            }
-            iterator.set(current);
+            iterator.set(ruleSet.apply(current, iterator, applyIfModified));
         }
         return iterator.result();
     }
 
+    private SubstitutionRuleSet ruleSet() {
+        if (ruleSet == null)
+            ruleSet = new SubstitutionRuleSet(primitiveSubstitutions);
+        return ruleSet;
+    }
+
+    private boolean termwise() {
+        //sum in the lhs may match several terms
+        for (PrimitiveSubstitution ps : primitiveSubstitutions)
+            if (ps instanceof PrimitiveSumSubstitution)
+                return false;
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -37,6 +37,7 @@ import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static cc.redberry.core.tensor.Tensors.*;
@@ -277,6 +278,9 @@ public class TensorUtils {
             if (((SimpleTensor) u).getName() != ((SimpleTensor) v).getName()
                     || !u.getIndices().equals(v.getIndices()))
                 return false;
+            for (int i = u.size() - 1; i >= 0; --i)
+                if (!((TensorField) u).getArgIndices(i).equals(((TensorField) v).getArgIndices(i)))
+                    return false;
         }
 
         final int size = u.size();
@@ -430,10 +434,11 @@ public class TensorUtils {
         final int dimension = indicesNames.length;
         int[] permutation = new int[dimension];
         Arrays.fill(permutation, -1);
+        Map<Integer, IndexMappingBufferRecord> map = indexMappingBuffer.getMap();
         int i;
         for (i = 0; i < dimension; ++i) {
             int fromIndex = indicesNames[i];
-            IndexMappingBufferRecord record = indexMappingBuffer.getMap().get(fromIndex);
+            IndexMappingBufferRecord record = map.get(fromIndex);
             if (record == null) {
                 return new Symmetry(dimension);
                 //todo discuss with Dima
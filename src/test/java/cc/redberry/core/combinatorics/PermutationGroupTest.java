@@ -0,0 +1,126 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.combinatorics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class PermutationGroupTest {
+
+    private static Set<Symmetry> span(List<Symmetry> generators) {
+        Set<Symmetry> set = new HashSet<>();
+        PermutationsSpanIterator<Symmetry> iterator = new PermutationsSpanIterator<>(generators);
+        while (iterator.hasNext())
+            set.add(iterator.next());
+        return set;
+    }
+
+    private static Symmetry nextSymmetry(int dimension, Random random) {
+        int[] permutation = Combinatorics.createIdentity(dimension);
+        for (int i = dimension - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1), t = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = t;
+        }
+        return new Symmetry(permutation, random.nextBoolean());
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(123);
+        for (int t = 0; t < 500; ++t) {
+            int dimension = 2 + random.nextInt(4);
+            List<Symmetry> generators = new ArrayList<>();
+            generators.add(new Symmetry(dimension));
+            for (int i = random.nextInt(3); i >= 0; --i)
+                generators.add(nextSymmetry(dimension, random));
+
+            Set<Symmetry> expected = null;
+            try {
+                expected = span(generators);
+            } catch (InconsistentGeneratorsException e) {
+            }
+            PermutationGroup group;
+            try {
+                group = new PermutationGroup(dimension, generators);
+            } catch (InconsistentGeneratorsException e) {
+                Assert.assertNull(expected);
+                continue;
+            }
+            Assert.assertNotNull(expected);
+
+            Set<Symmetry> actual = new HashSet<>();
+            int count = 0;
+            for (Symmetry s : group) {
+                actual.add(s);
+                ++count;
+            }
+            Assert.assertEquals(new Symmetry(dimension), group.iterator().next());
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(expected.size(), count);
+            Assert.assertEquals(BigInteger.valueOf(count), group.order());
+            for (Symmetry s : expected)
+                Assert.assertTrue(group.contains(s));
+        }
+    }
+
+    @Test
+    public void testLargeSymmetricGroup() {
+        int dimension = 30;
+        PermutationGroup group = new PermutationGroup(dimension, Arrays.asList(
+                new Symmetry(Combinatorics.createCycle(dimension), false),
+                new Symmetry(Combinatorics.createTransposition(dimension), false)));
+        BigInteger factorial = BigInteger.ONE;
+        for (int i = 2; i <= dimension; ++i)
+            factorial = factorial.multiply(BigInteger.valueOf(i));
+        Assert.assertEquals(factorial, group.order());
+        Assert.assertTrue(group.contains(new Symmetry(Combinatorics.createTransposition(dimension, 3, 17), false)));
+        Assert.assertFalse(group.contains(new Symmetry(Combinatorics.createTransposition(dimension, 3, 17), true)));
+        Assert.assertFalse(group.add(new Symmetry(Combinatorics.createTransposition(dimension, 5, 7), false)));
+    }
+
+    @Test(expected = InconsistentGeneratorsException.class)
+    public void testInconsistent() {
+        int dimension = 30;
+        //odd cycle with '+' and transposition with '-'
+        new PermutationGroup(dimension, Arrays.asList(
+                new Symmetry(Combinatorics.createCycle(dimension), false),
+                new Symmetry(Combinatorics.createTransposition(dimension), true)));
+    }
+
+    @Test
+    public void testRiemann() {
+        PermutationGroup group = new PermutationGroup(4);
+        Assert.assertTrue(group.add(new Symmetry(new int[]{1, 0, 2, 3}, true)));
+        Assert.assertTrue(group.add(new Symmetry(new int[]{2, 3, 0, 1}, false)));
+        Assert.assertFalse(group.add(new Symmetry(new int[]{0, 1, 3, 2}, true)));
+        Assert.assertEquals(BigInteger.valueOf(8), group.order());
+    }
+}
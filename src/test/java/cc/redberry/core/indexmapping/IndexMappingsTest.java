@@ -478,4 +478,37 @@ public class IndexMappingsTest {
         Assert.assertTrue(buffer == null);
     }
 
+    @Test
+    public void testBufferCopyOnWrite() {
+        IndexMappingBufferImpl buffer = IndexMappingTestUtils.parse("+;_a->_p;_c->_r");
+        IndexMappingBufferImpl clone = buffer.clone();
+        Assert.assertEquals(buffer, clone);
+        Assert.assertEquals(buffer.hashCode(), clone.hashCode());
+
+        Assert.assertTrue(clone.tryMap(IndicesUtils.parseIndex("_b"), IndicesUtils.parseIndex("_q")));
+        Assert.assertTrue(clone.tryMap(IndicesUtils.parseIndex("^a"), IndicesUtils.parseIndex("^p")));
+        Assert.assertFalse(clone.tryMap(IndicesUtils.parseIndex("_c"), IndicesUtils.parseIndex("_p")));
+        Assert.assertEquals(IndexMappingTestUtils.parse("+;_a->_p;_c->_r"), buffer);
+        Assert.assertEquals(3, clone.size());
+        Assert.assertEquals(2, buffer.size());
+
+        clone.removeContracted();
+        Assert.assertEquals(IndexMappingTestUtils.parse("+;_b->_q;_c->_r"), clone);
+        Assert.assertEquals(IndexMappingTestUtils.parse("+;_a->_p;_c->_r"), buffer);
+        for (int i = 1; i < clone.size(); ++i)
+            Assert.assertTrue(clone.getFromName(i - 1) < clone.getFromName(i));
+    }
+
+    @Test
+    public void testRemoveAllContracted() {
+        IndexMappingBufferImpl buffer = IndexMappingTestUtils.parse("+;_a->_p;^a->^p;_b->_q;^b->^q");
+        Assert.assertEquals(2, buffer.size());
+        buffer.removeContracted();
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertEquals(IndexMappingTestUtils.parse("+"), buffer);
+
+        IndexMappingBuffer mapping = IndexMappings.getFirst(parse("A^m*B_m"), parse("A^u*B_u"));
+        Assert.assertTrue(mapping.getMap().isEmpty());
+        Assert.assertFalse(mapping.getSign());
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.number;
+
+import org.apache.commons.math3.fraction.BigFraction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class RationalTest {
+    @Test
+    public void test1() {
+        Rational a = new Rational(2, -6);
+        Assert.assertEquals("-1/3", a.toString());
+        Assert.assertEquals(new Rational(-1, 3), a);
+        Assert.assertEquals(new Rational(new BigFraction(-1, 3)), a);
+        Assert.assertEquals(new Rational(new BigFraction(-1, 3)).hashCode(), a.hashCode());
+        Assert.assertTrue(a.add(new Rational(1, 3)).isZero());
+        Assert.assertTrue(a.multiply(new Rational(-3)).isOne());
+        Assert.assertTrue(a.divide(new Rational(1, 3)).isMinusOne());
+        Assert.assertSame(Rational.ONE, new Rational(1, 2).add(Rational.ONE_HALF));
+    }
+
+    @Test
+    public void testOverflow() {
+        Rational max = new Rational(Long.MAX_VALUE);
+        Rational sum = max.add(Rational.ONE);
+        Assert.assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), sum.getNumerator());
+        Assert.assertEquals(max, sum.subtract(Rational.ONE));
+
+        Rational product = max.multiply(max);
+        Assert.assertEquals(BigInteger.valueOf(Long.MAX_VALUE).pow(2), product.getNumerator());
+        Assert.assertEquals(max, product.divide(max));
+
+        Rational min = new Rational(Long.MIN_VALUE);
+        Assert.assertEquals(BigInteger.valueOf(Long.MIN_VALUE).negate(), min.negate().getNumerator());
+        Assert.assertEquals(new Rational(Long.MIN_VALUE / 2), min.divide(2));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(123);
+        for (int i = 0; i < 10000; ++i) {
+            long n1 = random.nextLong() >> random.nextInt(64), d1 = (random.nextLong() >>> random.nextInt(64)) + 1,
+                    n2 = random.nextLong() >> random.nextInt(64), d2 = (random.nextLong() >>> random.nextInt(64)) + 1;
+            if (d1 <= 0 || d2 <= 0)
+                continue;
+            Rational a = new Rational(n1, d1), b = new Rational(n2, d2);
+            BigFraction fa = new BigFraction(n1, d1), fb = new BigFraction(n2, d2);
+            Assert.assertEquals(new Rational(fa.add(fb)), a.add(b));
+            Assert.assertEquals(new Rational(fa.subtract(fb)), a.subtract(b));
+            Assert.assertEquals(new Rational(fa.multiply(fb)), a.multiply(b));
+            if (n2 != 0)
+                Assert.assertEquals(new Rational(fa.divide(fb)), a.divide(b));
+            Assert.assertEquals(fa.compareTo(fb), a.compareTo(b));
+            Assert.assertEquals(fa.abs().hashCode(), a.hashCode());
+            Assert.assertEquals(fa.doubleValue(), a.doubleValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Rational[] rationals = {Rational.ZERO, Rational.ONE_HALF, new Rational(-7, 3), new Rational(Long.MAX_VALUE),
+                new Rational(Long.MIN_VALUE), new Rational(BigInteger.TEN.pow(30), BigInteger.valueOf(7))};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        for (Rational r : rationals)
+            output.writeObject(r);
+        output.close();
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (Rational r : rationals) {
+            Rational read = (Rational) input.readObject();
+            Assert.assertEquals(r, read);
+            Assert.assertEquals(r.hashCode(), read.hashCode());
+            if (r == Rational.ZERO)
+                Assert.assertSame(Rational.ZERO, read);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.parser;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class ParseManagerTest {
+    private static Tensor parseStream(String expression, int threads) throws IOException {
+        return CC.current().getParseManager().parse(new StringReader(expression), threads);
+    }
+
+    @Test
+    public void testReader1() throws IOException {
+        String[] expressions = {"a", "-a", "a + b - c", "-a*b - (c - d)*f[x - y] + x**-1 - 2",
+                "A_{a b} - B_{ba} + C_a*D_b", "1/2-1/3", "a - -b", "Sin[x - y] - F_m^m[x_a - y_a] + 2*x/(x - 1)"};
+        for (String expression : expressions) {
+            TAssert.assertEquals(parseStream(expression, 1), parse(expression));
+            TAssert.assertEquals(parseStream(expression, 3), parse(expression));
+        }
+        TAssert.assertEquals(CC.current().getParseManager().parse(new StringReader("  ")), parse("0"));
+    }
+
+    @Test
+    public void testReader2() throws IOException {
+        CC.resetTensorNames(123L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{4, 0, 0, 0}, new int[]{10, 0, 0, 0}, false, 123L);
+        for (int i = 0; i < 10; ++i) {
+            Tensor sum = random.nextSum(100, 3, ParserIndices.parseSimple("_ab"));
+            TAssert.assertEquals(parseStream(sum.toString(), 4), sum);
+        }
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        CC.resetTensorNames(321L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{4, 0, 0, 0}, new int[]{10, 0, 0, 0}, false, 321L);
+        Tensor sum = random.nextSum(1000, 3, ParserIndices.parseSimple("^a_b"));
+        File file = File.createTempFile("sum", ".txt");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(sum.toString());
+        }
+        TAssert.assertEquals(CC.current().getParseManager().parse(file), sum);
+        TAssert.assertEquals(CC.current().getParseManager().parse(file, 2), sum);
+    }
+
+    @Test(expected = ParserException.class)
+    public void testExpression() throws IOException {
+        parseStream("x = a + b", 1);
+    }
+
+    @Test(expected = BracketsError.class)
+    public void testBrackets() throws IOException {
+        parseStream("a + (b - c", 1);
+    }
+}
@@ -27,6 +27,7 @@ import cc.redberry.core.context.CC;
 import cc.redberry.core.indices.*;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
+import cc.redberry.core.tensor.random.RandomTensor;
 import cc.redberry.core.utils.TensorUtils;
 import junit.framework.Assert;
 import org.junit.Ignore;
@@ -404,4 +405,78 @@ public class ParserTest {
     public void testMetric1() {
         parse("g_a'b'");
     }
+
+    private static final Parser recursiveParser = new Parser(ParserBrackets.INSTANCE,
+            ParserSum.INSTANCE,
+            ParserProduct.INSTANCE,
+            ParserSimpleTensor.INSTANCE,
+            ParserTensorField.INSTANCE,
+            ParserPower.INSTANCE,
+            ParserNumber.INSTANCE,
+            ParserFunctions.INSTANCE,
+            ParserExpression.INSTANCE,
+            ParserPowerAst.INSTANCE);
+
+    @Test
+    public void testSinglePass1() {
+        String[] expressions = {"a", "-a", "a-b+c", "a - b - (c - d)", "-a*b - c/d/e", "2*a_\\mu-b_\\mu/(c*x)*x[x,y]",
+                "f[a_\\mu] - f[b_\\mu/ (c * g) * g[x, y]]", "2 + 3*4 - 1/2", "1/2 + I", "(1 + 2)*3", "2**3",
+                "a**b**c", "(a+b)**2*c", "Power[a, 2]", "Power[a+b, c]**2", "Sin[x]*Cos[y] + ArcTan[x**2]",
+                "f_a[x_b:_b, y]", "f_a[x_m, y]", "F_{a b}^{c} * G_{c}^{d}", "T_{\\alpha'}^{\\beta'}",
+                "A_a^a = B + C", "x = 1/2", "2.5*x", "f[g[h[x]], k[y]]*(a - (b - (c - d)))"};
+        for (String expression : expressions) {
+            ParseToken token = new SinglePassParser(expression).parse();
+            Assert.assertEquals(expression, recursiveParser.parse(expression), token);
+            TAssert.assertEquals(token.toTensor(), recursiveParser.parse(expression).toTensor());
+        }
+    }
+
+    @Test
+    public void testSinglePassNumbers() {
+        //numbers are whitespace sensitive: 1 + 2 is 3.0, while 1+2 is 3
+        String[] expressions = {"2 + 3*4 - 1/2", "2+3*4-1/2", "(1 + 2)*3", "f[1 + 2]", "a*f[1 + 2]", "x**(1 + 2)",
+                "a*(1 + 2)**x", "x = 1 + 2", "Power[x, 1 + 2]", "Sin[1 / 2]*a", "-(1 + 2)", "a - (1 -- 2)", "2**(1 + 1)"};
+        for (String expression : expressions) {
+            ParseToken expected = recursiveParser.parse(expression);
+            Assert.assertEquals(expression, expected.toString(), new SinglePassParser(expression).parse().toString());
+            TAssert.assertEquals(Parser.DEFAULT.parse(expression).toTensor(), expected.toTensor());
+        }
+    }
+
+    @Test
+    public void testSinglePass2() {
+        CC.resetTensorNames(123L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{4, 0, 0, 0}, new int[]{10, 0, 0, 0}, false, 123L);
+        for (int i = 0; i < 100; ++i) {
+            String expression = random.nextSum(10, 3, ParserIndices.parseSimple("_ab")).toString();
+            Assert.assertEquals(recursiveParser.parse(expression), new SinglePassParser(expression).parse());
+        }
+    }
+
+    @Test
+    public void testSinglePassDeep() {
+        int depth = 1000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; ++i)
+            sb.append("a").append(i).append("*(");
+        sb.append('x');
+        for (int i = 0; i < depth; ++i)
+            sb.append("+b)");
+        ParseToken token = new SinglePassParser(sb.toString()).parse();
+        for (int i = 0; i < depth; ++i) {
+            Assert.assertEquals(TokenType.Product, token.tokenType);
+            token = token.content[1].content[0];
+        }
+        Assert.assertEquals(new ParseTokenSimpleTensor(IndicesFactory.EMPTY_SIMPLE_INDICES, "x"), token);
+    }
+
+    @Test
+    public void testSinglePassErrors() {
+        for (String expression : new String[]{"a+", "(a+b", "a+b)", "f[x", "a=b=c", "Sin[x,y]", "Power[x]", "a**"})
+            try {
+                new SinglePassParser(expression).parse();
+                Assert.fail(expression);
+            } catch (ParserException e) {
+            }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class CompactSumTest {
+    @Test
+    public void test1() {
+        Tensor sum = parse("2*A_mn*B^n + A_mn*C^n + f_m[x]*Sin[x] + A_ma*B^a*A_bc*B^b*C^c");
+        CompactSum compact = CompactSum.of(sum);
+        Assert.assertEquals(sum.size(), compact.size());
+        //A, B, C, f_m[x], Sin[x], 1, 2
+        Assert.assertEquals(7, compact.poolSize());
+        for (int i = 0; i < sum.size(); ++i)
+            Assert.assertTrue(TensorUtils.equalsExactly(sum.get(i), compact.get(i)));
+        Assert.assertTrue(TensorUtils.equals(sum, compact.toTensor()));
+    }
+
+    @Test
+    public void testBuilder() {
+        CompactSum.Builder builder = new CompactSum.Builder();
+        builder.put(parse("A_mn*B^n"));
+        builder.put(parse("A_mn*B^n + 3*x*C_m"));
+        builder.put(parse("x*C_m"));
+        CompactSum compact = builder.build();
+        Assert.assertEquals(4, compact.size());
+        Assert.assertTrue(TensorUtils.equals(parse("2*A_mn*B^n + 4*x*C_m"), compact.toTensor()));
+    }
+
+    @Test(expected = TensorException.class)
+    public void testInconsistentIndices() {
+        CompactSum.Builder builder = new CompactSum.Builder();
+        builder.put(parse("A_mn*B^n"));
+        builder.put(parse("C_n"));
+    }
+
+    @Test
+    public void testRandom() {
+        CC.resetTensorNames(2423L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{2, 0, 0, 0}, new int[]{4, 0, 0, 0}, true, 2423L);
+        for (int i = 0; i < 30; ++i) {
+            Tensor sum = random.nextSum(100, 4, ParserIndices.parseSimple("_mn"));
+            CompactSum compact = CompactSum.of(sum);
+            Assert.assertEquals(sum.size(), compact.size());
+            int j = 0;
+            for (Tensor term : compact)
+                Assert.assertTrue(TensorUtils.equals(sum.get(j++), term));
+            Assert.assertTrue(TensorUtils.equals(sum, compact.toTensor()));
+        }
+    }
+}
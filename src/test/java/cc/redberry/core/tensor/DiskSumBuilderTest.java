@@ -0,0 +1,151 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.concurrent.OutputPortUnsafe;
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class DiskSumBuilderTest {
+    @Test
+    public void test1() throws IOException {
+        try (DiskSumBuilder builder = new DiskSumBuilder()) {
+            for (String term : new String[]{"a", "2*a", "-3*a", "a*b", "7*a*b", "Sin[c]", "d", "Sin[-c]", "1/2", "x + 1/2"})
+                builder.put(parse(term));
+            TAssert.assertEquals(builder.build(), "8*a*b + d + x + 1");
+            Assert.assertEquals(9, builder.storedTerms());
+        }
+        try (DiskSumBuilder builder = new DiskSumBuilder()) {
+            Assert.assertTrue(TensorUtils.isZero(builder.build()));
+        }
+    }
+
+    @Test
+    public void testDummies() throws IOException {
+        try (DiskSumBuilder builder = new DiskSumBuilder(2)) {
+            builder.put(parse("A_a^a*B_m"));
+            builder.put(parse("-2*A_b^b*B_m"));
+            builder.put(parse("x*F_mab*G^ab"));
+            builder.put(parse("y*F_mcd*G^cd"));
+            TAssert.assertEquals(builder.build(), "-A_a^a*B_m + (x + y)*F_mab*G^ab");
+        }
+    }
+
+    @Test
+    public void testNumeric() throws IOException {
+        try (DiskSumBuilder builder = new DiskSumBuilder(2)) {
+            SumBuilder sb = new SumBuilder();
+            for (String term : new String[]{"2*x", "1/2*y", "1.5", "x"}) {
+                builder.put(parse(term));
+                sb.put(parse(term));
+            }
+            TAssert.assertEquals(builder.build(), sb.build());
+            TAssert.assertEquals(builder.build(), "3.0*x + 0.5*y + 1.5");
+        }
+        try (DiskSumBuilder builder = new DiskSumBuilder(2)) {
+            builder.put(parse("x"));
+            builder.put(Complex.ComplexNaN);
+            Assert.assertTrue(((Complex) builder.build()).isNaN());
+            OutputPortUnsafe<Tensor> port = builder.port();
+            Assert.assertTrue(((Complex) port.take()).isNaN());
+            Assert.assertNull(port.take());
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        File directory = Files.createTempDirectory("sum").toFile();
+        try {
+            try (DiskSumBuilder builder = new DiskSumBuilder(directory, 4)) {
+                builder.put(parse("x"));
+                builder.put(parse("y"));
+                ((DiskSumBuilder) builder.clone()).close();
+                Assert.assertEquals(4, directory.list().length);
+            }
+            Assert.assertEquals(0, directory.list().length);
+        } finally {
+            Files.delete(directory.toPath());
+        }
+    }
+
+    @Test(expected = TensorException.class)
+    public void testInconsistentIndices() throws IOException {
+        try (DiskSumBuilder builder = new DiskSumBuilder()) {
+            builder.put(parse("A_m"));
+            builder.put(parse("B_n"));
+        }
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        CC.resetTensorNames(123L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{4, 0, 0, 0}, new int[]{10, 0, 0, 0}, false, 123L);
+        for (int i = 0; i < 10; ++i) {
+            SumBuilder expected = new SumBuilder();
+            try (DiskSumBuilder builder = new DiskSumBuilder(1 + i)) {
+                for (int j = 0; j < 300; ++j) {
+                    Tensor term = random.nextProduct(2, ParserIndices.parseSimple("_ab"));
+                    expected.put(term);
+                    builder.put(term);
+                    //like term
+                    if (j % 3 == 0) {
+                        expected.put(Tensors.multiply(Complex.TWO, term));
+                        builder.put(Tensors.multiply(Complex.TWO, term));
+                    }
+                }
+                Tensor result = expected.build();
+                TAssert.assertEquals(builder.build(), result);
+                try (DiskSumBuilder copy = (DiskSumBuilder) builder.clone()) {
+                    TAssert.assertEquals(copy.build(), result);
+                }
+
+                SumBuilder collected = new SumBuilder();
+                OutputPortUnsafe<Tensor> port = builder.port();
+                Tensor t;
+                int count = 0;
+                while ((t = port.take()) != null) {
+                    collected.put(t);
+                    ++count;
+                }
+                Assert.assertEquals(result.size(), count);
+                TAssert.assertEquals(collected.build(), result);
+            }
+        }
+    }
+}
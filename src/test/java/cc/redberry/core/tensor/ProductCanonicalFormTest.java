@@ -0,0 +1,118 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.*;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class ProductCanonicalFormTest {
+    @Test
+    public void testZero() {
+        setAntiSymmetric("A_ab");
+        setSymmetric("S_ab");
+        Assert.assertTrue(ProductCanonicalForm.of(parse("A_ab*S^ab")).isZero());
+        Assert.assertTrue(ProductCanonicalForm.of(parse("A_ab*B^a*B^b")).isZero());
+        Assert.assertFalse(ProductCanonicalForm.of(parse("A_ab*B^a*C^b")).isZero());
+    }
+
+    @Test
+    public void testRiemann() {
+        addAntiSymmetry("R_abcd", 1, 0, 2, 3);
+        addSymmetry("R_abcd", 2, 3, 0, 1);
+        ProductCanonicalForm a = ProductCanonicalForm.of(parse("R_abcd*R^cdab")),
+                b = ProductCanonicalForm.of(parse("R_mnpq*R^mnpq")),
+                c = ProductCanonicalForm.of(parse("R_mnpq*R^nmpq")),
+                d = ProductCanonicalForm.of(parse("R_mnpq*R^mpnq"));
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+        Assert.assertEquals(a, c);
+        Assert.assertTrue(a.getSign() != c.getSign());
+        Assert.assertFalse(a.equals(d));
+    }
+
+    @Test
+    public void testNonMetric() {
+        ProductCanonicalForm a = ProductCanonicalForm.of(parse("k_A'*p^A'")),
+                b = ProductCanonicalForm.of(parse("k^A'*p_A'"));
+        Assert.assertFalse(a.equals(b));
+        Assert.assertTrue(TensorUtils.equals(parse("k_A'*p^A'"), a.getTensor()));
+    }
+
+    @Test
+    public void testUnsupported() {
+        Assert.assertNull(ProductCanonicalForm.of(parse("2*A_ab*B^ab")));
+        Assert.assertNull(ProductCanonicalForm.of(parse("f_a[x]*B^a")));
+        Assert.assertNull(ProductCanonicalForm.of(parse("A_a^a + B")));
+    }
+
+    @Test
+    public void testRandom() {
+        CC.resetTensorNames(2423L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{2, 0, 0, 0}, new int[]{4, 0, 0, 0}, true, 2423L);
+        Tensor[] products = new Tensor[100];
+        ProductCanonicalForm[] forms = new ProductCanonicalForm[products.length];
+        for (int i = 0; i < products.length; ++i) {
+            do {
+                products[i] = random.nextProduct(2 + i % 3, ParserIndices.parseSimple(i % 2 == 0 ? "_mn" : "^m"));
+            } while ((forms[i] = ProductCanonicalForm.of(products[i])) == null);
+
+            if (forms[i].isZero())
+                continue;
+
+            //canonical tensor
+            Tensor canonical = forms[i].getTensor();
+            Assert.assertEquals(forms[i].getSign(), TensorUtils.compare1(canonical, products[i]));
+            ProductCanonicalForm form = ProductCanonicalForm.of(canonical);
+            Assert.assertEquals(forms[i], form);
+            Assert.assertFalse(form.getSign());
+
+            //renamed dummies
+            Tensor renamed = ApplyIndexMapping.renameDummy(products[i],
+                    TensorUtils.getAllIndicesNamesT(products[i]).toArray());
+            form = ProductCanonicalForm.of(renamed);
+            Assert.assertEquals(forms[i], form);
+            Assert.assertEquals(forms[i].getSign(), form.getSign());
+        }
+
+        Boolean compare;
+        for (int i = 0; i < products.length; ++i)
+            for (int j = 0; j < products.length; ++j) {
+                if (forms[i].isZero() || forms[j].isZero())
+                    continue;
+                compare = TensorUtils.compare1(products[i], products[j]);
+                Assert.assertEquals(compare != null, forms[i].equals(forms[j]));
+                if (compare != null)
+                    Assert.assertEquals(compare, forms[i].getSign() ^ forms[j].getSign());
+            }
+    }
+}
@@ -22,12 +22,19 @@
  */
 package cc.redberry.core.tensor;
 
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.indexmapping.IndexMappings;
 import cc.redberry.core.indices.IndexType;
 import cc.redberry.core.utils.TensorUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import static cc.redberry.core.tensor.Tensors.parse;
 
 /**
@@ -140,4 +147,80 @@ public class SumBuilderTest {
         Tensor expected = Tensors.parse("5*A__M");
         Assert.assertTrue(IndexMappings.mappingExists(expected, e));
     }
+
+    @Test
+    public void testMerge1() {
+        SumBuilder a = new SumBuilder(), b = new SumBuilder();
+        a.put(parse("a*f_m"));
+        a.put(parse("2*g_m"));
+        a.put(parse("x_m*y^n_n"));
+        b.put(parse("-a*f_m"));
+        b.put(parse("3*g_m"));
+        b.put(parse("x_m*y^a_a"));
+        b.put(parse("h_m"));
+        a.merge(b);
+        Tensor expected = parse("5*g_m+2*x_m*y^n_n+h_m");
+        Assert.assertTrue(TensorUtils.equals(expected, a.build()));
+    }
+
+    @Test
+    public void testMerge2() {
+        SumBuilder a = new SumBuilder(), b = new SumBuilder();
+        b.put(parse("c"));
+        b.put(parse("1"));
+        a.merge(b);
+        a.put(parse("-c"));
+        Assert.assertTrue(TensorUtils.equals(parse("1"), a.build()));
+    }
+
+    @Test(expected = TensorException.class)
+    public void testMerge3() {
+        SumBuilder a = new SumBuilder(), b = new SumBuilder();
+        a.put(parse("f_m"));
+        b.put(parse("f_n"));
+        a.merge(b);
+    }
+
+    @Test
+    public void testConcurrent1() throws Exception {
+        final Tensor[] terms = new Tensor[200];
+        for (int i = 0; i < terms.length; ++i)
+            terms[i] = parse((i % 7) + "*a" + (i % 13) + "*f_m+" + (i % 3) + "*x_m*y^a_a*b" + (i % 11));
+
+        SumBuilder serial = new SumBuilder();
+        for (Tensor t : terms)
+            serial.put(t);
+
+        final ConcurrentSumBuilder concurrent = new ConcurrentSumBuilder(8);
+        ExecutorService executorService = ContextManager.getExecutorService();
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int k = 0; k < 4; ++k) {
+            final int offset = k;
+            futures.add(executorService.submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    for (int i = offset; i < terms.length; i += 4)
+                        concurrent.put(terms[i]);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Object> future : futures)
+            future.get();
+
+        Tensor expected = serial.build();
+        Assert.assertTrue(TensorUtils.equals(expected, concurrent.build()));
+        //building does not affect collected terms
+        Assert.assertTrue(TensorUtils.equals(expected, concurrent.build()));
+    }
+
+    @Test
+    public void testConcurrent2() {
+        ConcurrentSumBuilder sb = new ConcurrentSumBuilder();
+        Assert.assertTrue(TensorUtils.isZero(sb.build()));
+        sb.put(parse("2"));
+        sb.put(parse("a"));
+        sb.put(parse("-a+3"));
+        Assert.assertTrue(TensorUtils.equals(parse("5"), sb.build()));
+    }
 }
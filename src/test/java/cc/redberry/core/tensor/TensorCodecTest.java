@@ -0,0 +1,118 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.channels.Channels;
+
+import static cc.redberry.core.tensor.Tensors.*;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class TensorCodecTest {
+    private static byte[] write(Tensor... tensors) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        TensorCodec.Writer writer = new TensorCodec.Writer(output);
+        for (Tensor tensor : tensors)
+            writer.write(tensor);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Tensor[] read(byte[] bytes, int count) throws IOException {
+        TensorCodec.Reader reader = new TensorCodec.Reader(new DataInputStream(new ByteArrayInputStream(bytes)));
+        Tensor[] tensors = new Tensor[count];
+        for (int i = 0; i < count; ++i)
+            tensors[i] = reader.read();
+        return tensors;
+    }
+
+    @Test
+    public void test1() throws IOException {
+        String[] expressions = {"a", "2", "-1/3", "2**100/3**70 + 1.5*x - I*y/2", "A_mn^m*B^n + C_m^m",
+                "Sin[x]*Cos[y] + Log[x**2] - ArcTan[x]*Exp[y]", "f_a[x_b:_b, y]*g^a[x]", "(a + b)**(c - 1)",
+                "T_ab = g_ab*x + d_a^c*F_cb", "F_{\\alpha A'}^{\\alpha}*k^{A'}", "x**0.5 + 1e20*y"};
+        Tensor[] tensors = new Tensor[expressions.length];
+        for (int i = 0; i < expressions.length; ++i)
+            tensors[i] = parse(expressions[i]);
+        Tensor[] result = read(write(tensors), tensors.length);
+        for (int i = 0; i < tensors.length; ++i)
+            Assert.assertTrue(expressions[i], TensorUtils.equalsExactly(result[i], tensors[i]));
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        CC.resetTensorNames(123L);
+        RandomTensor random = new RandomTensor(4, 10, new int[]{4, 0, 0, 0}, new int[]{10, 0, 0, 0}, false, 123L);
+        for (int i = 0; i < 50; ++i) {
+            Tensor sum = random.nextSum(100, 4, ParserIndices.parseSimple("_ab"));
+            byte[] bytes = write(sum);
+            TAssert.assertEquals(read(bytes, 1)[0], sum);
+            Assert.assertTrue(bytes.length < sum.toString().length());
+        }
+    }
+
+    @Test
+    public void testOtherContext() throws IOException {
+        String expression = "A_mn^m*f[x_a*B^a] + C_n*Sin[y] + d_n^a*F_a";
+        byte[] bytes = write(parse(expression));
+        CC.resetTensorNames(321L);
+        TAssert.assertEquals(read(bytes, 1)[0], parse(expression));
+    }
+
+    @Test
+    public void testReferences() throws IOException {
+        Tensor sum = parse("a*A_m^m + b*B_a^a + c*C_b^b");
+        Tensor t = multiply(pow(sum, parse("x")), field("f", ParserIndices.parseSimple(""), new Tensor[]{sum}));
+        byte[] shared = write(t, sum);
+        Assert.assertTrue(shared.length < write(parse(t.toString()), parse(sum.toString())).length);
+        Tensor[] result = read(shared, 2);
+        TAssert.assertEquals(result[0], t);
+        TAssert.assertEquals(result[1], sum);
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        Tensor t = parse("2*x**2 + y_a*z^a - 1/2");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TensorCodec.write(t, Channels.newChannel(bytes));
+        TAssert.assertEquals(
+                TensorCodec.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))), t);
+    }
+
+    @Test(expected = IOException.class)
+    public void testIllegalHeader() throws IOException {
+        TensorCodec.read(new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+    }
+}
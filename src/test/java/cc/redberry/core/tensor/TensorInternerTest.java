@@ -0,0 +1,99 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.Context;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class TensorInternerTest {
+    @Before
+    public void setUp() {
+        CC.current().setTensorInterning(true);
+    }
+
+    @After
+    public void tearDown() {
+        CC.current().setTensorInterning(false);
+    }
+
+    @Test
+    public void testSimpleTensors() {
+        Tensor a = parse("g_mn*p^m*Power[M,2]*f[x]"), b = parse("g_mn*p^m*Power[M,2]*f[x]");
+        for (int i = 0; i < a.size(); ++i)
+            Assert.assertSame(a.get(i), b.get(i));
+        SimpleTensor pa = (SimpleTensor) parse("p_a"), pb = (SimpleTensor) parse("p_b");
+        Assert.assertSame(pa, ApplyIndexMapping.applyIndexMapping(pb,
+                new int[]{pb.getIndices().get(0)}, new int[]{pa.getIndices().get(0)}, new int[0]));
+        TensorInterner interner = CC.current().getTensorInterner();
+        Assert.assertTrue(interner.getHits() > 0);
+        Assert.assertTrue(interner.getHitRate() > 0 && interner.getHitRate() <= 1);
+        Assert.assertTrue(interner.size() > 0);
+    }
+
+    @Test
+    public void testDifferentIndices() {
+        Assert.assertNotSame(parse("p_a"), parse("p_b"));
+        Assert.assertNotSame(parse("f_a[x_b]"), parse("f_a[x_c]"));
+        Assert.assertTrue(TensorUtils.equalsExactly(parse("Power[M,2]"), parse("M**2")));
+        Assert.assertSame(parse("Power[M,2]"), parse("M**2"));
+    }
+
+    @Test
+    public void testSwitchOff() {
+        Context context = CC.current();
+        parse("p_a");
+        context.setTensorInterning(false);
+        Assert.assertFalse(context.isTensorInterning());
+        Assert.assertEquals(0, context.getTensorInterner().size());
+        Assert.assertNotSame(parse("p_a"), parse("p_a"));
+        Assert.assertEquals(0, context.getTensorInterner().getRequests());
+    }
+
+    @Test
+    public void testWeak() {
+        TensorInterner interner = new TensorInterner(true);
+        for (int i = 0; i < 1000; ++i)
+            interner.intern(Tensors.simpleTensor("x" + i, IndicesFactory.EMPTY_SIMPLE_INDICES));
+        //whether garbage is actually collected is up to JVM, but table should never grow after that
+        int size = interner.size(), newSize;
+        Assert.assertTrue(size <= 1000);
+        for (int i = 0; i < 10; ++i) {
+            System.gc();
+            newSize = interner.size();
+            Assert.assertTrue(newSize <= size);
+            size = newSize;
+        }
+    }
+}
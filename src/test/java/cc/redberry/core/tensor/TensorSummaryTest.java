@@ -0,0 +1,70 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class TensorSummaryTest {
+    @Test
+    public void test1() {
+        Tensor t = parse("a*f_m[x,y^a*z_a]*G^\\alpha*Sin[b]");
+        for (String name : new String[]{"a", "f_m[x,y^a*z_a]", "x", "y^a", "z_a", "G^\\alpha", "b"})
+            Assert.assertTrue(TensorSummary.mayContainName(t, ((SimpleTensor) parse(name)).getName()));
+        Assert.assertTrue(TensorSummary.mayContainType(t, IndexType.LatinLower));
+        Assert.assertTrue(TensorSummary.mayContainType(t, IndexType.GreekLower));
+        Assert.assertFalse(TensorSummary.mayContainType(t, IndexType.LatinUpper));
+        Assert.assertEquals(0, TensorSummary.of(parse("2")));
+        Assert.assertEquals(0, TensorSummary.of(parse("1/2 + I")));
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        RandomTensor random = new RandomTensor(10, 30, new int[]{2, 0, 0, 0}, new int[]{4, 0, 0, 0}, false);
+        for (int i = 0; i < 100; ++i) {
+            Tensor t = random.nextSum(10, 4, ParserIndices.parseSimple("_mn"));
+            long summary = TensorSummary.of(t);
+            for (SimpleTensor st : TensorUtils.getAllSymbols(t))
+                Assert.assertTrue(TensorSummary.mayContainName(t, st.getName()));
+            FromChildToParentIterator iterator = new FromChildToParentIterator(t);
+            Tensor c;
+            while ((c = iterator.next()) != null) {
+                long s = TensorSummary.of(c);
+                Assert.assertEquals(s, summary & s);
+                if (c instanceof SimpleTensor)
+                    Assert.assertTrue(TensorSummary.mayContainName(t, ((SimpleTensor) c).getName()));
+            }
+        }
+    }
+}
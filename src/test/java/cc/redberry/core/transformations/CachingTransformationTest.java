@@ -0,0 +1,103 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2013:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.multiply;
+import static cc.redberry.core.tensor.Tensors.multiplyAndRenameConflictingDummies;
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class CachingTransformationTest {
+
+    @Test
+    public void test1() {
+        CachingTransformation tr = new CachingTransformation(ExpandTransformation.EXPAND);
+        TAssert.assertEquals(tr.transform(parse("(a+b)*(f_m+g_m)")), parse("a*f_m+a*g_m+b*f_m+b*g_m"));
+        Assert.assertEquals(0, tr.getHits());
+        Assert.assertEquals(1, tr.getMisses());
+
+        //same up to renaming of free indices
+        Tensor t = tr.transform(parse("(a+b)*(f_a+g_a)"));
+        Assert.assertEquals(1, tr.getHits());
+        TAssert.assertEquals(t, parse("a*f_a+a*g_a+b*f_a+b*g_a"));
+    }
+
+    @Test
+    public void test2() {
+        CachingTransformation tr = new CachingTransformation(EliminateMetricsTransformation.ELIMINATE_METRICS);
+        TAssert.assertEquals(tr.transform(parse("g_mn*A^ma*B_a^n")), parse("A_na*B^an"));
+        //same up to renaming of dummies
+        TAssert.assertEquals(tr.transform(parse("g_ab*A^ac*B_c^b")), parse("A_na*B^an"));
+        Assert.assertEquals(1, tr.getHits());
+        //different tensor
+        TAssert.assertEquals(tr.transform(parse("g_mn*A^ma*B^n_a")), parse("A_na*B^na"));
+        Assert.assertEquals(1, tr.getHits());
+        Assert.assertEquals(2, tr.getMisses());
+        Assert.assertEquals(2, tr.size());
+    }
+
+    @Test
+    public void test3() {
+        CachingTransformation tr = new CachingTransformation(ExpandTransformation.EXPAND, 2);
+        tr.transform(parse("(a+b)*c"));
+        tr.transform(parse("(a+c)*d"));
+        tr.transform(parse("(a+b)*c"));
+        tr.transform(parse("(x+y)*z"));
+        Assert.assertEquals(2, tr.size());
+        Assert.assertEquals(1, tr.getEvictions());
+        //(a+b)*c was used recently, so (a+c)*d was evicted
+        tr.transform(parse("(a+b)*c"));
+        Assert.assertEquals(2, tr.getHits());
+        tr.transform(parse("(a+c)*d"));
+        Assert.assertEquals(2, tr.getHits());
+        Assert.assertEquals(4, tr.getMisses());
+    }
+
+    @Test
+    public void testDummiesInProduct() {
+        CachingTransformation tr = new CachingTransformation(EliminateMetricsTransformation.ELIMINATE_METRICS);
+        //cached result A_na*B^an has dummies n and a
+        tr.transform(parse("g_mn*A^ma*B_a^n"));
+        Tensor t = parse("g_ab*A^ac*B_c^b"), other = parse("F_n^n*C_a^a");
+        Tensor expected = multiplyAndRenameConflictingDummies(tr.getTransformation().transform(t), other);
+
+        Tensor hit = tr.transform(t, TensorUtils.getAllIndicesNamesT(other).toArray());
+        Assert.assertEquals(1, tr.getHits());
+        Tensor product = multiply(hit, other);
+        TensorUtils.assertIndicesConsistency(product);
+        TAssert.assertEquals(product, expected);
+
+        //without context dummies of result do not clash with indices of transformed tensor
+        TensorUtils.assertIndicesConsistency(multiply(tr.transform(t), t));
+    }
+}
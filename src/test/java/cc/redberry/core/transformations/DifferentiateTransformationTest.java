@@ -28,6 +28,7 @@ import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.indices.IndexType;
 import cc.redberry.core.tensor.Expression;
 import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.SumBuilder;
 import cc.redberry.core.tensor.Tensor;
 import cc.redberry.core.transformations.expand.ExpandAllTransformation;
 import cc.redberry.core.transformations.expand.ExpandTransformation;
@@ -380,4 +381,28 @@ public class DifferentiateTransformationTest {
         TAssert.assertEquals(d, "1/(x-1)**2");
     }
 
+    @Test
+    public void testMemoizedAndParallel() {
+        Tensor t = parse("(Sin[x_a*x^a] + (y_a*x^a)**2)*(Sin[x_a*x^a] + Cos[z])*f^b*x_b + Sin[x_a*x^a]*(z+y_a*x^a)**3");
+        SimpleTensor var = parseSimple("x_m");
+        Transformation[] transformations = {ExpandTransformation.EXPAND, ELIMINATE_METRICS};
+        DifferentiateTransformation d = new DifferentiateTransformation(transformations, var);
+        Tensor expected = d.transform(t);
+        TAssert.assertEquals(d.asMemoizedTransformation().transform(t), expected);
+
+        SumBuilder sb = new SumBuilder();
+        for (int i = 0; i < DifferentiateTransformation.PARALLEL_DIFFERENTIATE_THRESHOLD + 10; ++i)
+            sb.put(parse("a" + i + "*(x_a*x^a)**2*Sin[x_a*y^a]"));
+        t = sb.build();
+        expected = d.transform(t);
+        TAssert.assertEquals(d.asParallelTransformation(4).transform(t), expected);
+        TAssert.assertEquals(d.asParallelTransformation(4).asMemoizedTransformation().transform(t), expected);
+    }
+
+    @Test
+    public void testSkipNotContaining() {
+        Tensor t = parse("Sin[a]*f_m[y]*Cos[b_a*c^a] + k_m");
+        TAssert.assertEquals(differentiate(t, parseSimple("x")), "0");
+        TAssert.assertEquals(differentiate(parse("Sin[a]*f_m[y]*x"), parseSimple("x")), "Sin[a]*f_m[y]");
+    }
 }
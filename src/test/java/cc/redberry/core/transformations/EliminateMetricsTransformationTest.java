@@ -25,9 +25,12 @@ package cc.redberry.core.transformations;
 import cc.redberry.core.TAssert;
 import cc.redberry.core.context.CC;
 import cc.redberry.core.indexgenerator.IndexGenerator;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
 import cc.redberry.core.indices.IndicesUtils;
 import cc.redberry.core.tensor.Expression;
 import cc.redberry.core.tensor.ProductBuilder;
+import cc.redberry.core.tensor.SumBuilder;
 import cc.redberry.core.tensor.Tensor;
 import cc.redberry.core.tensor.Tensors;
 import cc.redberry.core.transformations.expand.ExpandTransformation;
@@ -35,6 +38,11 @@ import cc.redberry.core.utils.TensorUtils;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static cc.redberry.core.tensor.Tensors.parse;
 import static org.junit.Assert.assertTrue;
 
@@ -570,4 +578,87 @@ public class EliminateMetricsTransformationTest {
         t = d.transform(t);
         assertTrue(TensorUtils.equals(t, parse("1/2")));
     }
+
+    private static int nextState(Random random, int index) {
+        return random.nextBoolean() ? IndicesUtils.inverseIndexState(index) : index;
+    }
+
+    /**
+     * Random product of tensors A_a, B_ab, C_abc, whose indices are contracted directly or through chains of metrics
+     * and Kroneckers (sometimes with closed loops of metrics).
+     */
+    private static Tensor randomProductWithMetrics(Random random) {
+        IndexGenerator generator = new IndexGenerator();
+        byte type = IndexType.LatinLower.getType();
+        int count = 1 + random.nextInt(4), i, j;
+        int[][] indices = new int[count][];
+        List<int[]> slots = new ArrayList<>();
+        for (i = 0; i < count; ++i) {
+            indices[i] = new int[1 + random.nextInt(3)];
+            for (j = 0; j < indices[i].length; ++j)
+                slots.add(new int[]{i, j});
+        }
+        Collections.shuffle(slots, random);
+
+        ProductBuilder builder = new ProductBuilder();
+        int index, metric, pointer = 0, length;
+        while (pointer < slots.size()) {
+            boolean free = pointer == slots.size() - 1 || random.nextInt(4) == 0;
+            index = nextState(random, generator.generate(type));
+            int[] slot = slots.get(pointer++);
+            indices[slot[0]][slot[1]] = index;
+            length = random.nextInt(free ? 2 : 4);
+            for (j = 0; j < length; ++j) {
+                metric = nextState(random, generator.generate(type));
+                builder.put(Tensors.createMetricOrKronecker(IndicesUtils.inverseIndexState(index), metric));
+                index = metric;
+            }
+            if (!free) {
+                slot = slots.get(pointer++);
+                indices[slot[0]][slot[1]] = IndicesUtils.inverseIndexState(index);
+            }
+        }
+        if (random.nextInt(5) == 0) {
+            //closed loop
+            int a = generator.generate(type), b = generator.generate(type);
+            builder.put(Tensors.createMetric(a, b));
+            builder.put(Tensors.createMetric(IndicesUtils.inverseIndexState(a), IndicesUtils.inverseIndexState(b)));
+        }
+        String[] names = {"A", "B", "C"};
+        for (i = 0; i < count; ++i)
+            builder.put(Tensors.simpleTensor(names[indices[i].length - 1], IndicesFactory.createSimple(null, indices[i])));
+        return builder.build();
+    }
+
+    @Test
+    public void testContractionGraphRandom() {
+        Random random = new Random(232);
+        for (int i = 0; i < 1000; ++i) {
+            Tensor t = randomProductWithMetrics(random);
+            Tensor expected = EliminateMetricsTransformation.ELIMINATE_METRICS_RECURSIVE.transform(t);
+            Tensor actual = contract(t);
+            TAssert.assertEquals(actual, expected);
+            if (expected == t)
+                assertTrue(actual == t);
+        }
+    }
+
+    @Test
+    public void testContractionGraphFields() {
+        Tensor t = parse("g_ab*d^b_c*F^c[g_mn*A^m]*G^a");
+        TAssert.assertEquals(contract(t), parse("F^c[A_n]*G_c"));
+        t = parse("g_ab*(A^b+B^b)*g^ac*C_c");
+        TAssert.assertEquals(contract(t), EliminateMetricsTransformation.ELIMINATE_METRICS_RECURSIVE.transform(t));
+    }
+
+    @Test
+    public void testParallel() {
+        SumBuilder sb = new SumBuilder();
+        for (int i = 0; i < EliminateMetricsTransformation.PARALLEL_ELIMINATE_THRESHOLD + 10; ++i)
+            sb.put(parse("x" + i + "*g_ab*d^b_c*A^ca"));
+        Tensor t = sb.build();
+        Tensor expected = contract(t);
+        Tensor actual = EliminateMetricsTransformation.ELIMINATE_METRICS.asParallelTransformation(4).transform(t);
+        TAssert.assertEquals(actual, expected);
+    }
 }
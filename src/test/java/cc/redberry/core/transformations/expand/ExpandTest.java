@@ -22,12 +22,15 @@
  */
 package cc.redberry.core.transformations.expand;
 
+import cc.redberry.concurrent.OutputPortUnsafe;
 import cc.redberry.core.TAssert;
 import cc.redberry.core.context.CC;
 import cc.redberry.core.tensor.*;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
 import cc.redberry.core.tensor.iterator.TraverseState;
 import cc.redberry.core.tensor.iterator.TreeTraverseIterator;
 import cc.redberry.core.transformations.EliminateMetricsTransformation;
+import cc.redberry.core.transformations.Transformation;
 import cc.redberry.core.transformations.fractions.TogetherTransformation;
 import cc.redberry.core.utils.TensorUtils;
 import org.junit.Assert;
@@ -428,4 +431,94 @@ public class ExpandTest {
         TAssert.assertEquals(exp, "(a**2+2*a*b+b**2)*f_{mn}+(c*a+2*a*d*b+c*b+a**2*d+b**2*d)*l_{mn}");
         assertAllBracketsExpanded(expand(t));
     }
+
+    @Test
+    public void testParallel1() {
+        StringBuilder s1 = new StringBuilder(), s2 = new StringBuilder();
+        for (int i = 0; i < 40; ++i) {
+            if (i != 0) {
+                s1.append('+');
+                s2.append('+');
+            }
+            s1.append("a").append(i).append("*p_m");
+            s2.append("b").append(i % 7).append("*k^m");
+        }
+        Tensor t = parse("(" + s1 + ")*(" + s2 + ")*(x+y)");
+        Tensor serial = expand(t);
+        Tensor parallel = new ExpandTransformation(new Transformation[0],
+                ExpandTransformation.DefaultExpandTraverseGuide, 4).transform(t);
+        TAssert.assertIndicesConsistency(parallel);
+        TAssert.assertEquals(parallel, serial);
+    }
+
+    @Test
+    public void testParallel2() {
+        Tensor t = parse("(A_m^a+B_m^a+c*C_m^a+d*D_m^a+(e+f)*E_m^a)*(A_a^b+B_a^b+c*C_a^b+d*D_a^b)*(a+b+c+d+e+f+g+h)**5*(F_b+G_b+h*H_b)");
+        Tensor serial = expand(t, EliminateMetricsTransformation.ELIMINATE_METRICS);
+        Tensor parallel = new ExpandTransformation(new Transformation[]{EliminateMetricsTransformation.ELIMINATE_METRICS},
+                ExpandTransformation.DefaultExpandTraverseGuide, 3).transform(t);
+        TAssert.assertIndicesConsistency(parallel);
+        TAssert.assertEquals(parallel, serial);
+        assertAllBracketsExpanded(parallel);
+    }
+
+    @Test
+    public void testParallel3() {
+        Tensor t = parse("(a+b+c+d+e+f+g+h)**4*(x_m+y_m)*(a+b+c+d+e+f+g+h)**3");
+        Tensor serial = ExpandAllTransformation.expandAll(t);
+        Tensor parallel = new ExpandAllTransformation(new Transformation[0], TraverseGuide.ALL, 4).transform(t);
+        TAssert.assertEquals(parallel, serial);
+        assertAllBracketsExpanded(parallel);
+    }
+
+    @Test
+    public void testStreaming1() {
+        Tensor t = parse("(A_m^a+B_m^a+c*C_m^a+(e+f)*E_m^a)*(A_a^b+B_a^b+c*C_a^b)*(a+b+c)**3*(F_b+G_b+h*H_b)");
+        Transformation[] transformations = {EliminateMetricsTransformation.ELIMINATE_METRICS};
+        Tensor expected = expand(t, transformations);
+
+        OutputPortUnsafe<Tensor> port = new ExpandTransformation(transformations).expandAsPort(t);
+        SumBuilder sb = new SumBuilder();
+        Tensor term;
+        while ((term = port.take()) != null) {
+            Assert.assertFalse(term instanceof Sum);
+            sb.put(term);
+        }
+        TAssert.assertEquals(expected, sb.build());
+        TAssert.assertEquals(expected, expandUsingPort(t, transformations));
+    }
+
+    @Test
+    public void testStreaming2() {
+        Tensor t = parse("(a+b+c+d+e+f+g+h)**3*(x_m+y_m)*(a+b+c+d+e+f+g+h)**2*(k_a^a+p_a^a)");
+        Tensor expected = expand(t);
+        Tensor actual = ExpandUtils.drainConcurrently(ExpandPort.createConcurrentPort(t), new Transformation[0], 4);
+        TAssert.assertEquals(expected, actual);
+        assertAllBracketsExpanded(actual);
+    }
+
+    @Test
+    public void testSymbolicPolynomials() {
+        //non-empty transformations switch off polynomial kernel
+        Transformation identity = new Transformation() {
+            @Override
+            public Tensor transform(Tensor t) {
+                return t;
+            }
+        };
+        for (String expression : new String[]{
+                "(a+2*b/3+c)**5",
+                "(a-b)*(x+y+1/2)**3*(a+b)**2",
+                "(a+b)*(a-b)*Sin[x]",
+                "(a+b)*(a-b)*f[x]*(a**2+b**2)",
+                "(a+b*(c+d)**2)**3"}) {
+            Tensor t = parse(expression);
+            Tensor expected = expand(t, identity), actual = expand(t);
+            assertAllBracketsExpanded(actual);
+            TAssert.assertEquals(expected, actual);
+        }
+        TAssert.assertEquals(expand(parse("(a+b)*(a-b)")), parse("a**2-b**2"));
+        TAssert.assertEquals(expand(parse("(a+b)**2-(a-b)**2")), parse("4*a*b"));
+        TAssert.assertEquals(expand(parse("(1/2+a)**2*(1/2-a)**2")), parse("1/16-a**2/2+a**4"));
+    }
 }
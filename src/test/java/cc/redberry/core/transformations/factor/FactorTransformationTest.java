@@ -308,4 +308,16 @@ public class FactorTransformationTest {
 //            TAssert.assertEquals(factorOut(t), "(a-b)*(c*(a-b) - d*(a-b)**2 - d)");
     }
 //     -4*m**10-s*m**8+1+(1/32)*(-48*m**4+1-40*s*m**2-3*s**2)*s*m**4
+
+    @Test
+    public void testParallel() {
+        Tensor t = parse("(x - y + z)**2*(a+b)**3");
+        Tensor e = expand(t), e2 = expand(parse("(x + y)**3*(a-b)"));
+        Tensor target = parse("F_mn*f[" + e + "] + (" + e + ")*G_mn + (" + e2 + ")*H_mn + (" + e2 + ")*c*d*K_mn");
+        Tensor serial = factor(target);
+        Tensor parallel = FactorTransformation.FACTOR.asParallelTransformation(4).transform(target);
+        TAssert.assertEquals(serial, parallel);
+        TAssert.assertEquals(factor(target, 3), serial);
+        TAssert.assertEquals(factor(e, 2), t);
+    }
 }
@@ -30,6 +30,7 @@ import cc.redberry.core.tensor.Tensor;
 import cc.redberry.core.tensor.Tensors;
 import cc.redberry.core.transformations.expand.ExpandTransformation;
 import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
 import org.junit.Test;
 
 /**
@@ -181,4 +182,19 @@ public class TogetherTransformationTest {
             TensorUtils.assertIndicesConsistency(t);
         }
     }
+
+    @Test
+    public void testParallel() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; ++i)
+            sb.append("+c").append(i).append("*x**").append(i % 5)
+                    .append("/(a**").append(i % 3 + 1).append("*(b+x)**").append(i % 4).append(")");
+        Tensor t = Tensors.parse(sb.toString());
+        Tensor serial = TogetherTransformation.together(t);
+        Tensor parallel = TogetherTransformation.TOGETHER.asParallelTransformation(4).transform(t);
+        TAssert.assertEquals(parallel, serial);
+        NumeratorDenominator nd = NumeratorDenominator.getNumeratorAndDenominator(serial);
+        TAssert.assertEquals(nd.denominator, Tensors.parse("a**3*(b+x)**3"));
+        Assert.assertEquals(2000, nd.numerator.size());
+    }
 }
@@ -1085,4 +1085,57 @@ public class SubstitutionsTest {
         }
     }
 
+    @Test
+    public void testParallel1() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2 * SubstitutionTransformation.PARALLEL_SUBSTITUTION_THRESHOLD; ++i) {
+            if (i != 0)
+                sb.append('+');
+            sb.append("a").append(i % 37).append("*f_mn*k^n*x").append(i % 53);
+        }
+        Tensor t = parse(sb.toString());
+        SubstitutionTransformation tr = new SubstitutionTransformation(new Expression[]{
+                parseExpression("f_mn = p_m*p_a*g^a_n + k_m*k_n"), parseExpression("x5 = y")});
+        Tensor serial = tr.transform(t);
+        Assert.assertFalse(TensorUtils.equals(serial, t));
+        Tensor parallel = tr.asParallelSubstitution(4).transform(t);
+        TAssert.assertIndicesConsistency(parallel);
+        TAssert.assertEquals(parallel, serial);
+    }
+
+    @Test
+    public void testCompiledRuleSet1() {
+        Expression[] es = {
+                parseExpression("x = y"),
+                parseExpression("y = z"),
+                parseExpression("f[x] = x**2"),
+                parseExpression("A_m*B^m = c"),
+                parseExpression("a + b = d"),
+                parseExpression("k_m = p_m"),
+                parseExpression("Sin[z] = 1")};
+
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("x")), "z");
+        TAssert.assertEquals(new SubstitutionTransformation(false, es).transform(parse("x")), "y");
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("f[t]")), "t**2");
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("f[x]")), "z**2");
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("Sin[x]")), "1");
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("a + b + e")), "d + e");
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("A_a*B^a*k_m*C^m")), "c*p_m*C^m");
+        TAssert.assertEquals(new SubstitutionTransformation(es).transform(parse("A_a*C^a")), "A_a*C^a");
+    }
+
+    @Test
+    public void testCompiledRuleSet2() {
+        //independent substitutions: result should be the same as of sequential substitutions
+        Expression[] es = new Expression[10];
+        for (int i = 0; i < es.length; ++i)
+            es[i] = parseExpression("F" + i + "_mn = a" + i + "*g_mn + b" + i + "*k_m*k_n");
+        Tensor t = parse("F0_ab*F1^b_c*F2^cd + F3_a^b*F4_bc*F5^cd + F9_ac*F9^cd + F7_ac*k^c*k^d + F8^d_a");
+        Tensor expected = t;
+        for (Expression e : es)
+            expected = e.transform(expected);
+        Tensor actual = new SubstitutionTransformation(es).transform(t);
+        TAssert.assertIndicesConsistency(actual);
+        TAssert.assertEquals(ExpandTransformation.expand(actual), ExpandTransformation.expand(expected));
+    }
 }